@@ -14,6 +14,7 @@ import controller.Controller;
 public class Main {
 	private Shell shell;
 	private Controller controller;
+	private MainView mainView;
 	
 	private ScoreCanvas scoreCanvas;
 	private PianoCanvas pianoCanvas;
@@ -21,6 +22,7 @@ public class Main {
 	private ScrolledNotesCanvas scrolledNotesCanvas;
 	private Tempo tempo;
 	private NoteScale noteScale;
+	private PaintStatsOverlay paintStatsOverlay;
 	
 	Colors colors = new Colors();
 	
@@ -63,17 +65,29 @@ public class Main {
 		addMainAreaWidgets(mainArea);
 		addSidePanelWidgets(sidePanel);
 		
+		this.paintStatsOverlay = new PaintStatsOverlay(shell, scrolledNotesCanvas.getWidget(), scrolledNotesCanvas.getPaintStats(), scoreCanvas.getPaintStats(), pianoCanvas.getPaintStats());
+		
 		// Add menubar.
 		addMenuBar();
 		
 		// Create controller.
-		MainView mainView = new MainView(shell, pianoCanvas, scrolledNotesCanvas, scoreCanvas, tracksTable, tempo, noteScale, colors);
+		this.mainView = new MainView(shell, pianoCanvas, scrolledNotesCanvas, scoreCanvas, tracksTable, tempo, noteScale, colors, paintStatsOverlay);
 		this.controller = new Controller(mainView);
 		
 		// Add key listeners to each of the canvases.
 		scoreCanvas.getWidget().addListener(SWT.KeyUp, new KeyListener());
 		pianoCanvas.getWidget().addListener(SWT.KeyUp, new KeyListener());
 		scrolledNotesCanvas.addListener(SWT.KeyUp, new KeyListener());
+		
+		// Zoom the notes around the mouse with the control key and mouse wheel.
+		scrolledNotesCanvas.addListener(SWT.MouseVerticalWheel, new Listener() {
+			public void handleEvent(Event event) {
+				if((event.stateMask & SWT.MOD1) != 0) {
+					controller.zoom((event.count > 0) ? 1 : -1, event.y);
+					event.doit = false;
+				}
+			}
+		});
 		pianoCanvas.getWidget().setFocus();
 		
 		// Handle arguments.
@@ -222,6 +236,22 @@ public class Main {
 			}
 		});
 		
+		// View
+		MenuItem viewMenuItem = new MenuItem(menuBar, SWT.CASCADE);
+		viewMenuItem.setText("&View");
+		Menu viewMenu = new Menu(shell, SWT.DROP_DOWN);
+		viewMenuItem.setMenu(viewMenu);
+		
+		// View->Paint Statistics
+		final MenuItem viewPaintStatsItem = new MenuItem(viewMenu, SWT.CHECK);
+		viewPaintStatsItem.setText("&Paint Statistics\tF12");
+		viewPaintStatsItem.setAccelerator(SWT.F12);
+		viewPaintStatsItem.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent event) {
+				paintStatsOverlay.setVisible(viewPaintStatsItem.getSelection());
+			}
+		});
+		
 		shell.setMenuBar(menuBar);
 	}
 	
@@ -274,13 +304,7 @@ public class Main {
 				if(fileTransfer.isSupportedType(event.currentDataType)) {
 					String[] files = (String[])event.data;
 					for(String file:files) {
-						try {
-							controller.openFile(file);
-						} catch(Exception e) {
-							e.printStackTrace();
-						
-							displayErrorMessage("Error loading file: " + e.getMessage());
-						}
+						controller.openFile(file);
 					}
 				}
 			}
@@ -305,8 +329,8 @@ public class Main {
 	private void openFile() {
 		FileDialog fileDialog = new FileDialog(shell, SWT.OPEN);
 		fileDialog.setText("Open");
-		fileDialog.setFilterExtensions(new String[] { "*.mid; *.midi", "*.*" });
-		fileDialog.setFilterNames(new String[] { "Midi Files (*.mid, *.midi)", "All Files (*.*)" });
+		fileDialog.setFilterExtensions(new String[] { "*.mid; *.midi; *.kar; *.gz; *.zip", "*.*" });
+		fileDialog.setFilterNames(new String[] { "Midi Files and Archives (*.mid, *.midi, *.kar, *.gz, *.zip)", "All Files (*.*)" });
 		
 		String filename = fileDialog.open();
 		openFile(filename);
@@ -317,12 +341,7 @@ public class Main {
 	 */
 	private void openFile(String filename) {
 		if(filename != null) {
-			try {
-				controller.openFile(filename);
-			} catch(Exception e) {
-				e.printStackTrace();
-				displayErrorMessage("Error loading file: " + e.getMessage());
-			}
+			controller.openFile(filename);
 		}
 	}
 	
@@ -330,10 +349,7 @@ public class Main {
 	 * Displays an error message to the user.
 	 */
 	private void displayErrorMessage(String message) {
-		MessageBox alert = new MessageBox(shell, SWT.ERROR);
-		alert.setText("Error");
-		alert.setMessage(message);
-		alert.open();
+		mainView.displayErrorMessage(message);
 	}
 	
 	/**
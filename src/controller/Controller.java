@@ -1,8 +1,8 @@
 package controller;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MidiUnavailableException;
@@ -15,32 +15,44 @@ import view.*;
 
 /**
  * Keep track of what notes we're waiting for the user to press.
+ *
+ * Notes are pressed on the midi input thread, while everything else runs on the UI thread, so each
+ * method holds the lock. The notes are views onto the store of the file, so clear() must return
+ * before the file is released, to be sure that noteOn() isn't still reading them.
  */
 class WaitingNotes {
 	private List<Note> waitingForNotes = new ArrayList<Note>();
 	private Set<Pitch> earlyNotes = new HashSet<Pitch>();
 	
 	private Runnable autoplayCallback;
+	
+	private AtomicReference<Song> song;
+	
+	public WaitingNotes(AtomicReference<Song> song) {
+		this.song = song;
+	}
 
 	/**
 	 * Returns whether we are waiting for any active non-autoplayed notes.
 	 */
-	public boolean waiting() {
+	public synchronized boolean waiting() {
 		return (getWaitingNotes().size() > 0);
 	}
 
 	/**
 	 * Updates waiting notes after a position change. 
 	 */
-	public void setWaitingNotes(Set<Note> newNotes) {
+	public synchronized void setWaitingNotes(Set<Note> newNotes) {
 		if(newNotes.size() == 0) {
 			return;
 		}
 		
+		Song currentSong = song.get();
+		
 		waitingForNotes.clear();
 		for(Note note:newNotes) {
 			MidiTrack track = note.getTrack();
-			if(track.isActive() && !track.isAutoplay()) {
+			if(currentSong.isActive(track) && !currentSong.isAutoplay(track)) {
 				if(!earlyNotes.contains(note.getPitch())) {
 					waitingForNotes.add(note);
 				}
@@ -52,14 +64,14 @@ class WaitingNotes {
 	/**
 	 * Returns the set of notes that we are waiting for.
 	 */
-	public Set<Note> getWaitingNotes() {
-		return Controller.filterWaitable(waitingForNotes);
+	public synchronized Set<Note> getWaitingNotes() {
+		return Controller.filterWaitable(waitingForNotes, song.get());
 	}
 
 	/**
 	 * Removes pitch from waiting notes.
 	 */
-	public void noteOn(Pitch pitch) {
+	public synchronized void noteOn(Pitch pitch) {
 		if(waitingForNotes.isEmpty()) {
 			earlyNotes.add(pitch);
 		} else {
@@ -77,10 +89,19 @@ class WaitingNotes {
 		}
 	}
 
+	/**
+	 * Stops waiting for any notes, without running the callback, before the file is replaced.
+	 */
+	public synchronized void clear() {
+		waitingForNotes.clear();
+		earlyNotes.clear();
+		autoplayCallback = null;
+	}
+
 	/**
 	 * Set callback to run when there are no more waiting notes.
 	 */
-	public void setAutoplayCallback(Runnable runnable) {
+	public synchronized void setAutoplayCallback(Runnable runnable) {
 		this.autoplayCallback = runnable;
 		
 		if(!waiting()) {
@@ -96,54 +117,159 @@ class WaitingNotes {
 	}
 }
 
-public class Controller implements PositionChangedHandler, TempoChangedHandler, ScaleChangedHandler, NoteHandler {	
+/**
+ * Merges the pedals of the autoplayed tracks, which are all played on the one channel of the keyboard.
+ * A pedal is down while any channel of any track holds it down, so that one track lifting its pedal
+ * doesn't cut off the notes that another track is holding.
+ */
+class MergedPedals {
+	private static final int CHANNELS = 16;
+	
+	// Controllers of the sustain, sostenuto and soft pedals.
+	private static final int[] PEDALS = { 64, 66, 67 };
+	
+	private MidiKeyboard midiKeyboard;
+	
+	// The tracks and channels holding each pedal down, as track * CHANNELS + channel.
+	private BitSet[] down = new BitSet[PEDALS.length];
+	
+	public MergedPedals(MidiKeyboard midiKeyboard) {
+		this.midiKeyboard = midiKeyboard;
+		for(int i = 0; i < PEDALS.length; i++) {
+			down[i] = new BitSet();
+		}
+	}
+	
+	/**
+	 * Updates a pedal from a controller event of a track, sending it if that changes whether it's down.
+	 * Other events are ignored.
+	 */
+	public void controlEvent(int track, int channel, int command, int data1, int data2) {
+		if(command != 0xb0) return;
+		
+		for(int i = 0; i < PEDALS.length; i++) {
+			if(PEDALS[i] == data1) {
+				boolean wasDown = !down[i].isEmpty();
+				down[i].set(track * CHANNELS + channel, data2 >= 64);
+				sendIfChanged(i, wasDown);
+			}
+		}
+	}
+	
+	/**
+	 * Lifts the pedals of a track that is no longer autoplayed.
+	 */
+	public void releaseTrack(int track) {
+		for(int i = 0; i < PEDALS.length; i++) {
+			boolean wasDown = !down[i].isEmpty();
+			down[i].clear(track * CHANNELS, (track + 1) * CHANNELS);
+			sendIfChanged(i, wasDown);
+		}
+	}
+	
+	/**
+	 * Lifts every pedal, before the state at a new position is replayed.
+	 */
+	public void clear() {
+		for(int i = 0; i < PEDALS.length; i++) {
+			down[i].clear();
+			midiKeyboard.sendControlChange(PEDALS[i], 0);
+		}
+	}
+	
+	private void sendIfChanged(int pedal, boolean wasDown) {
+		boolean isDown = !down[pedal].isEmpty();
+		if(isDown != wasDown) {
+			midiKeyboard.sendControlChange(PEDALS[pedal], isDown ? 127 : 0);
+		}
+	}
+}
+
+public class Controller implements PositionChangedHandler, TempoChangedHandler, ScaleChangedHandler, NoteHandler, NoteClickedHandler {	
+	// Milliseconds between each scroll step while playing.
+	private static final int SCROLL_INTERVAL = 20;
+	
+	// Longest time in microseconds to advance in one scroll step, so a stalled UI thread doesn't skip ahead.
+	private static final long MAX_SCROLL_STEP = 100000;
+	
+	// Longest time in milliseconds to play a note that was clicked on.
+	private static final int MAX_AUDITION_MILLIS = 2000;
+	
+	// Ticks in each pixel of the notes at each position of the note scale, from the most zoomed out. At the
+	// far end, a sixteenth note is shorter than a pixel at any resolution up to 960 ticks per quarter note,
+	// so dense passages are drawn from a density map. The scale starts at 7 ticks a pixel.
+	private static final int[] NOTE_SCALES = { 512, 384, 256, 192, 128, 96, 64, 48, 32, 24, 16, 12, 8, 7, 6, 5, 4, 3, 2, 1 };
+	private static final int DEFAULT_NOTE_SCALE = 13;
+	
+	// Most ticks in each pixel of the score, as note heads any closer would overlap.
+	private static final int MAX_SCORE_SCALE = 8;
+	
 	private TracksController tracksController;
 	private MainView mainView;
 	
 	private Set<Note> oldNotes = new HashSet<Note>();
 	private int tempo;
 	
-	private WaitingNotes waitingNotes = new WaitingNotes();
+	// The loaded file and track settings. Each change publishes a new snapshot, so other threads
+	// can read the settings without locking.
+	private final AtomicReference<Song> song = new AtomicReference<Song>();
+	
+	private WaitingNotes waitingNotes = new WaitingNotes(song);
 	
 	private Set<Pitch> notesOn = new HashSet<Pitch>();
 	
 	private MidiKeyboard midiKeyboard;
+	private MergedPedals pedals;
 	
 	private boolean playing = false;
-	private MidiFile midiFile;
+	private long lastScrollTime;
+	private double playbackMicros;
+	private int scrolledTicks = -1;
+	
+	// Cursors through the controller events of each track, handlers passing each track's events to the
+	// pedals, and the tick the cursors were last moved to.
+	private List<ControllerCursor> controllerCursors = new ArrayList<ControllerCursor>();
+	private List<ControllerHandler> controllerHandlers = new ArrayList<ControllerHandler>();
+	private int controllerTicks = -1;
+	private MidiFileCache midiFileCache = MidiFileCache.getDefault();
+	private FileLoader fileLoader;
+	
+	// Loader of the displayed file, which releases it when it's replaced.
+	private FileLoader displayedFileLoader;
+	private boolean previewLoaded = false;
 	private List<Integer> repeats = new ArrayList<Integer>();
 
 	public Controller(final MainView mainView) throws MidiUnavailableException, InvalidMidiDataException {
 		this.mainView = mainView;
 		
-		this.tracksController = new TracksController(mainView);
+		this.tracksController = new TracksController(mainView, this);
 		
 		this.midiKeyboard = new MidiKeyboard();
+		this.pedals = new MergedPedals(midiKeyboard);
 
 		// Scroll forward through the file continuously.
+		lastScrollTime = System.nanoTime();
 		Display.getCurrent().timerExec(200, new Runnable() {
 			public void run() {
-				if(playing) {
-					if(!waitingNotes.waiting()) {
-						mainView.getScrolledNotesCanvas().scrollForward();
-					}
-				}
-				Display.getCurrent().timerExec(80 + 2 - tempo, this);
+				scrollPlayback();
+				Display.getCurrent().timerExec(SCROLL_INTERVAL, this);
 			}
 		});
 		
 		Tempo tempoScale = mainView.getTempoScale();
 		NoteScale noteScale = mainView.getNoteScale();
 		
-		this.tempo = 65;
+		// The tempo is a percentage of the tempo in the file.
+		this.tempo = 100;
+		tempoScale.setRange(25, 200);
 		tempoScale.setTempo(tempo);
-		tempoScale.setRange(40, 80);
 		
-		noteScale.setRange(1, 8);
-		noteScale.setScale(2);
-		scaleChanged(2);
+		noteScale.setRange(0, NOTE_SCALES.length - 1);
+		noteScale.setScale(DEFAULT_NOTE_SCALE);
+		scaleChanged(DEFAULT_NOTE_SCALE);
 		
 		mainView.getScrolledNotesCanvas().addPositionChangeHandler(this);
+		mainView.getScrolledNotesCanvas().addNoteClickedHandler(this);
 		tempoScale.addTempoChangedHandler(this);
 		noteScale.addScaleChangedHandler(this);
 		
@@ -154,13 +280,55 @@ public class Controller implements PositionChangedHandler, TempoChangedHandler,
 		midiKeyboard.close();
 	}
 	
+	/**
+	 * Scrolls forward by the time since the last call, following the tempo changes in the file.
+	 */
+	private void scrollPlayback() {
+		long now = System.nanoTime();
+		long elapsed = (now - lastScrollTime) / 1000;
+		lastScrollTime = now;
+		
+		// Count the steps that were missed because the UI thread was busy.
+		mainView.getPaintStatsOverlay().addDroppedTicks((int)Math.max(0, elapsed / (SCROLL_INTERVAL * 1000) - 1));
+		elapsed = Math.min(elapsed, MAX_SCROLL_STEP);
+		
+		Song currentSong = song.get();
+		if(!playing || currentSong == null || waitingNotes.waiting()) return;
+		
+		ScrolledNotesCanvas scrolledNotesCanvas = mainView.getScrolledNotesCanvas();
+		TempoMap tempoMap = currentSong.getMidiFile().getTempoMap();
+		
+		// Start from the current position if it was moved since the last step.
+		int ticks = scrolledNotesCanvas.getPosition();
+		if(ticks != scrolledTicks) {
+			playbackMicros = tempoMap.getMicros(ticks);
+		}
+		
+		playbackMicros += elapsed * tempo / 100.0;
+		
+		scrolledNotesCanvas.scrollToTicks(tempoMap.getTick((long)playbackMicros));
+		scrolledTicks = scrolledNotesCanvas.getPosition();
+	}
+	
+	/**
+	 * Returns the duration of a note in milliseconds at the current tempo.
+	 */
+	private int getDurationMillis(MidiFile midiFile, Note note) {
+		TempoMap tempoMap = midiFile.getTempoMap();
+		long micros = tempoMap.getMicros(note.getEndTime()) - tempoMap.getMicros(note.getStartTime());
+		return (int)(micros * 100 / tempo / 1000);
+	}
+	
 	@Override
 	public void positionChanged(int newPosition) {
 		ScrolledNotesCanvas scrolledNotesCanvas = mainView.getScrolledNotesCanvas();
 		
+		final Song currentSong = song.get();
+		if(currentSong == null) return;
+		
 		if(playing && repeats.size() == 2) {
-			if(newPosition < repeats.get(1)) {
-				scrolledNotesCanvas.scrollToPosition(repeats.get(0));
+			if(newPosition > repeats.get(1)) {
+				scrolledNotesCanvas.scrollToTicks(repeats.get(0));
 				return;
 			}
 		}
@@ -187,10 +355,12 @@ public class Controller implements PositionChangedHandler, TempoChangedHandler,
 		waitingNotes.setAutoplayCallback(new Runnable() {
 			public void run() {
 				try {
+					// Use the settings at the time the callback runs, as they may have changed while waiting.
+					Song playedSong = song.get();
 					for(Note note:newNotes) {
-						if(note.getTrack().isActive()) {
-							if(note.getTrack().isAutoplay()) {
-								midiKeyboard.play(note.getPitch(), note.getVelocity(), note.getDuration());
+						if(playedSong.isActive(note.getTrack())) {
+							if(playedSong.isAutoplay(note.getTrack())) {
+								midiKeyboard.play(note.getPitch(), note.getVelocity(), getDurationMillis(playedSong.getMidiFile(), note));
 							}
 						}
 					}
@@ -201,45 +371,88 @@ public class Controller implements PositionChangedHandler, TempoChangedHandler,
 		});
 		
 		// Display waiting notes as guide lights, or all notes if all tracks are autoplayed.
-		if(anyActiveNonAutoplay()) {
+		if(anyActiveNonAutoplay(currentSong)) {
 			if(waitingNotes.waiting()) {
 				// Display the notes we are waiting for.
 				midiKeyboard.setGuideLightsFromNotes(waitingNotes.getWaitingNotes());
 			} else {
 				// Display next notes if we aren't waiting for any right now.
 				Set<Note> nextNotes = scrolledNotesCanvas.getNotesAfterPosition(newPosition);
-				midiKeyboard.setGuideLightsFromNotes(Controller.filterWaitable(nextNotes));
+				midiKeyboard.setGuideLightsFromNotes(Controller.filterWaitable(nextNotes, currentSong));
 			}
 		} else {
-			midiKeyboard.setGuideLightsFromNotes(getActiveNotes(notes));
+			midiKeyboard.setGuideLightsFromNotes(getActiveNotes(notes, currentSong));
 		}
 		
 		// Update oldNotes.
 		oldNotes = notes;
 		
+		sendControllers(currentSong, newPosition);
+		
 		ScoreCanvas scoreCanvas = mainView.getScoreCanvas();
-		scoreCanvas.positionChanged(scrolledNotesCanvas.getTicksFromBeginning(newPosition));
+		scoreCanvas.positionChanged(newPosition);
+	}
+	
+	/**
+	 * Sends the pedals of autoplayed tracks up to a tick to the keyboard. After a jump, the pedals at the
+	 * new position are sent instead of every event in between.
+	 *
+	 * Autoplayed notes are all played on one channel, with the piano program that MidiKeyboard.play()
+	 * sets before each note. So only the pedals are sent, merged across tracks. Controllers such as the
+	 * volume belong to a single part, and sending them would apply one track's values to every track.
+	 * A program change would be undone by the next note, and a pitch bend would bend every track.
+	 */
+	private void sendControllers(Song currentSong, int ticks) {
+		MidiFile midiFile = currentSong.getMidiFile();
+		
+		boolean jump = (controllerTicks == -1 || ticks < controllerTicks || ticks - controllerTicks > midiFile.getResolution() * 4);
+		controllerTicks = ticks;
+		
+		if(jump) {
+			pedals.clear();
+		}
+		
+		for(int i = 0; i < controllerCursors.size(); i++) {
+			MidiTrack track = midiFile.getTracks().get(i);
+			ControllerCursor cursor = controllerCursors.get(i);
+			boolean send = currentSong.isActive(track) && currentSong.isAutoplay(track);
+			
+			ControllerHandler handler = controllerHandlers.get(i);
+			
+			if(!send) {
+				pedals.releaseTrack(i);
+			}
+			
+			if(jump) {
+				cursor.seek(ticks);
+				if(send) {
+					cursor.getState().replay(ticks, handler);
+				}
+			} else {
+				cursor.advance(ticks, send ? handler : null);
+			}
+		}
 	}
 	
 	/**
 	 * Return the notes in allNotes that we need to wait for (within an active track that is not autoplayed).
 	 */
-	static Set<Note> filterWaitable(Collection<Note> allNotes) {
+	static Set<Note> filterWaitable(Collection<Note> allNotes, Song song) {
 		Set<Note> waitableNotes = new HashSet<Note>();
 		for(Note note:allNotes) {
 			MidiTrack track = note.getTrack();
-			if(track.isActive() && !track.isAutoplay()) {
+			if(song.isActive(track) && !song.isAutoplay(track)) {
 				waitableNotes.add(note);
 			}
 		}
 		return waitableNotes;
 	}
 	
-	private Set<Note> getActiveNotes(Set<Note> notes) {
+	private Set<Note> getActiveNotes(Set<Note> notes, Song song) {
 		Set<Note> activeNotes = new HashSet<Note>();
 		
 		for(Note note:notes) {
-			if(note.getTrack().isActive()) {
+			if(song.isActive(note.getTrack())) {
 				activeNotes.add(note);
 			}
 		}
@@ -250,20 +463,68 @@ public class Controller implements PositionChangedHandler, TempoChangedHandler,
 	/**
 	 * Returns whether there are any active non-autoplayed tracks loaded.
 	 */
-	private boolean anyActiveNonAutoplay() {
-		if(midiFile == null) return false;
-		
-		for(MidiTrack track:midiFile.getTracks()) {
-			if(!track.isAutoplay() && track.isActive()) {
+	private boolean anyActiveNonAutoplay(Song song) {
+		for(MidiTrack track:song.getMidiFile().getTracks()) {
+			if(!song.isAutoplay(track) && song.isActive(track)) {
 				return true;
 			}
 		}
 		return false;
 	}
 
+	/**
+	 * Returns the current snapshot of the loaded file and track settings, or null if no file is loaded.
+	 */
+	public Song getSong() {
+		return song.get();
+	}
+	
+	/**
+	 * Sets whether a track is shown and played.
+	 */
+	public void setTrackActive(MidiTrack track, boolean active) {
+		Song oldSong, newSong;
+		do {
+			oldSong = song.get();
+			newSong = oldSong.withActive(track, active);
+		} while(!song.compareAndSet(oldSong, newSong));
+		
+		mainView.setSong(newSong);
+	}
+	
+	/**
+	 * Sets whether a track is played automatically rather than waiting for the user.
+	 */
+	public void setTrackAutoplay(MidiTrack track, boolean autoplay) {
+		Song oldSong, newSong;
+		do {
+			oldSong = song.get();
+			newSong = oldSong.withAutoplay(track, autoplay);
+		} while(!song.compareAndSet(oldSong, newSong));
+		
+		mainView.setSong(newSong);
+	}
+
 	public void setScale(int scale) {
-		mainView.getScrolledNotesCanvas().setScale(9 - scale);
-		mainView.getScoreCanvas().setScale(9 - scale);
+		mainView.getScrolledNotesCanvas().setScale(NOTE_SCALES[scale]);
+		mainView.getScoreCanvas().setScale(Math.min(NOTE_SCALES[scale], MAX_SCORE_SCALE));
+	}
+	
+	/**
+	 * Moves the note scale a number of steps, keeping the notes at a position on the notes canvas in place.
+	 */
+	public void zoom(int steps, int y) {
+		NoteScale noteScale = mainView.getNoteScale();
+		int oldScale = noteScale.getScale();
+		
+		// The scale control keeps its selection within its range.
+		noteScale.setScale(oldScale + steps);
+		int scale = noteScale.getScale();
+		if(scale == oldScale) return;
+		
+		mainView.getScrolledNotesCanvas().setScale(NOTE_SCALES[scale], y);
+		mainView.getScoreCanvas().setScale(Math.min(NOTE_SCALES[scale], MAX_SCORE_SCALE));
+		mainView.getScoreCanvas().redraw();
 	}
 
 	@Override
@@ -271,21 +532,131 @@ public class Controller implements PositionChangedHandler, TempoChangedHandler,
 		setTempo(newTempo);
 	}
 	
-	public void openFile(String filename) throws IOException, InvalidMidiDataException {
+	/**
+	 * Starts loading a midi file in the background, cancelling any file that is still loading.
+	 * The filename can name an entry in a zip archive, as "archive.zip!/entry.mid". If it names
+	 * the archive itself, the user is asked which of its files to open.
+	 */
+	public void openFile(String filename) {
+		MidiSource source = MidiSource.fromPath(filename);
+		
+		try {
+			if(source.getEntryName() == null && MidiSource.isArchive(source.getFile())) {
+				List<String> entryNames = MidiSource.getEntryNames(source.getFile());
+				if(entryNames.isEmpty()) {
+					mainView.displayErrorMessage("No midi files in " + source.getName());
+					return;
+				}
+				
+				String entryName = mainView.chooseArchiveEntry(source.getName(), entryNames);
+				if(entryName == null) return;
+				
+				source = new MidiSource(source.getFile(), entryName);
+			}
+		} catch(IOException e) {
+			mainView.displayErrorMessage("Error opening file: " + e.getMessage());
+			return;
+		}
+		
+		if(fileLoader != null) {
+			fileLoader.cancel();
+		}
+		
+		playing = false;
+		previewLoaded = false;
+		
+		mainView.setTitle("Midi: " + source.getName() + " (Loading)");
+		
+		fileLoader = new FileLoader(this, source, midiFileCache, mainView.getShell().getDisplay());
+		fileLoader.start();
+	}
+	
+	/**
+	 * Called on the UI thread when a file has loaded, or when the beginning of it has loaded if complete is false.
+	 */
+	void fileLoaded(FileLoader loader, MidiFile loadedFile, boolean complete) {
+		if(loader != fileLoader) return;
+		
 		ScrolledNotesCanvas scrolledNotesCanvas = mainView.getScrolledNotesCanvas();
 		ScoreCanvas scoreCanvas = mainView.getScoreCanvas();
 		
-		playing = false;
+		// Add the tracks to the views, keeping the position and track settings if the beginning was already shown.
+		// The song is published first, as setting the file can move the position.
+		Song oldSong = song.get();
+		Song newSong = previewLoaded ? song.get().withMidiFile(loadedFile) : new Song(loadedFile);
+		song.set(newSong);
+		mainView.setSong(newSong);
+		
+		controllerCursors.clear();
+		controllerHandlers.clear();
+		for(int i = 0; i < loadedFile.getTracks().size(); i++) {
+			final int track = i;
+			controllerCursors.add(loadedFile.getControllers(i).getCursor());
+			controllerHandlers.add(new ControllerHandler() {
+				public void controlEvent(int tick, int channel, int command, int data1, int data2) {
+					pedals.controlEvent(track, channel, command, data1, data2);
+				}
+			});
+		}
+		controllerTicks = -1;
+		
+		// Forget the notes of the old file, as they're read from its store. Clearing the waiting notes
+		// waits for any key press that the midi input thread is checking against them.
+		waitingNotes.clear();
+		oldNotes.clear();
+		
+		if(previewLoaded) {
+			scrolledNotesCanvas.replaceMidiFile(loadedFile);
+		} else {
+			scrolledNotesCanvas.setMidiFile(loadedFile);
+		}
+		scoreCanvas.setMidiFile(loadedFile);
+		tracksController.setTracks(loadedFile.getTracks());
 		
-		mainView.setTitle("Midi: " + new File(filename).getName());
+		// Release the old file now that the views have switched over. Its loader may still be writing it to the cache.
+		if(oldSong != null) {
+			displayedFileLoader.release(oldSong.getMidiFile());
+		}
+		displayedFileLoader = loader;
 		
-		// Get tracks from a file and add them to the views.
-		this.midiFile = new MidiFile(new File(filename));
-		List<MidiTrack> tracks = midiFile.getTracks();
+		previewLoaded = !complete;
 		
-		scrolledNotesCanvas.setMidiFile(midiFile);
-		scoreCanvas.setMidiFile(midiFile);
-		tracksController.setTracks(tracks);
+		if(complete) {
+			mainView.setTitle("Midi: " + loader.getSource().getName());
+			fileLoader = null;
+		}
+	}
+	
+	/**
+	 * Called on the UI thread as a file loads.
+	 */
+	void fileLoadProgress(FileLoader loader, int percentDone) {
+		if(loader != fileLoader) return;
+		
+		mainView.setTitle("Midi: " + loader.getSource().getName() + " (Loading " + percentDone + "%)");
+	}
+	
+	/**
+	 * Called on the UI thread when a file couldn't be loaded.
+	 */
+	void fileLoadFailed(FileLoader loader, Exception e) {
+		if(loader != fileLoader) return;
+		
+		fileLoader = null;
+		
+		// Keep showing the beginning of the file if it was already shown, marked as incomplete. It's released
+		// through displayedFileLoader when the next file is shown, like any other file. Otherwise the file
+		// that was shown before is still there, so keep its title.
+		if(previewLoaded) {
+			mainView.setTitle("Midi: " + loader.getSource().getName() + " (Incomplete)");
+		} else if(displayedFileLoader != null) {
+			mainView.setTitle("Midi: " + displayedFileLoader.getSource().getName());
+		} else {
+			mainView.setTitle("Midi");
+		}
+		previewLoaded = false;
+		
+		mainView.displayErrorMessage("Error loading file: " + e.getMessage());
 	}
 
 	public void playPause() {
@@ -302,6 +673,22 @@ public class Controller implements PositionChangedHandler, TempoChangedHandler,
 		mainView.getScrolledNotesCanvas().redraw();
 	}
 
+	/**
+	 * Plays a note that was clicked on, for no longer than MAX_AUDITION_MILLIS.
+	 */
+	@Override
+	public void noteClicked(Note note) {
+		Song currentSong = song.get();
+		if(currentSong == null) return;
+		
+		try {
+			int duration = Math.min(getDurationMillis(currentSong.getMidiFile(), note), MAX_AUDITION_MILLIS);
+			midiKeyboard.play(note.getPitch(), note.getVelocity(), duration);
+		} catch(Exception e) {
+			e.printStackTrace();
+		}
+	}
+
 	@Override
 	public void noteOn(Pitch pitch) {
 		PianoCanvas pianoCanvas = mainView.getPianoCanvas();
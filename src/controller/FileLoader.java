@@ -0,0 +1,173 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.LoadMonitor;
+import model.MidiFile;
+import model.MidiFileCache;
+import model.MidiSource;
+
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Loads a midi file on a background thread, passing the results back to the Controller on the UI thread.
+ * Files that aren't cached and are large are delivered twice: first just the opening bars so that they
+ * can be displayed straight away, then the whole file. Compressed files are only delivered once, as
+ * reading their opening bars would mean inflating them twice.
+ *
+ * A file that wasn't cached is written to the cache after it has been delivered, at a low priority,
+ * so that writing a large entry doesn't delay showing the file. Files that are replaced are released
+ * through the loader that delivered them, which waits until it has finished writing them.
+ */
+class FileLoader implements Runnable, LoadMonitor {
+	// Number of quarter notes to read for the first delivery.
+	private static final int PREVIEW_QUARTER_NOTES = 64;
+
+	// Files smaller than this are delivered only once.
+	private static final long PREVIEW_MIN_SIZE = 1024 * 1024;
+
+	private Controller controller;
+	private MidiSource source;
+	private long length;
+	private MidiFileCache midiFileCache;
+	private Display display;
+
+	private volatile boolean cancelled = false;
+	private AtomicLong bytesDecoded = new AtomicLong();
+	private volatile int percentDone = 0;
+
+	// Whether the loader has finished with the files it delivered, and the files to release when it has.
+	private boolean finished = false;
+	private List<MidiFile> releasedFiles = new ArrayList<MidiFile>();
+
+	public FileLoader(Controller controller, MidiSource source, MidiFileCache midiFileCache, Display display) {
+		this.controller = controller;
+		this.source = source;
+		this.midiFileCache = midiFileCache;
+		this.display = display;
+	}
+
+	/**
+	 * Starts loading the file on a new thread.
+	 */
+	public void start() {
+		Thread thread = new Thread(this, "Load " + source.getName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops loading the file. Nothing more will be delivered to the controller.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public MidiSource getSource() {
+		return source;
+	}
+
+	/**
+	 * Releases a file delivered by this loader once it isn't displayed any more. If the loader is still
+	 * writing it to the cache, it's released when the loader has finished.
+	 */
+	public synchronized void release(MidiFile midiFile) {
+		if(finished) {
+			midiFile.release();
+		} else {
+			releasedFiles.add(midiFile);
+		}
+	}
+
+	/**
+	 * Called when the loader has finished, releasing the files that were released while it ran.
+	 */
+	private synchronized void finish() {
+		finished = true;
+		for(MidiFile midiFile:releasedFiles) {
+			midiFile.release();
+		}
+		releasedFiles.clear();
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public void worked(int bytes) {
+		// Progress can't be shown if the length of compressed data isn't known.
+		if(length <= 0) return;
+		
+		int percent = (int)Math.min(100, bytesDecoded.addAndGet(bytes) * 100 / Math.max(1, length));
+
+		// Only update the display when the percentage changes.
+		if(percent != percentDone) {
+			percentDone = percent;
+
+			display.asyncExec(new Runnable() {
+				public void run() {
+					if(!cancelled) {
+						controller.fileLoadProgress(FileLoader.this, percentDone);
+					}
+				}
+			});
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			MidiFile midiFile = midiFileCache.get(source);
+
+			if(midiFile != null) {
+				deliver(midiFile, true);
+			} else {
+				length = source.getLength();
+				
+				if(!source.isCompressed() && length >= PREVIEW_MIN_SIZE) {
+					deliver(MidiFile.readBeginning(source.getFile(), PREVIEW_QUARTER_NOTES), false);
+				}
+
+				midiFile = MidiFile.read(source, this);
+				deliver(midiFile, true);
+				
+				Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+				midiFileCache.put(source, midiFile);
+			}
+		} catch(CancellationException e) {
+			// A newer file is being loaded instead.
+		} catch(final Exception e) {
+			e.printStackTrace();
+
+			display.asyncExec(new Runnable() {
+				public void run() {
+					if(!cancelled) {
+						controller.fileLoadFailed(FileLoader.this, e);
+					}
+				}
+			});
+		} finally {
+			finish();
+		}
+	}
+
+	/**
+	 * Passes a midi file to the controller on the UI thread, or releases it if loading has been cancelled.
+	 */
+	private void deliver(final MidiFile midiFile, final boolean complete) {
+		display.asyncExec(new Runnable() {
+			public void run() {
+				if(!cancelled) {
+					controller.fileLoaded(FileLoader.this, midiFile, complete);
+				} else {
+					release(midiFile);
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,13 @@
+package controller;
+
+import model.Note;
+
+/**
+ * A class that can be notified when a note is clicked.
+ */
+public interface NoteClickedHandler {
+	/**
+	 * Called when a note is clicked on the notes canvas.
+	 */
+	void noteClicked(Note note);
+}
@@ -4,7 +4,7 @@ import java.util.List;
 
 import model.MidiTrack;
 
-import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.RGB;
 
 import view.MainView;
 import view.table.CheckColumn;
@@ -18,13 +18,13 @@ import view.table.TextColumn;
 public class TracksController {
 	private MainView mainView;
 
-	public TracksController(final MainView mainView) {
+	public TracksController(final MainView mainView, final Controller controller) {
 		this.mainView = mainView;
 
 		CustomTable<MidiTrack> tracksTable = mainView.getTracksTable();
 
 		tracksTable.addColumn(new ColorColumn<MidiTrack>("Color", 40) {
-			public Color getColor(MidiTrack track) {
+			public RGB getColor(MidiTrack track) {
 				return mainView.getColors().getTrackColor(track);
 			}
 		});
@@ -37,38 +37,29 @@ public class TracksController {
 		
 		tracksTable.addColumn(new CheckColumn<MidiTrack>("Active", 50) {
 			public boolean isChecked(MidiTrack track) {
-				return track.isActive();
+				return controller.getSong().isActive(track);
 			}
 			
 			public void setChecked(MidiTrack track, boolean checked) {
-				track.setActive(checked);
-				selectedTracksChanged();
+				controller.setTrackActive(track, checked);
 			}
 		});
 		
 		tracksTable.addColumn(new CheckColumn<MidiTrack>("Autoplay", 50) {
 			public boolean isChecked(MidiTrack track) {
-				return track.isAutoplay();
+				return controller.getSong().isAutoplay(track);
 			}
 
 			public void setChecked(MidiTrack track, boolean checked) {
-				track.setAutoplay(checked);
-				selectedTracksChanged();
+				controller.setTrackAutoplay(track, checked);
 			}
 		});
 	}
 	
+	/**
+	 * Displays the tracks of a file. Their settings are read from the controller's current song.
+	 */
 	public void setTracks(List<MidiTrack> tracks) {
-		for(MidiTrack track:tracks) {
-			track.setActive(true);
-			track.setAutoplay(true);
-		}
-		
 		mainView.getTracksTable().setRows(tracks);
-		selectedTracksChanged();
-	}
-	
-	public void selectedTracksChanged() {
-		mainView.redraw();
 	}
 }
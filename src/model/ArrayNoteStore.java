@@ -0,0 +1,100 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Stores notes on the heap in parallel primitive arrays.
+ */
+class ArrayNoteStore extends NoteStore {
+	private int[] startTimes;
+	private int[] endTimes;
+	private byte[] pitches;
+	private byte[] velocities;
+	private short[] tracks;
+	private int size;
+
+	ArrayNoteStore(int capacity) {
+		startTimes = new int[capacity];
+		endTimes = new int[capacity];
+		pitches = new byte[capacity];
+		velocities = new byte[capacity];
+		tracks = new short[capacity];
+	}
+
+	private void ensureCapacity(int capacity) {
+		if(capacity > startTimes.length) {
+			capacity = Math.max(capacity, Math.max(16, startTimes.length * 2));
+			startTimes = Arrays.copyOf(startTimes, capacity);
+			endTimes = Arrays.copyOf(endTimes, capacity);
+			pitches = Arrays.copyOf(pitches, capacity);
+			velocities = Arrays.copyOf(velocities, capacity);
+			tracks = Arrays.copyOf(tracks, capacity);
+		}
+	}
+
+	@Override
+	int add(int startTime, int pitch, int velocity) {
+		ensureCapacity(size + 1);
+
+		startTimes[size] = startTime;
+		endTimes[size] = -1;
+		pitches[size] = (byte)pitch;
+		velocities[size] = (byte)velocity;
+		return size++;
+	}
+
+	@Override
+	void setEndTime(int row, int endTime) {
+		endTimes[row] = endTime;
+	}
+
+	@Override
+	void setRow(int row, int startTime, int endTime, int pitch, int velocity, int track) {
+		startTimes[row] = startTime;
+		endTimes[row] = endTime;
+		pitches[row] = (byte)pitch;
+		velocities[row] = (byte)velocity;
+		tracks[row] = (short)track;
+	}
+
+	@Override
+	void setSize(int size) {
+		ensureCapacity(size);
+		this.size = size;
+	}
+
+	@Override
+	public boolean isMapped() {
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int getStartTime(int row) {
+		return startTimes[row];
+	}
+
+	@Override
+	public int getEndTime(int row) {
+		return endTimes[row];
+	}
+
+	@Override
+	public int getMidiNumber(int row) {
+		return pitches[row];
+	}
+
+	@Override
+	public int getVelocity(int row) {
+		return velocities[row];
+	}
+
+	@Override
+	public int getTrackIndex(int row) {
+		return tracks[row] & 0xffff;
+	}
+}
@@ -0,0 +1,89 @@
+package model;
+
+/**
+ * A position within a ControllerStream, with the state of every controller at that position.
+ * Seeking to any tick takes O(log n) time, and moving forward visits each event once.
+ */
+public class ControllerCursor {
+	private ControllerStream stream;
+	private ControllerState state = new ControllerState();
+
+	// Byte offset and index of the next event, and the tick of the previous event.
+	private int offset;
+	private int index;
+	private int tick;
+
+	// Offset of the status byte of the next event, set by getNextTick().
+	private int dataOffset;
+
+	ControllerCursor(ControllerStream stream) {
+		this.stream = stream;
+	}
+
+	/**
+	 * Moves to just after the events at or before a tick.
+	 */
+	public void seek(int tick) {
+		int checkpoint = stream.findCheckpoint(tick);
+
+		if(checkpoint < stream.getCheckpointCount()) {
+			stream.restoreSnapshot(checkpoint, state);
+			offset = stream.getCheckpointOffset(checkpoint);
+			index = stream.getCheckpointIndex(checkpoint);
+			this.tick = stream.getCheckpointTick(checkpoint);
+		}
+
+		advance(tick, null);
+	}
+
+	/**
+	 * Moves forward past the events at or before a tick, calling the handler, if not null, for each of them.
+	 */
+	public void advance(int tick, ControllerHandler handler) {
+		byte[] events = stream.getEvents();
+
+		while(index < stream.size()) {
+			int nextTick = getNextTick();
+			if(nextTick > tick) break;
+
+			int status = events[dataOffset] & 0xff;
+			int data1 = events[dataOffset + 1];
+			int data2 = events[dataOffset + 2];
+
+			this.tick = nextTick;
+			state.apply(status & 0x0f, status & 0xf0, data1, data2);
+			if(handler != null) {
+				handler.controlEvent(this.tick, status & 0x0f, status & 0xf0, data1, data2);
+			}
+
+			offset = dataOffset + 3;
+			index++;
+		}
+	}
+
+	/**
+	 * Returns the tick of the next event, or Integer.MAX_VALUE if there are no more.
+	 */
+	public int getNextTick() {
+		if(index >= stream.size()) return Integer.MAX_VALUE;
+
+		byte[] events = stream.getEvents();
+		int delta = 0;
+		int position = offset;
+		int b;
+		do {
+			b = events[position++];
+			delta = (delta << 7) | (b & 0x7f);
+		} while((b & 0x80) != 0);
+
+		dataOffset = position;
+		return tick + delta;
+	}
+
+	/**
+	 * Returns the state of the controllers at the cursor.
+	 */
+	public ControllerState getState() {
+		return state;
+	}
+}
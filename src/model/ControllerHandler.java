@@ -0,0 +1,13 @@
+package model;
+
+/**
+ * A class that can be notified of controller events: control changes, program changes and pitch bends.
+ */
+public interface ControllerHandler {
+	/**
+	 * Called for a controller event.
+	 * @param command The midi command: 0xb0 for a control change, 0xc0 for a program change or 0xe0 for a pitch bend.
+	 * @param data2 The second data byte, or 0 for a program change.
+	 */
+	void controlEvent(int tick, int channel, int command, int data1, int data2);
+}
@@ -0,0 +1,106 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * The current values of the controllers, programs and pitch bends of the 16 midi channels.
+ * Values that have never been set are -1, and the values that have been set are remembered in order,
+ * so they can be replayed without going through every controller of every channel.
+ */
+public class ControllerState {
+	private static final int CHANNELS = 16;
+
+	// Slots of each channel: one for each controller, then the program and the pitch bend.
+	private static final int SLOTS = 130;
+	private static final int PROGRAM = 128;
+	private static final int PITCH_BEND = 129;
+
+	private static final int SUSTAIN = 64;
+
+	private int[] values = new int[CHANNELS * SLOTS];
+	private IntList setSlots = new IntList();
+
+	public ControllerState() {
+		Arrays.fill(values, -1);
+	}
+
+	/**
+	 * Updates the state from a controller event.
+	 */
+	void apply(int channel, int command, int data1, int data2) {
+		if(command == 0xb0) {
+			set(channel * SLOTS + data1, data2);
+		} else if(command == 0xc0) {
+			set(channel * SLOTS + PROGRAM, data1);
+		} else if(command == 0xe0) {
+			set(channel * SLOTS + PITCH_BEND, data1 | data2 << 7);
+		}
+	}
+
+	private void set(int slot, int value) {
+		if(values[slot] == -1) {
+			setSlots.add(slot);
+		}
+		values[slot] = value;
+	}
+
+	/**
+	 * Resets every value to unset.
+	 */
+	void clear() {
+		Arrays.fill(values, -1);
+		setSlots = new IntList();
+	}
+
+	/**
+	 * Returns the value of a controller on a channel, or -1 if it hasn't been set.
+	 */
+	public int getController(int channel, int controller) {
+		return values[channel * SLOTS + controller];
+	}
+
+	/**
+	 * Returns the program of a channel, or -1 if it hasn't been set.
+	 */
+	public int getProgram(int channel) {
+		return values[channel * SLOTS + PROGRAM];
+	}
+
+	/**
+	 * Returns the 14 bit pitch bend of a channel, or -1 if it hasn't been set.
+	 */
+	public int getPitchBend(int channel) {
+		return values[channel * SLOTS + PITCH_BEND];
+	}
+
+	/**
+	 * Returns whether the sustain pedal is down on any channel.
+	 */
+	public boolean isSustained() {
+		for(int channel = 0; channel < CHANNELS; channel++) {
+			if(values[channel * SLOTS + SUSTAIN] >= 64) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Calls the handler with an event for each value that has been set, in the order they were first set.
+	 */
+	public void replay(int tick, ControllerHandler handler) {
+		for(int i = 0; i < setSlots.size(); i++) {
+			int slot = setSlots.get(i);
+			int channel = slot / SLOTS;
+			int value = values[slot];
+
+			if(slot % SLOTS == PROGRAM) {
+				handler.controlEvent(tick, channel, 0xc0, value, 0);
+			} else if(slot % SLOTS == PITCH_BEND) {
+				handler.controlEvent(tick, channel, 0xe0, value & 0x7f, value >> 7);
+			} else {
+				handler.controlEvent(tick, channel, 0xb0, slot % SLOTS, value);
+			}
+		}
+	}
+}
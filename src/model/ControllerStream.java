@@ -0,0 +1,209 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Stores the controller events of a track, such as the sustain pedal, program changes and pitch bends.
+ *
+ * Events are packed into a byte array in tick order, each as a variable length tick delta from the
+ * previous event followed by the status byte and two data bytes. Every CHECKPOINT_INTERVAL events the
+ * byte offset, tick and a snapshot of the controller values set so far are recorded, so a
+ * ControllerCursor can find the state at any tick with a binary search and a short replay.
+ */
+public class ControllerStream {
+	private static final int CHECKPOINT_INTERVAL = 128;
+
+	private byte[] events = new byte[64];
+	private int length = 0;
+	private int size = 0;
+	private int lastTick = 0;
+
+	// Byte offset, tick of the previous event, and snapshot offset of each checkpoint.
+	private IntList checkpointOffsets = new IntList();
+	private IntList checkpointTicks = new IntList();
+	private IntList snapshotOffsets = new IntList();
+
+	// Snapshots of the controller values at each checkpoint, as status and data bytes.
+	private byte[] snapshots = new byte[0];
+	private int snapshotsLength = 0;
+
+	// State of the controllers after the last event added.
+	private ControllerState state = new ControllerState();
+
+	/**
+	 * Appends an event. Events must be added in tick order.
+	 */
+	void add(int tick, int channel, int command, int data1, int data2) {
+		if(size % CHECKPOINT_INTERVAL == 0) {
+			addCheckpoint();
+		}
+
+		ensureCapacity(length + 8);
+		length = writeVariableLength(events, length, tick - lastTick);
+		events[length++] = (byte)(command | channel);
+		events[length++] = (byte)data1;
+		events[length++] = (byte)data2;
+
+		state.apply(channel, command, data1, data2);
+		lastTick = tick;
+		size++;
+	}
+
+	/**
+	 * Records the current offset, tick and state as a checkpoint.
+	 */
+	private void addCheckpoint() {
+		checkpointOffsets.add(length);
+		checkpointTicks.add(lastTick);
+		snapshotOffsets.add(snapshotsLength);
+
+		state.replay(lastTick, new ControllerHandler() {
+			public void controlEvent(int tick, int channel, int command, int data1, int data2) {
+				if(snapshotsLength + 3 > snapshots.length) {
+					snapshots = Arrays.copyOf(snapshots, Math.max(64, snapshots.length * 2));
+				}
+				snapshots[snapshotsLength++] = (byte)(command | channel);
+				snapshots[snapshotsLength++] = (byte)data1;
+				snapshots[snapshotsLength++] = (byte)data2;
+			}
+		});
+	}
+
+	private void ensureCapacity(int capacity) {
+		if(capacity > events.length) {
+			events = Arrays.copyOf(events, Math.max(capacity, events.length * 2));
+		}
+	}
+
+	/**
+	 * Returns the number of events.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a cursor positioned before the first event.
+	 */
+	public ControllerCursor getCursor() {
+		return new ControllerCursor(this);
+	}
+
+	/**
+	 * Returns the last checkpoint whose previous event is at or before a tick.
+	 */
+	int findCheckpoint(int tick) {
+		int low = 0;
+		int high = checkpointTicks.size() - 1;
+		while(low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if(checkpointTicks.get(middle) <= tick) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	int getCheckpointCount() {
+		return checkpointTicks.size();
+	}
+
+	int getCheckpointOffset(int checkpoint) {
+		return checkpointOffsets.get(checkpoint);
+	}
+
+	int getCheckpointTick(int checkpoint) {
+		return checkpointTicks.get(checkpoint);
+	}
+
+	int getCheckpointIndex(int checkpoint) {
+		return checkpoint * CHECKPOINT_INTERVAL;
+	}
+
+	/**
+	 * Restores the snapshot of a checkpoint into a state.
+	 */
+	void restoreSnapshot(int checkpoint, ControllerState target) {
+		target.clear();
+
+		int end = (checkpoint + 1 < snapshotOffsets.size()) ? snapshotOffsets.get(checkpoint + 1) : snapshotsLength;
+		for(int offset = snapshotOffsets.get(checkpoint); offset < end; offset += 3) {
+			int status = snapshots[offset] & 0xff;
+			target.apply(status & 0x0f, status & 0xf0, snapshots[offset + 1], snapshots[offset + 2]);
+		}
+	}
+
+	byte[] getEvents() {
+		return events;
+	}
+
+	/**
+	 * Returns the number of bytes needed to write this stream.
+	 */
+	int getWriteSize() {
+		return 8 + length;
+	}
+
+	/**
+	 * Writes the events to a buffer, to be read back with read(). Checkpoints are rebuilt when reading.
+	 */
+	void write(ByteBuffer buffer) {
+		buffer.putInt(size);
+		buffer.putInt(length);
+		buffer.put(events, 0, length);
+	}
+
+	/**
+	 * Reads events that were written with write().
+	 */
+	static ControllerStream read(ByteBuffer buffer) {
+		int size = buffer.getInt();
+		int length = buffer.getInt();
+		if(size < 0 || length < 0 || length > buffer.remaining()) {
+			throw new IllegalArgumentException("Invalid controller event length: " + length);
+		}
+
+		ByteBuffer events = buffer.slice();
+		events.limit(length);
+		buffer.position(buffer.position() + length);
+
+		ControllerStream stream = new ControllerStream();
+		stream.ensureCapacity(length);
+
+		int tick = 0;
+		for(int i = 0; i < size; i++) {
+			tick += readVariableLength(events);
+			int status = events.get() & 0xff;
+			stream.add(tick, status & 0x0f, status & 0xf0, events.get(), events.get());
+		}
+		return stream;
+	}
+
+	private static int readVariableLength(ByteBuffer buffer) {
+		int value = 0;
+		int b;
+		do {
+			b = buffer.get();
+			value = (value << 7) | (b & 0x7f);
+		} while((b & 0x80) != 0);
+		return value;
+	}
+
+	/**
+	 * Writes a variable length quantity to an array, returning the offset after it.
+	 */
+	private static int writeVariableLength(byte[] array, int offset, int value) {
+		int shift = 28;
+		while(shift > 0 && (value >>> shift) == 0) {
+			shift -= 7;
+		}
+		for(; shift > 0; shift -= 7) {
+			array[offset++] = (byte)(0x80 | ((value >>> shift) & 0x7f));
+		}
+		array[offset++] = (byte)(value & 0x7f);
+		return offset;
+	}
+}
@@ -0,0 +1,152 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * The number of notes starting in each track over fixed ranges of ticks, at several resolutions, so that
+ * an overview of the whole file can be drawn without reading the notes.
+ *
+ * Level 0 divides the file into at most MAX_BUCKETS buckets of equal ticks. Each level after that has
+ * buckets twice as long, with the sums of pairs of buckets from the level before, down to a single bucket.
+ * The notes are counted once, in parallel over ranges of rows.
+ */
+public class DensityHistogram {
+	private static final int MAX_BUCKETS = 2048;
+
+	// Rows counted by each task.
+	private static final int ROWS_PER_TASK = 64 * 1024;
+
+	private int trackCount;
+
+	// Ticks in each bucket of level 0.
+	private int bucketTicks;
+
+	// Buckets of each level, and the counts of each track at each level, indexed by track * buckets + bucket.
+	private int[] bucketCounts;
+	private int[][] counts;
+
+	public DensityHistogram(final NoteStore notes, final int trackCount, int totalTime) {
+		this.trackCount = trackCount;
+
+		int buckets = Math.max(1, Math.min(MAX_BUCKETS, totalTime));
+		this.bucketTicks = Math.max(1, (totalTime + buckets - 1) / buckets);
+		final int firstBuckets = buckets;
+
+		// Count each range of rows separately, then add them together.
+		List<Future<int[]>> results = new ArrayList<Future<int[]>>();
+		for(int start = 0; start < notes.size(); start += ROWS_PER_TASK) {
+			final int startRow = start;
+			final int endRow = Math.min(notes.size(), start + ROWS_PER_TASK);
+			results.add(ForkJoinPool.commonPool().submit(new Callable<int[]>() {
+				public int[] call() {
+					int[] rangeCounts = new int[trackCount * firstBuckets];
+					for(int row = startRow; row < endRow; row++) {
+						int bucket = Math.min(firstBuckets - 1, notes.getStartTime(row) / bucketTicks);
+						rangeCounts[notes.getTrackIndex(row) * firstBuckets + bucket]++;
+					}
+					return rangeCounts;
+				}
+			}));
+		}
+
+		int[] firstCounts = new int[trackCount * firstBuckets];
+		for(Future<int[]> result:results) {
+			int[] rangeCounts = getResult(result);
+			for(int i = 0; i < firstCounts.length; i++) {
+				firstCounts[i] += rangeCounts[i];
+			}
+		}
+
+		int levels = 1;
+		while((1 << (levels - 1)) < firstBuckets) {
+			levels++;
+		}
+
+		bucketCounts = new int[levels];
+		counts = new int[levels][];
+		bucketCounts[0] = firstBuckets;
+		counts[0] = firstCounts;
+
+		for(int level = 1; level < levels; level++) {
+			int previousBuckets = bucketCounts[level - 1];
+			int[] previousCounts = counts[level - 1];
+
+			buckets = (previousBuckets + 1) / 2;
+			int[] levelCounts = new int[trackCount * buckets];
+			for(int track = 0; track < trackCount; track++) {
+				for(int bucket = 0; bucket < previousBuckets; bucket++) {
+					levelCounts[track * buckets + bucket / 2] += previousCounts[track * previousBuckets + bucket];
+				}
+			}
+
+			bucketCounts[level] = buckets;
+			counts[level] = levelCounts;
+		}
+	}
+
+	/**
+	 * Returns the result of a counting task, rethrowing any exception it failed with.
+	 */
+	private static int[] getResult(Future<int[]> result) {
+		try {
+			return result.get();
+		} catch(InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			} else {
+				throw new RuntimeException(cause);
+			}
+		}
+	}
+
+	public int getTrackCount() {
+		return trackCount;
+	}
+
+	public int getLevelCount() {
+		return counts.length;
+	}
+
+	/**
+	 * Returns the level with the fewest buckets that still has at least a number of buckets, or level 0
+	 * if none do. Drawing a number of pixels from this level reads one or two buckets for each pixel.
+	 */
+	public int getLevel(int minBuckets) {
+		for(int level = counts.length - 1; level > 0; level--) {
+			if(bucketCounts[level] >= minBuckets) {
+				return level;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the number of buckets in a level.
+	 */
+	public int getBucketCount(int level) {
+		return bucketCounts[level];
+	}
+
+	/**
+	 * Returns the number of ticks in each bucket of a level.
+	 */
+	public int getBucketTicks(int level) {
+		return bucketTicks << level;
+	}
+
+	/**
+	 * Returns the number of notes of a track starting within a bucket.
+	 * @param track The index of the track within MidiFile.getTracks().
+	 */
+	public int getCount(int level, int track, int bucket) {
+		return counts[level][track * bucketCounts[level] + bucket];
+	}
+}
@@ -0,0 +1,36 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints.
+ */
+public class IntList {
+	private int[] values = new int[8];
+	private int size;
+
+	public void add(int value) {
+		if(size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+		values[size++] = value;
+	}
+
+	public int get(int index) {
+		if(index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		return values[index];
+	}
+
+	public void set(int index, int value) {
+		if(index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		values[index] = value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+}
@@ -0,0 +1,45 @@
+package model;
+
+public class KeySignature {
+	private static final String[] majorKeys = "Cb, Gb, Db, Ab, Eb, Bb, F, C, G, D, A, E, B, F#, C#".split(", ");
+	private static final String[] minorKeys = "Ab, Eb, Bb, F, C, G, D, A, E, B, F#, C#, G#, D#, A#".split(", ");
+
+	private int sharps;
+	private boolean minor;
+
+	/**
+	 * Creates a key signature.
+	 * @param sharps The number of sharps, or minus the number of flats, from -7 to 7.
+	 * @param minor Whether this is a minor key.
+	 */
+	public KeySignature(int sharps, boolean minor) {
+		this.sharps = Math.max(-7, Math.min(7, sharps));
+		this.minor = minor;
+	}
+
+	/**
+	 * Returns the number of sharps, or minus the number of flats.
+	 */
+	public int getSharps() {
+		return sharps;
+	}
+
+	public boolean isMinor() {
+		return minor;
+	}
+
+	/**
+	 * Returns the name of the key. For example: 'D major' or 'F# minor'.
+	 */
+	public String getName() {
+		if(minor) {
+			return minorKeys[sharps + 7] + " minor";
+		} else {
+			return majorKeys[sharps + 7] + " major";
+		}
+	}
+
+	public String toString() {
+		return getName();
+	}
+}
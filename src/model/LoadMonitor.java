@@ -0,0 +1,17 @@
+package model;
+
+/**
+ * A class that can follow the progress of loading a midi file, and cancel it.
+ * Methods may be called from any of the threads decoding the file.
+ */
+public interface LoadMonitor {
+	/**
+	 * Returns whether loading should stop. Loading then ends with a CancellationException.
+	 */
+	boolean isCancelled();
+	
+	/**
+	 * Called as track data is decoded, with the number of bytes decoded since the last call.
+	 */
+	void worked(int bytes);
+}
@@ -0,0 +1,162 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Stores notes outside the heap as fixed width records in memory-mapped buffers.
+ *
+ * The records are split into chunks of CHUNK_RECORDS, each in its own buffer, so that a store can grow
+ * by mapping another chunk rather than copying, and can hold more than one buffer's worth of notes.
+ * A new store maps chunks from a scratch file that is created when the first note is added, and deleted
+ * when the store is released. The file is only open while chunks are being mapped, as a mapping stays
+ * valid after its channel is closed, so decoding a file with thousands of tracks doesn't hold a file
+ * descriptor for each of them. A store can also use records that are already mapped, such as those in a
+ * cache entry.
+ */
+class MappedNoteStore extends NoteStore {
+	private static final int CHUNK_SHIFT = 20;
+	private static final int CHUNK_RECORDS = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_RECORDS - 1;
+
+	private ByteBuffer[] chunks = new ByteBuffer[0];
+	private int chunkCount = 0;
+	private int size;
+
+	private boolean readOnly = false;
+	private File scratchFile;
+
+	/**
+	 * Creates an empty store, which is backed by a scratch file once notes are added.
+	 */
+	MappedNoteStore() {
+	}
+
+	/**
+	 * Creates a read-only store over records that are already in a buffer.
+	 */
+	MappedNoteStore(ByteBuffer records, int size) {
+		for(long start = 0; start < (long)size * RECORD_SIZE; start += (long)CHUNK_RECORDS * RECORD_SIZE) {
+			ByteBuffer chunk = records.duplicate();
+			chunk.position((int)start);
+			chunk.limit((int)Math.min(start + (long)CHUNK_RECORDS * RECORD_SIZE, (long)size * RECORD_SIZE));
+			addChunk(chunk.slice());
+		}
+		this.size = size;
+		this.readOnly = true;
+	}
+
+	/**
+	 * Maps enough chunks from the scratch file to hold a number of records.
+	 */
+	private void ensureCapacity(int capacity) {
+		if((long)chunkCount * CHUNK_RECORDS >= capacity) return;
+
+		if(readOnly) {
+			throw new UnsupportedOperationException("Store is read-only");
+		}
+
+		try {
+			if(scratchFile == null) {
+				scratchFile = File.createTempFile("notes", ".tmp");
+			}
+
+			RandomAccessFile file = new RandomAccessFile(scratchFile, "rw");
+			try {
+				FileChannel channel = file.getChannel();
+				while((long)chunkCount * CHUNK_RECORDS < capacity) {
+					long position = (long)chunkCount * CHUNK_RECORDS * RECORD_SIZE;
+					addChunk(channel.map(FileChannel.MapMode.READ_WRITE, position, (long)CHUNK_RECORDS * RECORD_SIZE));
+				}
+			} finally {
+				file.close();
+			}
+		} catch(IOException e) {
+			throw new RuntimeException("Can't map note storage file", e);
+		}
+	}
+
+	private void addChunk(ByteBuffer chunk) {
+		if(chunkCount == chunks.length) {
+			chunks = Arrays.copyOf(chunks, Math.max(4, chunkCount * 2));
+		}
+		chunks[chunkCount++] = chunk;
+	}
+
+	@Override
+	int add(int startTime, int pitch, int velocity) {
+		ensureCapacity(size + 1);
+		setRow(size, startTime, -1, pitch, velocity, 0);
+		return size++;
+	}
+
+	@Override
+	void setEndTime(int row, int endTime) {
+		chunks[row >>> CHUNK_SHIFT].putInt((row & CHUNK_MASK) * RECORD_SIZE + 4, endTime);
+	}
+
+	@Override
+	void setRow(int row, int startTime, int endTime, int pitch, int velocity, int track) {
+		ByteBuffer chunk = chunks[row >>> CHUNK_SHIFT];
+		int offset = (row & CHUNK_MASK) * RECORD_SIZE;
+		chunk.putInt(offset, startTime);
+		chunk.putInt(offset + 4, endTime);
+		chunk.put(offset + 8, (byte)pitch);
+		chunk.put(offset + 9, (byte)velocity);
+		chunk.putShort(offset + 10, (short)track);
+	}
+
+	@Override
+	void setSize(int size) {
+		ensureCapacity(size);
+		this.size = size;
+	}
+
+	@Override
+	public boolean isMapped() {
+		return true;
+	}
+
+	@Override
+	void release() {
+		chunks = null;
+		if(scratchFile != null) {
+			scratchFile.delete();
+			scratchFile = null;
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int getStartTime(int row) {
+		return chunks[row >>> CHUNK_SHIFT].getInt((row & CHUNK_MASK) * RECORD_SIZE);
+	}
+
+	@Override
+	public int getEndTime(int row) {
+		return chunks[row >>> CHUNK_SHIFT].getInt((row & CHUNK_MASK) * RECORD_SIZE + 4);
+	}
+
+	@Override
+	public int getMidiNumber(int row) {
+		return chunks[row >>> CHUNK_SHIFT].get((row & CHUNK_MASK) * RECORD_SIZE + 8);
+	}
+
+	@Override
+	public int getVelocity(int row) {
+		return chunks[row >>> CHUNK_SHIFT].get((row & CHUNK_MASK) * RECORD_SIZE + 9);
+	}
+
+	@Override
+	public int getTrackIndex(int row) {
+		return chunks[row >>> CHUNK_SHIFT].getShort((row & CHUNK_MASK) * RECORD_SIZE + 10) & 0xffff;
+	}
+}
@@ -0,0 +1,92 @@
+package model;
+
+/**
+ * A min-heap of the sources of a merge, such as the sorted stores of each track, ordered by the key of the
+ * next item of each source, then by the index of the source. So items with the same key are taken in the
+ * order of their sources. Each item taken only moves one source within the heap, so merging n items from
+ * k sources takes O(n log k) time.
+ */
+class MergeHeap {
+	private int[] sources;
+	private int[] keys;
+	private int size = 0;
+
+	public MergeHeap(int capacity) {
+		sources = new int[capacity];
+		keys = new int[capacity];
+	}
+
+	/**
+	 * Adds a source, with the key of its next item.
+	 */
+	public void add(int source, int key) {
+		int i = size++;
+		sources[i] = source;
+		keys[i] = key;
+
+		// Move the source up until its parent is before it.
+		while(i > 0) {
+			int parent = (i - 1) / 2;
+			if(!isBefore(i, parent)) break;
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the source with the earliest next item.
+	 */
+	public int peek() {
+		return sources[0];
+	}
+
+	/**
+	 * Sets the key of the next item of the earliest source, after its item has been taken.
+	 */
+	public void replaceTop(int key) {
+		keys[0] = key;
+		siftDown();
+	}
+
+	/**
+	 * Removes the earliest source, once it has no more items.
+	 */
+	public void removeTop() {
+		size--;
+		sources[0] = sources[size];
+		keys[0] = keys[size];
+		siftDown();
+	}
+
+	private void siftDown() {
+		int i = 0;
+		while(true) {
+			int earliest = i;
+			int left = i * 2 + 1;
+			int right = left + 1;
+			if(left < size && isBefore(left, earliest)) earliest = left;
+			if(right < size && isBefore(right, earliest)) earliest = right;
+			if(earliest == i) return;
+			swap(i, earliest);
+			i = earliest;
+		}
+	}
+
+	private boolean isBefore(int a, int b) {
+		return keys[a] < keys[b] || (keys[a] == keys[b] && sources[a] < sources[b]);
+	}
+
+	private void swap(int a, int b) {
+		int source = sources[a];
+		sources[a] = sources[b];
+		sources[b] = source;
+
+		int key = keys[a];
+		keys[a] = keys[b];
+		keys[b] = key;
+	}
+}
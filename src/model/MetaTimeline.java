@@ -0,0 +1,257 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stores the meta events of a midi file, such as markers, lyrics and key signatures, sorted by tick.
+ *
+ * Events are kept in parallel arrays of ticks, types and offsets into a single pool of data bytes.
+ * The ticks of the key signatures are also kept separately, so that the key at any tick can be found
+ * with a binary search.
+ */
+public class MetaTimeline {
+	public static final int TEXT = 0x01;
+	public static final int TRACK_NAME = 0x03;
+	public static final int LYRIC = 0x05;
+	public static final int MARKER = 0x06;
+	public static final int CUE_POINT = 0x07;
+	public static final int TEMPO = 0x51;
+	public static final int TIME_SIGNATURE = 0x58;
+	public static final int KEY_SIGNATURE = 0x59;
+
+	private static final Charset TEXT_CHARSET = Charset.forName("ISO-8859-1");
+
+	private int[] ticks;
+	private byte[] types;
+	private int[] offsets;
+	private byte[] data;
+	private int size;
+	private int dataSize;
+
+	// Events that are key signatures, in order.
+	private IntList keySignatures = new IntList();
+
+	MetaTimeline(int capacity) {
+		ticks = new int[capacity];
+		types = new byte[capacity];
+		offsets = new int[capacity + 1];
+		data = new byte[Math.max(16, capacity * 8)];
+	}
+
+	/**
+	 * Merges timelines that are each sorted by tick into a single sorted timeline.
+	 * Events at the same tick are ordered by their timeline, then by their order within it.
+	 */
+	static MetaTimeline merge(List<MetaTimeline> timelines) {
+		int total = 0;
+		int totalData = 0;
+		for(MetaTimeline timeline:timelines) {
+			total += timeline.size;
+			totalData += timeline.dataSize;
+		}
+
+		MetaTimeline merged = new MetaTimeline(total);
+		merged.data = new byte[totalData];
+
+		int[] positions = new int[timelines.size()];
+
+		// Keep the timelines in a heap by the tick of their next event.
+		MergeHeap heap = new MergeHeap(timelines.size());
+		for(int t = 0; t < timelines.size(); t++) {
+			if(timelines.get(t).size > 0) {
+				heap.add(t, timelines.get(t).ticks[0]);
+			}
+		}
+
+		for(int event = 0; event < total; event++) {
+			int next = heap.peek();
+			MetaTimeline timeline = timelines.get(next);
+			int i = positions[next]++;
+			merged.append(timeline.ticks[i], timeline.types[i], timeline.data, timeline.offsets[i], timeline.offsets[i + 1] - timeline.offsets[i]);
+
+			if(i + 1 < timeline.size) {
+				heap.replaceTop(timeline.ticks[i + 1]);
+			} else {
+				heap.removeTop();
+			}
+		}
+
+		return merged;
+	}
+
+	/**
+	 * Appends an event. Events must be added in tick order.
+	 */
+	void add(int tick, int type, byte[] eventData) {
+		append(tick, (byte)type, eventData, 0, eventData.length);
+	}
+
+	private void append(int tick, byte type, byte[] source, int offset, int length) {
+		if(size == ticks.length) {
+			int capacity = Math.max(16, size * 2);
+			ticks = Arrays.copyOf(ticks, capacity);
+			types = Arrays.copyOf(types, capacity);
+			offsets = Arrays.copyOf(offsets, capacity + 1);
+		}
+		if(dataSize + length > data.length) {
+			data = Arrays.copyOf(data, Math.max(dataSize + length, data.length * 2));
+		}
+
+		System.arraycopy(source, offset, data, dataSize, length);
+		dataSize += length;
+
+		ticks[size] = tick;
+		types[size] = type;
+		offsets[size + 1] = dataSize;
+
+		if((type & 0xff) == KEY_SIGNATURE && length >= 2) {
+			keySignatures.add(size);
+		}
+
+		size++;
+	}
+
+	/**
+	 * Returns the number of events.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getTick(int event) {
+		return ticks[event];
+	}
+
+	public int getType(int event) {
+		return types[event] & 0xff;
+	}
+
+	/**
+	 * Returns a copy of the data of an event.
+	 */
+	public byte[] getData(int event) {
+		return Arrays.copyOfRange(data, offsets[event], offsets[event + 1]);
+	}
+
+	/**
+	 * Returns the data of an event as text, for text events such as markers and lyrics.
+	 */
+	public String getText(int event) {
+		return new String(data, offsets[event], offsets[event + 1] - offsets[event], TEXT_CHARSET);
+	}
+
+	/**
+	 * Returns the events of a type from startTick to endTick inclusive, in order.
+	 */
+	public IntList getEvents(int startTick, int endTick, int type) {
+		IntList events = new IntList();
+		for(int event = lowerBound(startTick); event < size && ticks[event] <= endTick; event++) {
+			if(getType(event) == type) {
+				events.add(event);
+			}
+		}
+		return events;
+	}
+
+	/**
+	 * Returns the key signature in effect at a tick, or null if there isn't one.
+	 */
+	public KeySignature getKeySignature(int tick) {
+		// Find the last key signature at or before the tick.
+		int low = 0;
+		int high = keySignatures.size();
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(ticks[keySignatures.get(middle)] <= tick) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		if(low == 0) return null;
+
+		int offset = offsets[keySignatures.get(low - 1)];
+		return new KeySignature(data[offset], data[offset + 1] != 0);
+	}
+
+	/**
+	 * Returns the first event at or after a tick.
+	 */
+	public int lowerBound(int tick) {
+		int low = 0;
+		int high = size;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(ticks[middle] < tick) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the number of bytes needed to write this timeline.
+	 */
+	int getWriteSize() {
+		return 8 + size * 9 + dataSize;
+	}
+
+	/**
+	 * Writes the events to a buffer, to be read back with read().
+	 */
+	void write(ByteBuffer buffer) {
+		buffer.putInt(size);
+		buffer.putInt(dataSize);
+		for(int i = 0; i < size; i++) {
+			buffer.putInt(ticks[i]);
+			buffer.put(types[i]);
+			buffer.putInt(offsets[i + 1] - offsets[i]);
+		}
+		buffer.put(data, 0, dataSize);
+	}
+
+	/**
+	 * Reads events that were written with write().
+	 */
+	static MetaTimeline read(ByteBuffer buffer) {
+		int size = buffer.getInt();
+		int dataSize = buffer.getInt();
+		if(size < 0 || dataSize < 0 || size * 9L + dataSize > buffer.remaining()) {
+			throw new IllegalArgumentException("Invalid meta event count: " + size);
+		}
+
+		int[] eventTicks = new int[size];
+		byte[] eventTypes = new byte[size];
+		int[] lengths = new int[size];
+		long totalLength = 0;
+		for(int i = 0; i < size; i++) {
+			eventTicks[i] = buffer.getInt();
+			eventTypes[i] = buffer.get();
+			lengths[i] = buffer.getInt();
+			if(lengths[i] < 0) {
+				throw new IllegalArgumentException("Invalid meta event length: " + lengths[i]);
+			}
+			totalLength += lengths[i];
+		}
+		if(totalLength != dataSize) {
+			throw new IllegalArgumentException("Invalid meta event data size: " + dataSize);
+		}
+
+		byte[] eventData = new byte[dataSize];
+		buffer.get(eventData);
+
+		MetaTimeline timeline = new MetaTimeline(size);
+		timeline.data = new byte[dataSize];
+		int offset = 0;
+		for(int i = 0; i < size; i++) {
+			timeline.append(eventTicks[i], eventTypes[i], eventData, offset, lengths[i]);
+			offset += lengths[i];
+		}
+		return timeline;
+	}
+}
@@ -0,0 +1,201 @@
+package model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds the bars and beats of a midi file from its time signature changes.
+ *
+ * The file is split into segments with a constant time signature, each storing its start tick, its bar
+ * and beat lengths in ticks, and the number of the bar it starts with. A segment that starts part way
+ * through a bar cuts that bar short. Queries find the segment with a binary search and step through its
+ * bars arithmetically, so they take time in proportion to the number of bars or beats returned rather
+ * than the length of the file.
+ */
+public class MeterMap {
+	private int[] ticks;
+	private int[] numerators;
+	private int[] denominators;
+	private int[] beatLengths;
+	private int[] barLengths;
+	private int[] firstBars;
+
+	/**
+	 * Creates a meter map from time signature changes sorted by tick. The file starts in 4/4 time if there's
+	 * no change at tick 0.
+	 * @param resolution Ticks per quarter note.
+	 * @param changeTicks The tick of each time signature change.
+	 * @param changeNumerators The number of beats in a bar for each change.
+	 * @param changeDenominators The length of each beat as a fraction of a whole note for each change.
+	 */
+	MeterMap(int resolution, IntList changeTicks, IntList changeNumerators, IntList changeDenominators) {
+		resolution = Math.max(1, resolution);
+
+		// Start with 4/4 time, and keep only the last of several changes at the same tick.
+		IntList segmentTicks = new IntList();
+		IntList segmentNumerators = new IntList();
+		IntList segmentDenominators = new IntList();
+		segmentTicks.add(0);
+		segmentNumerators.add(4);
+		segmentDenominators.add(4);
+
+		for(int i = 0; i < changeTicks.size(); i++) {
+			int numerator = changeNumerators.get(i);
+			int denominator = changeDenominators.get(i);
+			if(numerator <= 0 || denominator <= 0) continue;
+
+			int last = segmentTicks.size() - 1;
+			if(segmentTicks.get(last) == changeTicks.get(i)) {
+				segmentNumerators.set(last, numerator);
+				segmentDenominators.set(last, denominator);
+			} else {
+				segmentTicks.add(changeTicks.get(i));
+				segmentNumerators.add(numerator);
+				segmentDenominators.add(denominator);
+			}
+		}
+
+		int count = segmentTicks.size();
+		ticks = new int[count];
+		numerators = new int[count];
+		denominators = new int[count];
+		beatLengths = new int[count];
+		barLengths = new int[count];
+		firstBars = new int[count];
+
+		for(int i = 0; i < count; i++) {
+			ticks[i] = segmentTicks.get(i);
+			numerators[i] = segmentNumerators.get(i);
+			denominators[i] = segmentDenominators.get(i);
+			beatLengths[i] = Math.max(1, resolution * 4 / denominators[i]);
+			barLengths[i] = beatLengths[i] * numerators[i];
+
+			if(i > 0) {
+				// Count a bar that is cut short by the change as a whole bar.
+				int length = ticks[i] - ticks[i - 1];
+				firstBars[i] = firstBars[i - 1] + (length + barLengths[i - 1] - 1) / barLengths[i - 1];
+			}
+		}
+	}
+
+	/**
+	 * Returns the time signature in effect at a tick.
+	 */
+	public TimeSignature getTimeSignature(int tick) {
+		int segment = findSegment(tick);
+		return new TimeSignature(numerators[segment], denominators[segment]);
+	}
+
+	/**
+	 * Returns the number of the bar containing a tick, counting from 0.
+	 */
+	public int getBarNumber(int tick) {
+		int segment = findSegment(tick);
+		return firstBars[segment] + Math.max(0, tick - ticks[segment]) / barLengths[segment];
+	}
+
+	/**
+	 * Returns the ticks of the bar lines from startTick to endTick inclusive, in order.
+	 */
+	public IntList getBarLines(int startTick, int endTick) {
+		IntList lines = new IntList();
+		addLines(startTick, endTick, barLengths, lines);
+		return lines;
+	}
+
+	/**
+	 * Returns the ticks of the beats from startTick to endTick inclusive, in order, including those on bar lines.
+	 */
+	public IntList getBeats(int startTick, int endTick) {
+		IntList beats = new IntList();
+		addLines(startTick, endTick, beatLengths, beats);
+		return beats;
+	}
+
+	/**
+	 * Returns the number of segments with a constant time signature.
+	 */
+	public int getSegmentCount() {
+		return ticks.length;
+	}
+
+	/**
+	 * Adds the ticks from startTick to endTick that fall on a multiple of each segment's length from its start.
+	 */
+	private void addLines(int startTick, int endTick, int[] lengths, IntList lines) {
+		startTick = Math.max(0, startTick);
+
+		for(int segment = findSegment(startTick); segment < ticks.length && ticks[segment] <= endTick; segment++) {
+			int length = lengths[segment];
+
+			// Stop at the start of the next segment, which begins with a new bar.
+			long segmentEnd = (segment + 1 < ticks.length) ? ticks[segment + 1] : (long)endTick + 1;
+			long end = Math.min(segmentEnd, (long)endTick + 1);
+
+			long tick = ticks[segment];
+			if(tick < startTick) {
+				tick += (startTick - tick + length - 1) / length * (long)length;
+			}
+
+			for(; tick < end; tick += length) {
+				lines.add((int)tick);
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of the last segment starting at or before a tick.
+	 */
+	private int findSegment(int tick) {
+		int low = 0;
+		int high = ticks.length - 1;
+		while(low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if(ticks[middle] <= tick) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the number of bytes needed to write this meter map.
+	 */
+	int getWriteSize() {
+		return 4 + ticks.length * 12;
+	}
+
+	/**
+	 * Writes the meter map to a buffer, to be read back with read().
+	 */
+	void write(ByteBuffer buffer) {
+		buffer.putInt(ticks.length);
+		for(int i = 0; i < ticks.length; i++) {
+			buffer.putInt(ticks[i]);
+			buffer.putInt(numerators[i]);
+			buffer.putInt(denominators[i]);
+		}
+	}
+
+	/**
+	 * Reads a meter map that was written with write().
+	 */
+	static MeterMap read(ByteBuffer buffer, int resolution) {
+		int count = buffer.getInt();
+		if(count < 1 || count * 12L > buffer.remaining()) {
+			throw new IllegalArgumentException("Invalid time signature count: " + count);
+		}
+
+		IntList changeTicks = new IntList();
+		IntList changeNumerators = new IntList();
+		IntList changeDenominators = new IntList();
+		for(int i = 0; i < count; i++) {
+			changeTicks.add(buffer.getInt());
+			changeNumerators.add(buffer.getInt());
+			changeDenominators.add(buffer.getInt());
+		}
+
+		return new MeterMap(resolution, changeTicks, changeNumerators, changeDenominators);
+	}
+}
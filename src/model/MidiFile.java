@@ -2,43 +2,206 @@ package model;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import javax.sound.midi.InvalidMidiDataException;
-import javax.sound.midi.MetaMessage;
-import javax.sound.midi.MidiEvent;
-import javax.sound.midi.MidiMessage;
-import javax.sound.midi.MidiSystem;
-import javax.sound.midi.Sequence;
-import javax.sound.midi.ShortMessage;
-import javax.sound.midi.Track;
 
 /**
- * Class to store pitch and channel to identify note-on / note-off pairs.
+ * Collects the notes of a single track, pairing note-on and note-off events by pitch and channel.
  */
-class PitchAndChannel {
-	private int pitch;
-	private int channel;
+class TrackDecoder implements TrackHandler, Callable<NoteStore> {
+	private SmfReader reader;
+	private int endTick;
+	private LoadMonitor monitor;
+	private MidiTrack track;
+	private NoteStore notes;
+	private int totalTime = 0;
+	private IntList timeSignatureTicks = new IntList();
+	private IntList numerators = new IntList();
+	private IntList denominators = new IntList();
+	private IntList tempoTicks = new IntList();
+	private IntList tempos = new IntList();
+	private MetaTimeline metaEvents = new MetaTimeline(16);
+	private ControllerStream controllers = new ControllerStream();
+	
+	// Rows of the first and last held notes for each pitch and channel. Held notes with the same pitch and channel
+	// are linked oldest first, so that retriggered pitches are all kept: until a note ends, its end time is -1 if
+	// it's the last held note, or -2 minus the row of the next one.
+	private int[] firstHeld = new int[16 * 128];
+	private int[] lastHeld = new int[16 * 128];
+
+	/**
+	 * Creates a decoder for the events of a track before endTick. The monitor may be null.
+	 * Notes are stored outside the heap if mapped is true.
+	 */
+	public TrackDecoder(SmfReader reader, int endTick, LoadMonitor monitor, MidiTrack track, boolean mapped) {
+		this.reader = reader;
+		this.endTick = endTick;
+		this.monitor = monitor;
+		this.track = track;
+		this.notes = NoteStore.create(64, mapped);
+		
+		Arrays.fill(firstHeld, -1);
+	}
+	
+	/**
+	 * Decodes the track, returning its notes sorted by start time. Notes that are never released are dropped,
+	 * unless the track is only decoded up to an end tick, when notes still held are cut off there.
+	 */
+	public NoteStore call() throws InvalidMidiDataException {
+		reader.readTrack(track.getNumber() - 1, endTick, this, monitor);
+		
+		if(endTick != Integer.MAX_VALUE) {
+			for(int key = 0; key < firstHeld.length; key++) {
+				while(firstHeld[key] != -1) {
+					noteOff(endTick, key / 128, key % 128);
+				}
+			}
+		}
+		
+		notes.removeUnfinished();
+		track.setNoteCount(notes.size());
+		return notes;
+	}
+	
+	/**
+	 * Frees the notes of the decoder, when they won't be used because decoding failed.
+	 */
+	void release() {
+		notes.release();
+	}
+
+	/**
+	 * Called for each note-on event in the track, ordered by time.
+	 */
+	public void noteOn(int tick, int channel, int pitch, int velocity) {
+		// Store the note as a held note.
+		int row = notes.add(tick, pitch, velocity);
+		
+		int key = channel * 128 + pitch;
+		if(firstHeld[key] == -1) {
+			firstHeld[key] = row;
+		} else {
+			notes.setEndTime(lastHeld[key], -2 - row);
+		}
+		lastHeld[key] = row;
+	}
 
-	public PitchAndChannel(int pitch, int channel) {
-		this.pitch = pitch;
-		this.channel = channel;
+	/**
+	 * Called from each note-off event in the track, ordered by time.
+	 */
+	public void noteOff(int tick, int channel, int pitch) {
+		// Check if the note is being held, ending the earliest one if it was retriggered.
+		int key = channel * 128 + pitch;
+		int row = firstHeld[key];
+		if(row != -1) {
+			int next = notes.getEndTime(row);
+			firstHeld[key] = (next == -1) ? -1 : -2 - next;
+			notes.setEndTime(row, tick);
+			
+			totalTime = Math.max(totalTime, tick);
+		}
 	}
 
-	public int hashCode() {
-		return pitch * 31 + channel;
+	public void controlEvent(int tick, int channel, int command, int data1, int data2) {
+		controllers.add(tick, channel, command, data1, data2);
 	}
 
-	public boolean equals(Object obj) {
-		if (obj != null && obj.getClass() == getClass()) {
-			PitchAndChannel p = (PitchAndChannel) obj;
-			return p.pitch == pitch && p.channel == channel;
+	public void metaEvent(int tick, int type, byte[] data) {
+		metaEvents.add(tick, type, data);
+		
+		try {
+			// Track name change event.
+			if(type == 3) {
+				// Update track name from data.
+				String trackName = new String(data, "ascii");
+				
+				if(trackName.length() > 0) {
+					track.setName(trackName);
+				}
+			} else if(type == 0x58 && data.length >= 2) {
+				// Time signature, with the denominator as a power of two.
+				if(data[1] >= 0 && data[1] <= 6) {
+					timeSignatureTicks.add(tick);
+					numerators.add(data[0] & 0xff);
+					denominators.add(1 << data[1]);
+				}
+			} else if(type == 0x51 && data.length >= 3) {
+				// Set tempo in microseconds per quarter note.
+				tempoTicks.add(tick);
+				tempos.add((data[0] & 0xff) << 16 | (data[1] & 0xff) << 8 | (data[2] & 0xff));
+			}
+		} catch(UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
 		}
-		return false;
+	}
+
+	public MidiTrack getTrack() {
+		return track;
+	}
+	
+	public int getTotalTime() {
+		return totalTime;
+	}
+	
+	/**
+	 * Returns the ticks of the time signature changes in the track.
+	 */
+	public IntList getTimeSignatureTicks() {
+		return timeSignatureTicks;
+	}
+	
+	/**
+	 * Returns the numerator of each time signature change in the track.
+	 */
+	public IntList getNumerators() {
+		return numerators;
+	}
+	
+	/**
+	 * Returns the denominator of each time signature change in the track.
+	 */
+	public IntList getDenominators() {
+		return denominators;
+	}
+	
+	/**
+	 * Returns the controller events in the track.
+	 */
+	public ControllerStream getControllers() {
+		return controllers;
+	}
+	
+	/**
+	 * Returns every meta event in the track.
+	 */
+	public MetaTimeline getMetaEvents() {
+		return metaEvents;
+	}
+	
+	/**
+	 * Returns the ticks of the tempo changes in the track.
+	 */
+	public IntList getTempoTicks() {
+		return tempoTicks;
+	}
+	
+	/**
+	 * Returns the tempo of each tempo change in the track in microseconds per quarter note.
+	 */
+	public IntList getTempos() {
+		return tempos;
 	}
 }
 
@@ -46,107 +209,274 @@ class PitchAndChannel {
  * Class to read a midi file.
  */
 public class MidiFile {
-	private Map<PitchAndChannel, Note> heldNotes = new HashMap<PitchAndChannel, Note>();
-	
 	private List<MidiTrack> tracks = null;
+	private NoteStore notes;
+	private NoteIndex noteIndex;
+	private DensityHistogram densityHistogram;
 	private int resolution;
 	private int totalTime = 0;
-	private TimeSignature timeSignature = new TimeSignature(4, 4);
+	private MeterMap meterMap;
+	private TempoMap tempoMap;
+	private MetaTimeline metaEvents;
+	private List<ControllerStream> controllers;
 
 	public MidiFile(File file) throws InvalidMidiDataException, IOException {
+		this(new SmfReader(file), Integer.MAX_VALUE, null, file.length());
+	}
+	
+	/**
+	 * Reads a midi file, reporting progress to a monitor which can cancel loading with a CancellationException.
+	 */
+	public MidiFile(File file, LoadMonitor monitor) throws InvalidMidiDataException, IOException {
+		this(new SmfReader(file), Integer.MAX_VALUE, monitor, file.length());
+	}
+	
+	/**
+	 * Reads a midi file from a plain file, a compressed file or an archive entry, reporting progress to
+	 * a monitor which can cancel loading with a CancellationException. Compressed data is decoded one
+	 * track at a time as it's inflated, without extracting it first.
+	 */
+	public static MidiFile read(MidiSource source, LoadMonitor monitor) throws InvalidMidiDataException, IOException {
+		if(!source.isCompressed()) {
+			return new MidiFile(source.getFile(), monitor);
+		}
+		
+		InputStream in = source.open();
+		try {
+			return new MidiFile(new SmfReader(in), Integer.MAX_VALUE, monitor, source.getLength());
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Reads only the beginning of a midi file, up to a number of quarter notes, so that it can be displayed
+	 * quickly while the rest is loaded. Notes still held at the end are cut off there.
+	 */
+	public static MidiFile readBeginning(File file, int quarterNotes) throws InvalidMidiDataException, IOException {
+		SmfReader reader = new SmfReader(file);
+		return new MidiFile(reader, reader.getResolution() * quarterNotes, null, file.length());
+	}
+	
+	/**
+	 * Decodes the tracks of a reader. The length of the midi data, or -1 if it isn't known, is used to
+	 * choose where to store the notes.
+	 */
+	private MidiFile(SmfReader reader, int endTick, LoadMonitor monitor, long length) throws InvalidMidiDataException, IOException {
 		this.tracks = new ArrayList<MidiTrack>();
+		this.controllers = new ArrayList<ControllerStream>();
 		
-		Sequence sequence = MidiSystem.getSequence(file);
+		resolution = reader.getResolution();
 		
-		resolution = sequence.getResolution();
-
-		int trackNo = 0;
-
-		for (Track track:sequence.getTracks()) {
-			heldNotes.clear();
-			
-			trackNo += 1;
-			MidiTrack t = new MidiTrack(trackNo);
+		// Store the notes outside the heap if there will be a very large number of them. Each note
+		// takes at least 6 bytes in the file, for the note-on and note-off events with running status.
+		boolean mapped = (endTick == Integer.MAX_VALUE) && NoteStore.useMapped(length / 8);
+		
+		// Decode every track in parallel. Tracks read from a stream are decoded while the next is read.
+		List<TrackDecoder> decoders = new ArrayList<TrackDecoder>();
+		List<Future<NoteStore>> results = new ArrayList<Future<NoteStore>>();
+		List<MetaTimeline> trackMetaEvents = new ArrayList<MetaTimeline>();
+		try {
+			for(int trackNo = 1; trackNo <= reader.getTrackCount() || reader.readNextTrack(); trackNo++) {
+				if(monitor != null && monitor.isCancelled()) {
+					throw new CancellationException();
+				}
+				
+				TrackDecoder decoder = new TrackDecoder(reader, endTick, monitor, new MidiTrack(trackNo), mapped);
+				decoders.add(decoder);
+				results.add(ForkJoinPool.commonPool().submit(decoder));
+			}
 			
-			for (int i = 0; i < track.size(); i++) {
-				MidiEvent event = track.get(i);
-
-				int time = (int) event.getTick();
-
-				MidiMessage message = event.getMessage();
+			// Combine the tracks in order, as if they were read one after another.
+			List<NoteStore> trackNotes = new ArrayList<NoteStore>();
+			for(int i = 0; i < decoders.size(); i++) {
+				TrackDecoder decoder = decoders.get(i);
+				NoteStore store = getResult(results.get(i));
+				
+				totalTime = Math.max(totalTime, decoder.getTotalTime());
+				trackMetaEvents.add(decoder.getMetaEvents());
 				
-				// Find midi message type.
-				if (message instanceof ShortMessage) {
-					ShortMessage shortMessage = (ShortMessage)message;
-					
-					if (shortMessage.getCommand() == ShortMessage.NOTE_ON) {
-						noteOn(t, shortMessage, time);
-					} else if (shortMessage.getCommand() == ShortMessage.NOTE_OFF) {
-						noteOff(t, shortMessage, time);
-					}
-				} else if(message instanceof MetaMessage) {
-					MetaMessage metaMessage = (MetaMessage)message;
-					
-					// Track name change event.
-					if(metaMessage.getType() == 3) {
-						// Update track name from data.
-						String trackName = new String(metaMessage.getData(), "ascii");
-						
-						if(trackName.length() > 0) {
-							t.setName(trackName);
-						}
-					} else if(metaMessage.getType() == 0x58) {
-						byte[] data = metaMessage.getData();
-						
-						this.timeSignature = new TimeSignature(data[0], 1 << data[1]);
-					}
+				if(decoder.getTrack().hasNotes()) {
+					tracks.add(decoder.getTrack());
+					trackNotes.add(store);
+					controllers.add(decoder.getControllers());
+				} else {
+					store.release();
 				}
 			}
 			
-			if(t.hasNotes()) {
-				tracks.add(t);
+			notes = NoteStore.merge(trackNotes, tracks, mapped);
+		} finally {
+			if(notes == null) {
+				releaseDecoders(decoders, results);
+			}
+		}
+		
+		noteIndex = new NoteIndex(notes);
+		densityHistogram = new DensityHistogram(notes, tracks.size(), totalTime);
+		meterMap = createMeterMap(decoders);
+		metaEvents = MetaTimeline.merge(trackMetaEvents);
+		
+		if(reader.getFramesPerSecond() == 0) {
+			tempoMap = createTempoMap(decoders);
+		} else {
+			int framesPerSecond = reader.getFramesPerSecond();
+			tempoMap = new TempoMap(resolution, (int)(1000000 / (framesPerSecond == 29 ? 29.97 : framesPerSecond)));
+		}
+	}
+	
+	/**
+	 * Creates a tempo map from the tempo changes in every track. Changes at the same tick are kept in track order.
+	 */
+	private TempoMap createTempoMap(List<TrackDecoder> decoders) {
+		List<long[]> changes = new ArrayList<long[]>();
+		for(TrackDecoder decoder:decoders) {
+			for(int i = 0; i < decoder.getTempoTicks().size(); i++) {
+				changes.add(new long[] { decoder.getTempoTicks().get(i), decoder.getTempos().get(i) });
 			}
 		}
+		
+		// Stable sort by tick.
+		Collections.sort(changes, new Comparator<long[]>() {
+			public int compare(long[] a, long[] b) {
+				return Long.compare(a[0], b[0]);
+			}
+		});
+		
+		IntList ticks = new IntList();
+		IntList tempos = new IntList();
+		for(long[] change:changes) {
+			ticks.add((int)change[0]);
+			tempos.add((int)change[1]);
+		}
+		
+		return new TempoMap(resolution, ticks, tempos);
+	}
+	
+	/**
+	 * Creates a meter map from the time signature changes in every track. Changes at the same tick are kept in track order.
+	 */
+	private MeterMap createMeterMap(List<TrackDecoder> decoders) {
+		List<int[]> changes = new ArrayList<int[]>();
+		for(TrackDecoder decoder:decoders) {
+			for(int i = 0; i < decoder.getTimeSignatureTicks().size(); i++) {
+				changes.add(new int[] { decoder.getTimeSignatureTicks().get(i), decoder.getNumerators().get(i), decoder.getDenominators().get(i) });
+			}
+		}
+		
+		// Stable sort by tick.
+		Collections.sort(changes, new Comparator<int[]>() {
+			public int compare(int[] a, int[] b) {
+				return Integer.compare(a[0], b[0]);
+			}
+		});
+		
+		IntList ticks = new IntList();
+		IntList numerators = new IntList();
+		IntList denominators = new IntList();
+		for(int[] change:changes) {
+			ticks.add(change[0]);
+			numerators.add(change[1]);
+			denominators.add(change[2]);
+		}
+		
+		return new MeterMap(resolution, ticks, numerators, denominators);
+	}
+	
+	/**
+	 * Creates a midi file from previously decoded data.
+	 */
+	MidiFile(int resolution, int totalTime, MeterMap meterMap, TempoMap tempoMap, MetaTimeline metaEvents, List<MidiTrack> tracks, List<ControllerStream> controllers, NoteStore notes) {
+		this.resolution = resolution;
+		this.totalTime = totalTime;
+		this.meterMap = meterMap;
+		this.tempoMap = tempoMap;
+		this.metaEvents = metaEvents;
+		this.tracks = tracks;
+		this.controllers = controllers;
+		this.notes = notes;
+		this.noteIndex = new NoteIndex(notes);
+		this.densityHistogram = new DensityHistogram(notes, tracks.size(), totalTime);
 	}
 	
 	public List<MidiTrack> getTracks() {
 		return tracks;
 	}
-
+	
+	/**
+	 * Returns the controller events of a track.
+	 * @param trackIndex The index of the track within getTracks().
+	 */
+	public ControllerStream getControllers(int trackIndex) {
+		return controllers.get(trackIndex);
+	}
+	
+	/**
+	 * Returns the notes from every track, sorted by start time.
+	 */
+	public NoteStore getNotes() {
+		return notes;
+	}
+	
+	/**
+	 * Frees the storage of the notes outside the heap, such as the scratch file of a large file, once it's
+	 * no longer displayed. The file and its notes mustn't be used afterwards.
+	 */
+	public void release() {
+		notes.release();
+	}
+	
+	/**
+	 * Returns an index to find the notes sounding at a given time.
+	 */
+	public NoteIndex getNoteIndex() {
+		return noteIndex;
+	}
+	
 	/**
-	 * Called for each note-on event in the file, ordered by time.
+	 * Returns the number of notes of each track over the whole file, used to draw an overview of it.
 	 */
-	private void noteOn(MidiTrack track, ShortMessage shortMessage, int time) {
-		int pitch = shortMessage.getData1();
-		int vel = shortMessage.getData2();
+	public DensityHistogram getDensityHistogram() {
+		return densityHistogram;
+	}
 
-		// A note-on event with 0 velocity is the same as a note-off event.
-		if (vel == 0) {
-			noteOff(track, shortMessage, time);
-			return;
+	/**
+	 * Releases the notes of every decoder after decoding failed or was cancelled. Decoders that were started
+	 * are waited for first, as they would otherwise still be adding to their notes. A cancelled load stops
+	 * them quickly, as they check the monitor as they read.
+	 */
+	private static void releaseDecoders(List<TrackDecoder> decoders, List<Future<NoteStore>> results) {
+		for(int i = 0; i < decoders.size(); i++) {
+			if(i < results.size()) {
+				try {
+					results.get(i).get();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch(ExecutionException e) {
+					// The decoder has stopped, which is all that matters here.
+				}
+			}
+			decoders.get(i).release();
 		}
-
-		// Store the note as a held note.
-		Note note = new Note(track, new Pitch(pitch), vel, (int) time, 0);
-		heldNotes.put(new PitchAndChannel(pitch, shortMessage.getChannel()), note);
 	}
 
 	/**
-	 * Called from each note-off event in the file, ordered by time.
+	 * Returns the result of a decoding task, rethrowing any exception it failed with.
 	 */
-	private void noteOff(MidiTrack track, ShortMessage shortMessage, int time) {
-		int pitch = shortMessage.getData1();
-
-		// Check if the note is being held.
-		PitchAndChannel key = new PitchAndChannel(pitch, shortMessage.getChannel());
-		Note note = heldNotes.get(key);
-		if (note != null) {
-			// Add the note to the list.
-			note.setEndTime(time);
-			heldNotes.remove(key);
-			track.addNote(note);
-			
-			totalTime = Math.max(totalTime, note.getEndTime());
+	private static NoteStore getResult(Future<NoteStore> result) throws InvalidMidiDataException {
+		try {
+			return result.get();
+		} catch(InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof InvalidMidiDataException) {
+				throw (InvalidMidiDataException)cause;
+			} else if(cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			} else {
+				throw new RuntimeException(cause);
+			}
 		}
 	}
 	
@@ -154,11 +484,28 @@ public class MidiFile {
 		return resolution;
 	}
 	
-	public TimeSignature getTimeSignature() {
-		return timeSignature;
+	/**
+	 * Returns the meter map used to find the bars and beats.
+	 */
+	public MeterMap getMeterMap() {
+		return meterMap;
+	}
+	
+	/**
+	 * Returns the tempo map used to convert between ticks and real time.
+	 */
+	public TempoMap getTempoMap() {
+		return tempoMap;
+	}
+	
+	/**
+	 * Returns the meta events from every track, such as markers, lyrics and key signatures, sorted by tick.
+	 */
+	public MetaTimeline getMetaEvents() {
+		return metaEvents;
 	}
 
 	public int getTotalTime() {
 		return totalTime;
 	}
-}
\ No newline at end of file
+}
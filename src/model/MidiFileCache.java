@@ -0,0 +1,297 @@
+package model;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A cache of decoded midi files stored in a local directory, so that a file that was opened before
+ * can be loaded without parsing it again.
+ *
+ * Each entry is named from a hash of the midi file's path. It records the file's size, modification
+ * time and a checksum of its contents, which must all match for the entry to be used. For compressed
+ * files and archive entries, these are the size, time and checksum stored with the compressed data. Entries end with
+ * a checksum of their own, so a damaged entry is discarded and the midi file parsed again. The least
+ * recently used entries are deleted when the directory grows beyond a maximum size.
+ */
+public class MidiFileCache {
+	private static final int MAGIC = 0x4d494443;
+	private static final int VERSION = 6;
+	private static final String EXTENSION = ".cache";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private File directory;
+	private long maxSize;
+
+	/**
+	 * Creates a cache in the given directory, limited to maxSize bytes.
+	 */
+	public MidiFileCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns the default cache in the user's home directory.
+	 */
+	public static MidiFileCache getDefault() {
+		File directory = new File(new File(System.getProperty("user.home"), ".midi"), "cache");
+		return new MidiFileCache(directory, 256L * 1024 * 1024);
+	}
+
+	/**
+	 * Returns a midi file from the cache, or null if it isn't there or was cached from a different version of the file.
+	 */
+	public MidiFile get(MidiSource source) throws IOException {
+		String path = source.getPath();
+		File entry = new File(directory, getEntryName(path));
+
+		if(!entry.exists()) return null;
+
+		long checksum = source.getChecksum();
+
+		try {
+			MidiFile midiFile = read(entry, path, source.getLength(), source.getLastModified(), checksum);
+			if(midiFile != null) {
+				entry.setLastModified(System.currentTimeMillis());
+				return midiFile;
+			}
+		} catch(IOException e) {
+			// The entry can't be read, so remove it below.
+		} catch(RuntimeException e) {
+			// The entry was damaged, so remove it below.
+		}
+
+		entry.delete();
+		return null;
+	}
+
+	/**
+	 * Adds a midi file that was read from a file to the cache, unless its entry would be larger than the whole
+	 * cache. Errors are only printed, as the cache is only an optimization.
+	 */
+	public void put(MidiSource source, MidiFile midiFile) {
+		try {
+			String path = source.getPath();
+			File entry = new File(directory, getEntryName(path));
+
+			write(entry, midiFile, path, source.getLength(), source.getLastModified(), source.getChecksum());
+			evict();
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Reads a cache entry, returning null if it was written for a different version of the source file.
+	 */
+	private MidiFile read(File entry, String path, long size, long lastModified, long checksum) throws IOException {
+		// Map the entry rather than reading it, so that large note stores can use it without copying.
+		ByteBuffer buffer = map(entry);
+
+		// Check the entry's own checksum before reading anything else.
+		if(buffer.remaining() < 16) return null;
+		ByteBuffer contents = buffer.duplicate();
+		contents.limit(buffer.limit() - 8);
+		CRC32 crc = new CRC32();
+		crc.update(contents.duplicate());
+		if(crc.getValue() != buffer.getLong(buffer.limit() - 8)) return null;
+
+		if(contents.getInt() != MAGIC) return null;
+		if(contents.getInt() != VERSION) return null;
+		if(!readString(contents).equals(path)) return null;
+		if(contents.getLong() != size) return null;
+		if(contents.getLong() != lastModified) return null;
+		if(contents.getLong() != checksum) return null;
+
+		int resolution = contents.getInt();
+		int totalTime = contents.getInt();
+		MeterMap meterMap = MeterMap.read(contents, resolution);
+		TempoMap tempoMap = TempoMap.read(contents);
+		MetaTimeline metaEvents = MetaTimeline.read(contents);
+
+		int trackCount = contents.getInt();
+		List<MidiTrack> tracks = new ArrayList<MidiTrack>();
+		List<ControllerStream> controllers = new ArrayList<ControllerStream>();
+		for(int i = 0; i < trackCount; i++) {
+			MidiTrack track = new MidiTrack(contents.getInt());
+			track.setName(readString(contents));
+			track.setNoteCount(contents.getInt());
+			tracks.add(track);
+			controllers.add(ControllerStream.read(contents));
+		}
+
+		NoteStore notes = NoteStore.read(contents, tracks);
+
+		return new MidiFile(resolution, totalTime, meterMap, tempoMap, metaEvents, tracks, controllers, notes);
+	}
+
+	/**
+	 * Writes a cache entry for a midi file, replacing any existing entry. An entry larger than the maximum size
+	 * isn't written, as it would be evicted straight away along with every other entry, and any older entry
+	 * for the path is deleted instead.
+	 */
+	private void write(File entry, MidiFile midiFile, String path, long size, long lastModified, long checksum) throws IOException {
+		byte[] pathBytes = path.getBytes(UTF8);
+		List<byte[]> names = new ArrayList<byte[]>();
+		long length = 48 + pathBytes.length;
+		for(int i = 0; i < midiFile.getTracks().size(); i++) {
+			byte[] name = midiFile.getTracks().get(i).getName().getBytes(UTF8);
+			names.add(name);
+			length += 12 + name.length;
+			length += midiFile.getControllers(i).getWriteSize();
+		}
+		length += midiFile.getMeterMap().getWriteSize();
+		length += midiFile.getTempoMap().getWriteSize();
+		length += midiFile.getMetaEvents().getWriteSize();
+		length += midiFile.getNotes().getWriteSize();
+		length += 8;
+
+		if(length > maxSize) {
+			entry.delete();
+			return;
+		}
+
+		// Write to a temporary file first so that a partly written entry is never read. The file is
+		// mapped rather than built on the heap, as it can be as large as the notes.
+		directory.mkdirs();
+		File temporary = File.createTempFile("entry", ".tmp", directory);
+		try {
+			RandomAccessFile file = new RandomAccessFile(temporary, "rw");
+			try {
+				ByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+				writeEntry(buffer, midiFile, pathBytes, names, size, lastModified, checksum);
+				if(buffer.hasRemaining()) {
+					throw new IOException("Cache entry is shorter than expected: " + entry);
+				}
+			} finally {
+				file.close();
+			}
+
+			entry.delete();
+			if(!temporary.renameTo(entry)) {
+				throw new IOException("Can't rename " + temporary + " to " + entry);
+			}
+		} finally {
+			temporary.delete();
+		}
+	}
+
+	/**
+	 * Writes the contents of a cache entry to a buffer, followed by their checksum.
+	 */
+	private void writeEntry(ByteBuffer buffer, MidiFile midiFile, byte[] pathBytes, List<byte[]> names, long size, long lastModified, long checksum) {
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		writeString(buffer, pathBytes);
+		buffer.putLong(size);
+		buffer.putLong(lastModified);
+		buffer.putLong(checksum);
+
+		buffer.putInt(midiFile.getResolution());
+		buffer.putInt(midiFile.getTotalTime());
+		midiFile.getMeterMap().write(buffer);
+		midiFile.getTempoMap().write(buffer);
+		midiFile.getMetaEvents().write(buffer);
+
+		List<MidiTrack> tracks = midiFile.getTracks();
+		buffer.putInt(tracks.size());
+		for(int i = 0; i < tracks.size(); i++) {
+			buffer.putInt(tracks.get(i).getNumber());
+			writeString(buffer, names.get(i));
+			buffer.putInt(tracks.get(i).getNoteCount());
+			midiFile.getControllers(i).write(buffer);
+		}
+
+		midiFile.getNotes().write(buffer);
+
+		ByteBuffer contents = buffer.duplicate();
+		contents.flip();
+		CRC32 crc = new CRC32();
+		crc.update(contents);
+		buffer.putLong(crc.getValue());
+	}
+
+	/**
+	 * Deletes the least recently used entries until the cache is within its maximum size.
+	 */
+	private void evict() {
+		File[] entries = directory.listFiles(new FileFilter() {
+			public boolean accept(File file) {
+				return file.getName().endsWith(EXTENSION);
+			}
+		});
+		if(entries == null) return;
+
+		long totalSize = 0;
+		for(File entry:entries) {
+			totalSize += entry.length();
+		}
+
+		Arrays.sort(entries, new Comparator<File>() {
+			public int compare(File a, File b) {
+				return Long.compare(a.lastModified(), b.lastModified());
+			}
+		});
+
+		for(int i = 0; i < entries.length && totalSize > maxSize; i++) {
+			long length = entries[i].length();
+			if(entries[i].delete()) {
+				totalSize -= length;
+			}
+		}
+	}
+
+	/**
+	 * Returns the name of the entry for a path.
+	 */
+	private static String getEntryName(String path) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			StringBuilder name = new StringBuilder();
+			for(byte b:digest.digest(path.getBytes(UTF8))) {
+				name.append(String.format("%02x", b));
+			}
+			return name.append(EXTENSION).toString();
+		} catch(NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static ByteBuffer map(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	private static void writeString(ByteBuffer buffer, byte[] bytes) {
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if(length < 0 || length > buffer.remaining()) {
+			throw new IllegalArgumentException("Invalid string length: " + length);
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+}
@@ -34,13 +34,13 @@ class MidiReceiver implements Receiver {
 	
 	private void noteOn(int pitch) {
 		for(NoteHandler handler:noteHandlers) {
-			handler.noteOn(new Pitch(pitch));
+			handler.noteOn(Pitch.valueOf(pitch));
 		}
 	}
 	
 	private void noteOff(int pitch) {
 		for(NoteHandler handler:noteHandlers) {
-			handler.noteOff(new Pitch(pitch));
+			handler.noteOff(Pitch.valueOf(pitch));
 		}
 	}
 	
@@ -159,7 +159,7 @@ public class MidiKeyboard {
 				sendMessage(noteOn);
 				
 				try {
-					Thread.sleep(duration * 2);
+					Thread.sleep(duration);
 				} catch (InterruptedException e) {
 					return;
 				}
@@ -175,6 +175,19 @@ public class MidiKeyboard {
 		}).start();
 	}
 	
+	/**
+	 * Sends a control change, such as the sustain pedal, on the channel that notes are played on.
+	 */
+	public void sendControlChange(int controller, int value) {
+		try {
+			ShortMessage message = new ShortMessage();
+			message.setMessage(ShortMessage.CONTROL_CHANGE, 1, controller, value);
+			sendMessage(message);
+		} catch(InvalidMidiDataException e) {
+			e.printStackTrace();
+		}
+	}
+	
 	/**
 	 * Clear all the guide lamps on the keyboard.
 	 */
@@ -0,0 +1,272 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Where a midi file is read from: a plain file, a gzip compressed file, or an entry in a zip archive.
+ *
+ * An entry in an archive has a path of the form "archive.zip!/entry.mid". Compressed data is inflated as
+ * it's read, and the sizes and checksums of entries come from the archive's central directory, so nothing
+ * is extracted to disk.
+ */
+public class MidiSource {
+	private static final String ENTRY_SEPARATOR = "!/";
+
+	private static final int ZIP_MAGIC = 0x504b0304;
+	private static final int GZIP_MAGIC = 0x1f8b;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private File file;
+	private String entryName;
+
+	/**
+	 * Creates a source for a plain or gzip compressed file.
+	 */
+	public MidiSource(File file) {
+		this(file, null);
+	}
+
+	/**
+	 * Creates a source for an entry in a zip archive.
+	 */
+	public MidiSource(File file, String entryName) {
+		this.file = file;
+		this.entryName = entryName;
+	}
+
+	/**
+	 * Returns the source for a path, which is either a file or an entry in an archive.
+	 */
+	public static MidiSource fromPath(String path) {
+		int separator = path.indexOf(ENTRY_SEPARATOR);
+		if(separator == -1) {
+			return new MidiSource(new File(path));
+		} else {
+			return new MidiSource(new File(path.substring(0, separator)), path.substring(separator + ENTRY_SEPARATOR.length()));
+		}
+	}
+
+	/**
+	 * Returns whether a file is a zip archive, from the signature at its start.
+	 */
+	public static boolean isArchive(File file) throws IOException {
+		return readMagic(file) == ZIP_MAGIC;
+	}
+
+	/**
+	 * Returns whether a file is gzip compressed, from the signature at its start.
+	 */
+	private static boolean isGzip(File file) throws IOException {
+		return (readMagic(file) >>> 16) == GZIP_MAGIC;
+	}
+
+	private static int readMagic(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			return (randomAccessFile.length() < 4) ? 0 : randomAccessFile.readInt();
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * Returns the names of the midi files in a zip archive, in the order they appear. Only the archive's
+	 * central directory is read, so this is quick even for archives holding thousands of files.
+	 */
+	public static List<String> getEntryNames(File file) throws IOException {
+		List<String> names = new ArrayList<String>();
+		ZipFile zipFile = new ZipFile(file);
+		try {
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			while(entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				String name = entry.getName().toLowerCase();
+				if(!entry.isDirectory() && (name.endsWith(".mid") || name.endsWith(".midi") || name.endsWith(".kar") || name.endsWith(".mid.gz"))) {
+					names.add(entry.getName());
+				}
+			}
+		} finally {
+			zipFile.close();
+		}
+		return names;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the name of the entry within a zip archive, or null if the source isn't an archive entry.
+	 */
+	public String getEntryName() {
+		return entryName;
+	}
+
+	/**
+	 * Returns the name to display for the source, without any directories.
+	 */
+	public String getName() {
+		if(entryName == null) {
+			return file.getName();
+		} else {
+			return entryName.substring(entryName.lastIndexOf('/') + 1);
+		}
+	}
+
+	/**
+	 * Returns the full path of the source, which is the same for every source that reads the same data.
+	 */
+	public String getPath() throws IOException {
+		if(entryName == null) {
+			return file.getCanonicalPath();
+		} else {
+			return file.getCanonicalPath() + ENTRY_SEPARATOR + entryName;
+		}
+	}
+
+	/**
+	 * Returns whether the data has to be inflated, so can't be mapped into memory.
+	 */
+	public boolean isCompressed() throws IOException {
+		return entryName != null || isGzip(file);
+	}
+
+	/**
+	 * Opens a stream of the midi data, which is inflated as it's read.
+	 */
+	public InputStream open() throws IOException {
+		if(entryName != null) {
+			final ZipFile zipFile = new ZipFile(file);
+			try {
+				ZipEntry entry = getEntry(zipFile);
+				InputStream in = zipFile.getInputStream(entry);
+				if(entry.getName().toLowerCase().endsWith(".gz")) {
+					in = new GZIPInputStream(in, BUFFER_SIZE);
+				}
+
+				// Close the archive with the stream.
+				return new FilterInputStream(new BufferedInputStream(in, BUFFER_SIZE)) {
+					public void close() throws IOException {
+						try {
+							super.close();
+						} finally {
+							zipFile.close();
+						}
+					}
+				};
+			} catch(IOException e) {
+				zipFile.close();
+				throw e;
+			}
+		} else if(isGzip(file)) {
+			return new BufferedInputStream(new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE), BUFFER_SIZE);
+		} else {
+			return new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+		}
+	}
+
+	/**
+	 * Returns the length of the midi data once inflated, or -1 if it isn't known.
+	 */
+	public long getLength() throws IOException {
+		if(entryName != null) {
+			ZipEntry entry = readEntry();
+			return entry.getName().toLowerCase().endsWith(".gz") ? -1 : entry.getSize();
+		} else if(isGzip(file)) {
+			// The length modulo 2^32 is stored at the end of the file.
+			return readGzipTrailer().getInt(4) & 0xffffffffL;
+		} else {
+			return file.length();
+		}
+	}
+
+	/**
+	 * Returns the modification time of the midi data.
+	 */
+	public long getLastModified() throws IOException {
+		if(entryName != null) {
+			return readEntry().getTime();
+		} else {
+			return file.lastModified();
+		}
+	}
+
+	/**
+	 * Returns a checksum of the midi data. For compressed data, this is the checksum stored with it
+	 * when it was compressed, so the data isn't read.
+	 */
+	public long getChecksum() throws IOException {
+		if(entryName != null) {
+			return readEntry().getCrc();
+		} else if(isGzip(file)) {
+			return readGzipTrailer().getInt(0) & 0xffffffffL;
+		} else {
+			RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = randomAccessFile.getChannel();
+				CRC32 crc = new CRC32();
+				crc.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+				return crc.getValue();
+			} finally {
+				randomAccessFile.close();
+			}
+		}
+	}
+
+	/**
+	 * Reads the entry's details from the archive's central directory.
+	 */
+	private ZipEntry readEntry() throws IOException {
+		ZipFile zipFile = new ZipFile(file);
+		try {
+			return getEntry(zipFile);
+		} finally {
+			zipFile.close();
+		}
+	}
+
+	private ZipEntry getEntry(ZipFile zipFile) throws IOException {
+		ZipEntry entry = zipFile.getEntry(entryName);
+		if(entry == null) {
+			throw new IOException("No entry " + entryName + " in " + file.getName());
+		}
+		return entry;
+	}
+
+	/**
+	 * Reads the checksum and length at the end of a gzip file.
+	 */
+	private ByteBuffer readGzipTrailer() throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			byte[] trailer = new byte[8];
+			randomAccessFile.seek(Math.max(0, randomAccessFile.length() - trailer.length));
+			randomAccessFile.readFully(trailer);
+			return ByteBuffer.wrap(trailer).order(ByteOrder.LITTLE_ENDIAN);
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return (entryName == null) ? file.getPath() : file.getPath() + ENTRY_SEPARATOR + entryName;
+	}
+}
@@ -1,25 +1,21 @@
 package model;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
- * A track from a midi file.
+ * A track from a midi file. The notes of every track are kept together in the file's NoteStore.
+ * Tracks aren't changed once the file is loaded: their settings are kept in a Song.
  */
 public class MidiTrack {
-	private List<Note> notes = new ArrayList<Note>();
 	private String name;
-	private boolean active;
-	private boolean autoplay;
 	private int number;
+	private int noteCount;
 	
 	public MidiTrack(int number) {
 		this.number = number;
 		this.name = "Track " + number;
 	}
 	
-	public void addNote(Note note) {
-		notes.add(note);
+	void setNoteCount(int noteCount) {
+		this.noteCount = noteCount;
 	}
 	
 	public String getName() {
@@ -30,31 +26,15 @@ public class MidiTrack {
 		return number;
 	}
 	
-	public void setName(String name) {
+	void setName(String name) {
 		this.name = name;
 	}
 
-	public boolean isActive() {
-		return active;
-	}
-
-	public void setActive(boolean active) {
-		this.active = active;
-	}
-
-	public boolean isAutoplay() {
-		return autoplay;
-	}
-
-	public void setAutoplay(boolean autoplay) {
-		this.autoplay = autoplay;
-	}
-
 	public boolean hasNotes() {
-		return !notes.isEmpty();
+		return noteCount > 0;
 	}
 	
-	public List<Note> getNotes() {
-		return notes;
+	public int getNoteCount() {
+		return noteCount;
 	}
 }
@@ -1,104 +1,65 @@
 package model;
 
 /**
- * A single note from a midi file.
+ * A single note from a midi file. This is a view onto a row of a NoteStore.
  */
 public class Note {
-	private Pitch pitch;
-	private int velocity;
-	private MidiTrack track;
-	private int startTime;
-	private int endTime;
+	private NoteStore store;
+	private int row;
 	
-	public Note(MidiTrack track, Pitch pitch, int velocity, int startTime, int endTime) {
-		this.pitch = pitch;
-		this.velocity = velocity;
-		this.track = track;
-		this.startTime = startTime;
-		this.endTime = endTime;
+	Note(NoteStore store, int row) {
+		this.store = store;
+		this.row = row;
 	}
 	
 	public Note(Note note) {
-		this.pitch = note.pitch;
-		this.velocity = note.velocity;
-		this.track = note.track;
-		this.startTime = note.startTime;
-		this.endTime = note.endTime;
-	}
-
-	public void transpose(int transpose) {
-		pitch = pitch.transpose(transpose);
+		this.store = note.store;
+		this.row = note.row;
 	}
 
 	public Pitch getPitch() {
-		return pitch;
-	}
-
-	public void setPitch(Pitch pitch) {
-		this.pitch = pitch;
+		return Pitch.valueOf(store.getMidiNumber(row));
 	}
 
 	public int getVelocity() {
-		return velocity;
-	}
-
-	public void setVelocity(int velocity) {
-		this.velocity = velocity;
+		return store.getVelocity(row);
 	}
 
 	public MidiTrack getTrack() {
-		return track;
-	}
-
-	public void setTrack(MidiTrack track) {
-		this.track = track;
+		return store.getTrack(row);
 	}
 
 	public int getStartTime() {
-		return startTime;
-	}
-
-	public void setStartTime(int startTime) {
-		this.startTime = startTime;
+		return store.getStartTime(row);
 	}
 
 	public int getEndTime() {
-		return endTime;
-	}
-
-	public void setEndTime(int endTime) {
-		this.endTime = endTime;
+		return store.getEndTime(row);
 	}
 	
 	public int getDuration() {
-		return endTime - startTime;
+		return store.getDuration(row);
+	}
+	
+	/**
+	 * Returns the row of this note within its NoteStore.
+	 */
+	public int getRow() {
+		return row;
 	}
 	
 	public String toString() {
-		return track.getName() + ": " + pitch + " (" + velocity + ") " + startTime + " - " + endTime;
+		return getTrack().getName() + ": " + getPitch() + " (" + getVelocity() + ") " + getStartTime() + " - " + getEndTime();
 	}
 
 	public boolean equals(Object obj) {
 		if(obj == null || getClass() != obj.getClass()) return false;
 		
 		Note other = (Note)obj;
-		if(endTime != other.endTime) return false;
-		if(!pitch.equals(other.pitch)) return false;
-		if(startTime != other.startTime) return false;
-		if(!track.equals(other.track)) return false;
-		if(velocity != other.velocity) return false;
-		
-		return true;
+		return store == other.store && row == other.row;
 	}
 	
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + endTime;
-		result = prime * result + pitch.hashCode();
-		result = prime * result + startTime;
-		result = prime * result + track.hashCode();
-		result = prime * result + velocity;
-		return result;
+		return row;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,154 @@
+package model;
+
+/**
+ * An index over the time spans of the notes in a NoteStore. As notes are already sorted by start
+ * time, the index is an implicit binary tree over the rows holding the maximum end time below each
+ * node. This finds the notes sounding at a tick, and the next notes after it, in O(log n + k) time.
+ * Everything is in ticks, so the index doesn't depend on how the notes are displayed.
+ *
+ * For notes stored outside the heap, each leaf covers a block of rows rather than a single row, so
+ * that the index stays small. The rows of a block are then checked one by one.
+ */
+public class NoteIndex {
+	// Rows in each leaf for notes stored outside the heap, as a power of two.
+	private static final int MAPPED_BLOCK_SHIFT = 6;
+
+	private NoteStore notes;
+
+	// Rows in each leaf, as a power of two.
+	private int blockShift;
+
+	// Number of leaves in the tree, a power of two at least as large as the number of blocks.
+	private int leaves;
+
+	// Maximum end time of the rows under each node. Node 1 is the root, and the children of node i
+	// are 2i and 2i + 1. The leaf for block b is node leaves + b.
+	private int[] maxEndTimes;
+
+	public NoteIndex(NoteStore notes) {
+		this.notes = notes;
+		this.blockShift = notes.isMapped() ? MAPPED_BLOCK_SHIFT : 0;
+
+		int blocks = (notes.size() + (1 << blockShift) - 1) >> blockShift;
+
+		leaves = 1;
+		while(leaves < blocks) {
+			leaves *= 2;
+		}
+
+		maxEndTimes = new int[leaves * 2];
+		for(int node = 1; node < maxEndTimes.length; node++) {
+			maxEndTimes[node] = Integer.MIN_VALUE;
+		}
+		for(int row = 0; row < notes.size(); row++) {
+			int leaf = leaves + (row >> blockShift);
+			maxEndTimes[leaf] = Math.max(maxEndTimes[leaf], notes.getEndTime(row));
+		}
+		for(int node = leaves - 1; node > 0; node--) {
+			maxEndTimes[node] = Math.max(maxEndTimes[node * 2], maxEndTimes[node * 2 + 1]);
+		}
+	}
+
+	/**
+	 * Returns the rows of the notes that are sounding at a tick, so that startTime <= tick < endTime.
+	 */
+	public IntList getNotesAt(int tick) {
+		IntList rows = new IntList();
+
+		// Only rows before this one start at or before the tick.
+		int end = upperBound(tick);
+
+		if(end > 0) {
+			collectEndingAfter(1, 0, leaves, end, tick, rows);
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Returns the rows of the earliest starting notes that haven't ended by a tick, so that
+	 * endTime > tick. Notes count as starting together when their start times divided by
+	 * granularity are equal.
+	 */
+	public IntList getNotesAfter(int tick, int granularity) {
+		IntList rows = new IntList();
+
+		int first = firstEndingAfter(tick);
+		if(first == -1) {
+			return rows;
+		}
+
+		int start = notes.getStartTime(first) / granularity;
+		for(int row = first; row < notes.size() && notes.getStartTime(row) / granularity == start; row++) {
+			if(notes.getEndTime(row) > tick) {
+				rows.add(row);
+			}
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Adds the rows below a node, and before end, with an end time after the tick.
+	 * The node covers the blocks from nodeStart to nodeEnd.
+	 */
+	private void collectEndingAfter(int node, int nodeStart, int nodeEnd, int end, int tick, IntList rows) {
+		if(maxEndTimes[node] <= tick) return;
+
+		if(node >= leaves) {
+			int blockStart = (node - leaves) << blockShift;
+			int blockEnd = Math.min(blockStart + (1 << blockShift), end);
+			for(int row = blockStart; row < blockEnd; row++) {
+				if(notes.getEndTime(row) > tick) {
+					rows.add(row);
+				}
+			}
+			return;
+		}
+
+		int middle = (nodeStart + nodeEnd) / 2;
+		collectEndingAfter(node * 2, nodeStart, middle, end, tick, rows);
+		if((middle << blockShift) < end) {
+			collectEndingAfter(node * 2 + 1, middle, nodeEnd, end, tick, rows);
+		}
+	}
+
+	/**
+	 * Returns the first row with an end time after the tick, or -1 if there isn't one.
+	 */
+	private int firstEndingAfter(int tick) {
+		if(maxEndTimes[1] <= tick) return -1;
+
+		int node = 1;
+		while(node < leaves) {
+			node *= 2;
+			if(maxEndTimes[node] <= tick) {
+				node++;
+			}
+		}
+
+		// The block has at least one row ending after the tick.
+		int row = (node - leaves) << blockShift;
+		while(notes.getEndTime(row) <= tick) {
+			row++;
+		}
+		return row;
+	}
+
+	/**
+	 * Returns the first row with a start time after the tick.
+	 */
+	public int upperBound(int tick) {
+		int low = 0;
+		int high = notes.size();
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(notes.getStartTime(middle) <= tick) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,225 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Stores the notes of a midi file, sorted by start time. Note objects are only created as views onto a
+ * row when they are requested.
+ *
+ * Notes are normally kept in parallel arrays on the heap. Very large files keep them outside the heap
+ * instead, in fixed width records in memory-mapped files, so that the heap doesn't grow with the number
+ * of notes. This is used when the expected number of notes is at least MAPPED_NOTES, or when the
+ * midi.mappedNotes system property is true, and never when it is false.
+ */
+public abstract class NoteStore {
+	// Expected number of notes at which they are stored outside the heap.
+	private static final long MAPPED_NOTES = 4 * 1024 * 1024;
+
+	// Bytes in each record: start time, end time, pitch, velocity and track index.
+	static final int RECORD_SIZE = 12;
+
+	private List<MidiTrack> trackList;
+
+	/**
+	 * Returns whether notes should be stored outside the heap for a number of expected notes.
+	 */
+	static boolean useMapped(long expectedNotes) {
+		String property = System.getProperty("midi.mappedNotes");
+		if(property != null) {
+			return Boolean.parseBoolean(property);
+		}
+		return expectedNotes >= MAPPED_NOTES;
+	}
+
+	/**
+	 * Creates an empty store, outside the heap if mapped is true.
+	 */
+	static NoteStore create(int capacity, boolean mapped) {
+		if(mapped) {
+			return new MappedNoteStore();
+		} else {
+			return new ArrayNoteStore(capacity);
+		}
+	}
+
+	/**
+	 * Merges stores that are each sorted by start time into a single sorted store. Notes with the
+	 * same start time are ordered by their store, then by their order within it. The notes of each
+	 * store are assigned to the track with the same index in trackList. Mapped stores are released.
+	 */
+	static NoteStore merge(List<NoteStore> stores, List<MidiTrack> trackList, boolean mapped) {
+		int total = 0;
+		for(NoteStore store:stores) {
+			total += store.size();
+		}
+
+		NoteStore merged = create(total, mapped);
+		merged.trackList = trackList;
+		merged.setSize(total);
+
+		int[] positions = new int[stores.size()];
+
+		// Keep the stores in a heap by the start time of their next note.
+		MergeHeap heap = new MergeHeap(stores.size());
+		for(int s = 0; s < stores.size(); s++) {
+			if(stores.get(s).size() > 0) {
+				heap.add(s, stores.get(s).getStartTime(0));
+			}
+		}
+
+		for(int row = 0; row < total; row++) {
+			int next = heap.peek();
+			NoteStore store = stores.get(next);
+			int i = positions[next]++;
+			merged.setRow(row, store.getStartTime(i), store.getEndTime(i), store.getMidiNumber(i), store.getVelocity(i), next);
+
+			if(i + 1 < store.size()) {
+				heap.replaceTop(store.getStartTime(i + 1));
+			} else {
+				heap.removeTop();
+			}
+		}
+
+		for(NoteStore store:stores) {
+			store.release();
+		}
+
+		return merged;
+	}
+
+	/**
+	 * Returns the number of bytes needed to write this store.
+	 */
+	int getWriteSize() {
+		return 4 + size() * RECORD_SIZE;
+	}
+
+	/**
+	 * Writes the notes to a buffer as fixed width records, to be read back with read().
+	 */
+	void write(ByteBuffer buffer) {
+		buffer.putInt(size());
+		for(int row = 0; row < size(); row++) {
+			buffer.putInt(getStartTime(row));
+			buffer.putInt(getEndTime(row));
+			buffer.put((byte)getMidiNumber(row));
+			buffer.put((byte)getVelocity(row));
+			buffer.putShort((short)getTrackIndex(row));
+		}
+	}
+
+	/**
+	 * Reads notes that were written with write(), assigning them to the tracks in trackList. Large stores
+	 * read from a direct buffer use the records in the buffer without copying them.
+	 */
+	static NoteStore read(ByteBuffer buffer, List<MidiTrack> trackList) {
+		int size = buffer.getInt();
+		if(size < 0 || (long)size * RECORD_SIZE > buffer.remaining()) {
+			throw new IllegalArgumentException("Invalid note count: " + size);
+		}
+
+		ByteBuffer records = buffer.slice();
+		records.limit(size * RECORD_SIZE);
+		buffer.position(buffer.position() + size * RECORD_SIZE);
+
+		NoteStore store;
+		if(buffer.isDirect() && useMapped(size)) {
+			store = new MappedNoteStore(records, size);
+		} else {
+			store = new ArrayNoteStore(size);
+			store.setSize(size);
+			for(int row = 0; row < size; row++) {
+				store.setRow(row, records.getInt(), records.getInt(), records.get(), records.get(), records.getShort() & 0xffff);
+			}
+		}
+		store.trackList = trackList;
+
+		for(int row = 0; row < size; row++) {
+			int track = store.getTrackIndex(row);
+			if(track < 0 || track >= trackList.size()) {
+				throw new IllegalArgumentException("Invalid track index: " + track);
+			}
+		}
+
+		return store;
+	}
+
+	/**
+	 * Appends a note with an end time of -1, returning its row. Rows must be added in start time order.
+	 */
+	abstract int add(int startTime, int pitch, int velocity);
+
+	abstract void setEndTime(int row, int endTime);
+
+	/**
+	 * Sets every value of a row, which must be less than the size.
+	 */
+	abstract void setRow(int row, int startTime, int endTime, int pitch, int velocity, int track);
+
+	/**
+	 * Sets the number of rows, making room for them if necessary.
+	 */
+	abstract void setSize(int size);
+
+	/**
+	 * Returns whether the notes are stored outside the heap.
+	 */
+	public abstract boolean isMapped();
+
+	/**
+	 * Frees any storage outside the heap. The store mustn't be used afterwards.
+	 */
+	void release() {
+	}
+
+	/**
+	 * Removes the notes without an end time, so those with a negative end time.
+	 */
+	void removeUnfinished() {
+		int count = 0;
+		for(int i = 0; i < size(); i++) {
+			if(getEndTime(i) >= 0) {
+				setRow(count, getStartTime(i), getEndTime(i), getMidiNumber(i), getVelocity(i), getTrackIndex(i));
+				count++;
+			}
+		}
+		setSize(count);
+	}
+
+	/**
+	 * Returns the number of notes.
+	 */
+	public abstract int size();
+
+	public abstract int getStartTime(int row);
+
+	public abstract int getEndTime(int row);
+
+	public int getDuration(int row) {
+		return getEndTime(row) - getStartTime(row);
+	}
+
+	/**
+	 * Returns the midi number of the pitch of a note.
+	 */
+	public abstract int getMidiNumber(int row);
+
+	public abstract int getVelocity(int row);
+
+	/**
+	 * Returns the index of the track of a note within the midi file's tracks.
+	 */
+	public abstract int getTrackIndex(int row);
+
+	public MidiTrack getTrack(int row) {
+		return trackList.get(getTrackIndex(row));
+	}
+
+	/**
+	 * Returns a view of a single note.
+	 */
+	public Note getNote(int row) {
+		return new Note(this, row);
+	}
+}
@@ -3,17 +3,56 @@ import java.util.Arrays;
 
 /**
  * A pitch corresponding to a single key on a keyboard.
+ *
+ * Pitches are immutable, and the pitches of the 128 midi numbers are shared instances returned by valueOf().
+ * Their names, octaves and staff positions are looked up in tables, so they can be used while painting
+ * without creating any objects.
  */
 public class Pitch {
 	private static final String[] noteNames = "C, C#, D, D#, E, F, F#, G, G#, A, A#, B".split(", ");
 	
-	private int midiNumber;
+	// Steps of each note in the octave above C on the staff, so that sharps share the position of their natural.
+	private static final int[] staffSteps = { 0, 0, 1, 1, 2, 3, 3, 4, 4, 5, 5, 6 };
+	
+	private static final int MIDI_NUMBERS = 128;
+	
+	private static final Pitch[] pitches = new Pitch[MIDI_NUMBERS];
+	private static final boolean[] blackKeys = new boolean[MIDI_NUMBERS];
+	private static final int[] octaves = new int[MIDI_NUMBERS];
+	private static final int[] staffPositions = new int[MIDI_NUMBERS];
+	private static final String[] fullNoteNames = new String[MIDI_NUMBERS];
+	
+	static {
+		for(int midiNumber = 0; midiNumber < MIDI_NUMBERS; midiNumber++) {
+			pitches[midiNumber] = new Pitch(midiNumber);
+			blackKeys[midiNumber] = computeNoteName(midiNumber).contains("#");
+			octaves[midiNumber] = computeOctave(midiNumber);
+			staffPositions[midiNumber] = computeStaffPosition(midiNumber);
+			fullNoteNames[midiNumber] = computeNoteName(midiNumber) + computeOctave(midiNumber);
+		}
+	}
+	
+	private final int midiNumber;
 
+	private Pitch(int midiNumber) {
+		this.midiNumber = midiNumber;
+	}
+	
 	/**
-	 * Creates a new pitch from a noteName.
+	 * Returns the pitch for a midi number (21-108 for a standard piano).
+	 */
+	public static Pitch valueOf(int midiNumber) {
+		if(midiNumber >= 0 && midiNumber < MIDI_NUMBERS) {
+			return pitches[midiNumber];
+		}
+		return new Pitch(midiNumber);
+	}
+	
+	/**
+	 * Returns the pitch for a note name.
 	 * @param noteName The name of the note with an octave such as: 'A#0', 'C4'.
 	 */
-	public Pitch(String noteName) {
+	public static Pitch valueOf(String noteName) {
 		int octave = noteName.charAt(noteName.length() - 1) - '0';
 		String name = noteName.substring(0, noteName.length() - 1);
 		
@@ -22,21 +61,7 @@ public class Pitch {
 		if(octave < 0 || octave > 8) throw new IllegalArgumentException("Invalid note");
 		if(note < 0) throw new IllegalArgumentException("Invalid note");
 		
-		this.midiNumber = octave * 12 + note + 12;
-	}
-	
-	/**
-	 * Creates a new pitch from a midi number (21-108 for a standard piano).
-	 */
-	public Pitch(int midiNumber) {
-		this.midiNumber = midiNumber;
-	}
-	
-	/**
-	 * Create a new pitch as a copy of another.
-	 */
-	public Pitch(Pitch pitch) {
-		this.midiNumber = pitch.midiNumber;
+		return valueOf(octave * 12 + note + 12);
 	}
 
 	/**
@@ -50,13 +75,15 @@ public class Pitch {
 	 * Returns the octave of the pitch.
 	 */
 	public int getOctave() {
-		return (midiNumber - 12 + 60) / 12 - (60 / 12);
+		if(inRange()) return octaves[midiNumber];
+		return computeOctave(midiNumber);
 	}
 
 	/**
 	 * Returns whether this would be a black key if played on a keyboard. 
 	 */
 	public boolean isBlackKey() {
+		if(inRange()) return blackKeys[midiNumber];
 		return getNoteName().contains("#");
 	}
 	
@@ -64,14 +91,14 @@ public class Pitch {
 	 * Returns the note name without the octave. For example: 'C' or 'D#'.
 	 */
 	public String getNoteName() {
-		int name = (midiNumber - 12 + 60) % 12;
-		return noteNames[name];
+		return computeNoteName(midiNumber);
 	}
 
 	/**
 	 * Returns the note name with the octave. For example: 'A#0' or 'C4'.
 	 */
 	public String getFullNoteName() {
+		if(inRange()) return fullNoteNames[midiNumber];
 		return getNoteName() + getOctave();
 	}
 
@@ -79,21 +106,21 @@ public class Pitch {
 	 * Return the pitch that is a semitone higher than this one.
 	 */
 	public Pitch nextSemitone() {
-		return new Pitch(midiNumber + 1);
+		return valueOf(midiNumber + 1);
 	}
 
 	/**
 	 * Return the pitch that is a semitone lower than this one.
 	 */
 	public Pitch previousSemitone() {
-		return new Pitch(midiNumber - 1);
+		return valueOf(midiNumber - 1);
 	}
 	
 	/**
 	 * Returns the pitch transposed by the given amount.
 	 */
 	public Pitch transpose(int transpose) {
-		return new Pitch(midiNumber + transpose);
+		return valueOf(midiNumber + transpose);
 	}
 
 	/**
@@ -126,16 +153,32 @@ public class Pitch {
 	 * For example: 'C4' and 'C#4' return 0, 'D4' and 'D#4' return 1, 'B3' returns -1.
 	 */
 	public int getStaffPosition() {
-		char letter = getNoteName().charAt(0);
-		int distance = letter - 'C';
-		if(letter < 'C') distance += 7;
-		
-		distance += (getOctave() - 4) * 7;
-		
-		return distance;
+		if(inRange()) return staffPositions[midiNumber];
+		return computeStaffPosition(midiNumber);
 	}
 	
 	public String toString() {
 		return getNoteName();
 	}
+	
+	/**
+	 * Returns whether the midi number has entries in the lookup tables.
+	 */
+	private boolean inRange() {
+		return midiNumber >= 0 && midiNumber < MIDI_NUMBERS;
+	}
+	
+	private static String computeNoteName(int midiNumber) {
+		int name = (midiNumber - 12 + 60) % 12;
+		return noteNames[name];
+	}
+	
+	private static int computeOctave(int midiNumber) {
+		return (midiNumber - 12 + 60) / 12 - (60 / 12);
+	}
+	
+	private static int computeStaffPosition(int midiNumber) {
+		int note = (midiNumber - 12 + 60) % 12;
+		return staffSteps[note] + (computeOctave(midiNumber) - 4) * 7;
+	}
 }
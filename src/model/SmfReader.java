@@ -0,0 +1,389 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+/**
+ * Reads a standard midi file directly from a memory-mapped buffer, without building a
+ * javax.sound.midi Sequence. Each track chunk is decoded on demand into calls on a TrackHandler.
+ *
+ * Files that can't be mapped, such as compressed ones, are read from a stream one track chunk at a
+ * time instead, so that only the chunks read so far are kept in memory.
+ */
+public class SmfReader {
+	private static final int MTHD = 0x4d546864;
+	private static final int MTRK = 0x4d54726b;
+	
+	// Number of bytes to decode between checks of a LoadMonitor.
+	private static final int MONITOR_INTERVAL = 64 * 1024;
+	
+	// Initial size of the array a track chunk is read into from a stream, so that a damaged chunk
+	// length doesn't allocate more than the data that is actually there.
+	private static final int STREAM_CHUNK_SIZE = 64 * 1024;
+
+	private int format;
+	private int resolution;
+	private int framesPerSecond = 0;
+	private int trackCount;
+	
+	// Synchronized, as tracks read from a stream are added while earlier ones are being decoded.
+	private List<ByteBuffer> tracks = Collections.synchronizedList(new ArrayList<ByteBuffer>());
+	
+	// Stream that the remaining track chunks are read from, or null if every chunk has been read.
+	private InputStream in;
+
+	/**
+	 * Maps a file into memory and reads its header and track chunk boundaries.
+	 */
+	public SmfReader(File file) throws InvalidMidiDataException, IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			readChunks(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * Reads the header and track chunk boundaries from a buffer holding a whole midi file.
+	 */
+	public SmfReader(ByteBuffer buffer) throws InvalidMidiDataException {
+		readChunks(buffer);
+	}
+
+	/**
+	 * Reads the header of a midi file from a stream. The track chunks are then read one at a time with
+	 * readNextTrack(), so that each track can be decoded while the next one is read. The stream isn't closed.
+	 */
+	public SmfReader(InputStream in) throws InvalidMidiDataException, IOException {
+		byte[] start = new byte[8];
+		if(read(in, start, 0, 8) < 8) {
+			throw new InvalidMidiDataException("Not a standard midi file");
+		}
+		
+		int headerLength = ByteBuffer.wrap(start).getInt(4);
+		if(headerLength < 6 || headerLength > 1024) {
+			throw new InvalidMidiDataException("Invalid header length: " + headerLength);
+		}
+		
+		byte[] header = Arrays.copyOf(start, 8 + headerLength);
+		if(read(in, header, 8, headerLength) < headerLength) {
+			throw new InvalidMidiDataException("Truncated header");
+		}
+		readHeader(ByteBuffer.wrap(header));
+		
+		this.in = in;
+	}
+
+	private void readChunks(ByteBuffer buffer) throws InvalidMidiDataException {
+		readHeader(buffer);
+
+		// Find each track chunk, skipping any unknown chunk types.
+		while(tracks.size() < trackCount && buffer.remaining() >= 8) {
+			int type = buffer.getInt();
+			int length = buffer.getInt();
+
+			// Truncated files are common, so decode as much of the last chunk as is present.
+			if(length < 0 || length > buffer.remaining()) {
+				length = buffer.remaining();
+			}
+
+			if(type == MTRK) {
+				ByteBuffer track = buffer.slice();
+				track.limit(length);
+				tracks.add(track);
+			}
+
+			buffer.position(buffer.position() + length);
+		}
+	}
+	
+	/**
+	 * Reads the header chunk, leaving the buffer at the first chunk after it.
+	 */
+	private void readHeader(ByteBuffer buffer) throws InvalidMidiDataException {
+		if(buffer.remaining() < 14 || buffer.getInt() != MTHD) {
+			throw new InvalidMidiDataException("Not a standard midi file");
+		}
+
+		int headerLength = buffer.getInt();
+		if(headerLength < 6 || headerLength > buffer.remaining()) {
+			throw new InvalidMidiDataException("Invalid header length: " + headerLength);
+		}
+
+		int headerEnd = buffer.position() + headerLength;
+		format = buffer.getShort() & 0xffff;
+		trackCount = buffer.getShort() & 0xffff;
+		short division = buffer.getShort();
+		resolution = readResolution(division);
+		if(division < 0) {
+			framesPerSecond = -(division >> 8);
+		}
+		buffer.position(headerEnd);
+
+		if(format > 2) {
+			throw new InvalidMidiDataException("Unsupported midi file format: " + format);
+		}
+	}
+	
+	/**
+	 * Reads the next track chunk from the stream, skipping any unknown chunk types. Returns false if
+	 * there are no more tracks, or if the reader wasn't created from a stream.
+	 */
+	public boolean readNextTrack() throws IOException {
+		while(in != null && tracks.size() < trackCount) {
+			byte[] chunkHeader = new byte[8];
+			if(read(in, chunkHeader, 0, 8) < 8) {
+				break;
+			}
+			
+			ByteBuffer header = ByteBuffer.wrap(chunkHeader);
+			int type = header.getInt();
+			
+			// Truncated files are common, so read as much of the last chunk as is present.
+			long length = header.getInt() & 0xffffffffL;
+			
+			if(type == MTRK) {
+				tracks.add(ByteBuffer.wrap(readChunk(length)));
+				return true;
+			}
+			
+			skip(length);
+		}
+		
+		in = null;
+		return false;
+	}
+	
+	/**
+	 * Reads a chunk of up to length bytes from the stream, growing the array as the data arrives.
+	 */
+	private byte[] readChunk(long length) throws IOException {
+		length = Math.min(length, Integer.MAX_VALUE - 8);
+		
+		byte[] data = new byte[(int)Math.min(length, STREAM_CHUNK_SIZE)];
+		int size = 0;
+		while(size < length) {
+			if(size == data.length) {
+				data = Arrays.copyOf(data, (int)Math.min(length, (long)data.length * 2));
+			}
+			
+			int count = in.read(data, size, data.length - size);
+			if(count == -1) {
+				break;
+			}
+			size += count;
+		}
+		
+		return (size == data.length) ? data : Arrays.copyOf(data, size);
+	}
+	
+	private void skip(long length) throws IOException {
+		while(length > 0) {
+			long skipped = in.skip(length);
+			if(skipped <= 0) {
+				// Check for the end of the stream, which skip() doesn't report.
+				if(in.read() == -1) break;
+				skipped = 1;
+			}
+			length -= skipped;
+		}
+	}
+	
+	/**
+	 * Reads up to length bytes into an array, returning the number read, which is less only at the end of the stream.
+	 */
+	private static int read(InputStream in, byte[] data, int offset, int length) throws IOException {
+		int size = 0;
+		while(size < length) {
+			int count = in.read(data, offset + size, length - size);
+			if(count == -1) break;
+			size += count;
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the ticks per quarter note from the division field, or the ticks per frame for SMPTE timing.
+	 */
+	private static int readResolution(short division) {
+		if(division < 0) {
+			return division & 0xff;
+		} else {
+			return division;
+		}
+	}
+
+	public int getFormat() {
+		return format;
+	}
+
+	public int getResolution() {
+		return resolution;
+	}
+	
+	/**
+	 * Returns the frames per second for files with SMPTE timing, or 0 if the resolution is in ticks per quarter note.
+	 * A value of 29 means 29.97 frames per second.
+	 */
+	public int getFramesPerSecond() {
+		return framesPerSecond;
+	}
+
+	/**
+	 * Returns the number of track chunks that have been read. For a reader created from a stream,
+	 * this increases with each call to readNextTrack().
+	 */
+	public int getTrackCount() {
+		return tracks.size();
+	}
+
+	/**
+	 * Returns the length of a track chunk in bytes.
+	 */
+	public int getTrackLength(int index) {
+		return tracks.get(index).limit();
+	}
+
+	/**
+	 * Decodes a single track, calling the handler for each event in order.
+	 */
+	public void readTrack(int index, TrackHandler handler) throws InvalidMidiDataException {
+		readTrack(tracks.get(index).duplicate(), Integer.MAX_VALUE, handler, null);
+	}
+
+	/**
+	 * Decodes a single track, calling the handler for each event before endTick in order.
+	 * The monitor, if not null, is told of progress and can cancel decoding with a CancellationException.
+	 */
+	public void readTrack(int index, int endTick, TrackHandler handler, LoadMonitor monitor) throws InvalidMidiDataException {
+		readTrack(tracks.get(index).duplicate(), endTick, handler, monitor);
+	}
+
+	/**
+	 * Decodes the events of a track chunk, calling the handler for each event before endTick in order.
+	 */
+	static void readTrack(ByteBuffer data, int endTick, TrackHandler handler, LoadMonitor monitor) throws InvalidMidiDataException {
+		int tick = 0;
+		int runningStatus = 0;
+		int reported = data.position();
+
+		try {
+			while(data.hasRemaining()) {
+				if(monitor != null && data.position() - reported >= MONITOR_INTERVAL) {
+					reportProgress(monitor, data.position() - reported);
+					reported = data.position();
+				}
+				
+				tick += readVariableLength(data);
+				
+				if(tick >= endTick) {
+					break;
+				}
+
+				int status = data.get() & 0xff;
+
+				if(status < 0x80) {
+					// Running status: reuse the previous status byte, and this byte is the first data byte.
+					if(runningStatus == 0) {
+						throw new InvalidMidiDataException("Data byte without status at tick " + tick);
+					}
+					readChannelMessage(data, handler, tick, runningStatus, status);
+				} else if(status < 0xf0) {
+					runningStatus = status;
+					readChannelMessage(data, handler, tick, status, data.get() & 0x7f);
+				} else if(status == 0xff) {
+					// Meta events cancel running status, as sysex events do.
+					runningStatus = 0;
+					
+					int type = data.get() & 0xff;
+					int length = readVariableLength(data);
+
+					// End of track, or a meta event truncated by the end of the file.
+					if(type == 0x2f || length > data.remaining()) {
+						break;
+					}
+
+					byte[] metaData = new byte[length];
+					data.get(metaData);
+					handler.metaEvent(tick, type, metaData);
+				} else if(status == 0xf0 || status == 0xf7) {
+					// Skip sysex data. Sysex events cancel running status, as the SMF 1.0 specification says.
+					int length = readVariableLength(data);
+					data.position(Math.min(data.limit(), data.position() + length));
+					runningStatus = 0;
+				} else {
+					throw new InvalidMidiDataException("Invalid status byte " + status + " at tick " + tick);
+				}
+			}
+		} catch(BufferUnderflowException e) {
+			// The track is truncated: keep the events decoded so far.
+		}
+		
+		if(monitor != null) {
+			reportProgress(monitor, data.limit() - reported);
+		}
+	}
+	
+	private static void reportProgress(LoadMonitor monitor, int bytes) {
+		if(monitor.isCancelled()) {
+			throw new CancellationException();
+		}
+		monitor.worked(bytes);
+	}
+
+	/**
+	 * Decodes a channel voice message with its first data byte already read.
+	 */
+	private static void readChannelMessage(ByteBuffer data, TrackHandler handler, int tick, int status, int data1) {
+		int command = status & 0xf0;
+		int channel = status & 0x0f;
+
+		// Program change and channel pressure have a single data byte.
+		int data2 = 0;
+		if(command != 0xc0 && command != 0xd0) {
+			data2 = data.get() & 0x7f;
+		}
+
+		if(command == 0x90) {
+			if(data2 == 0) {
+				// A note-on event with 0 velocity is the same as a note-off event.
+				handler.noteOff(tick, channel, data1);
+			} else {
+				handler.noteOn(tick, channel, data1, data2);
+			}
+		} else if(command == 0x80) {
+			handler.noteOff(tick, channel, data1);
+		} else if(command == 0xb0 || command == 0xc0 || command == 0xe0) {
+			handler.controlEvent(tick, channel, command, data1, data2);
+		}
+	}
+
+	/**
+	 * Reads a variable length quantity of up to 4 bytes.
+	 */
+	private static int readVariableLength(ByteBuffer data) throws InvalidMidiDataException {
+		int value = 0;
+		for(int i = 0; i < 4; i++) {
+			int b = data.get();
+			value = (value << 7) | (b & 0x7f);
+			if(b >= 0) {
+				return value;
+			}
+		}
+		throw new InvalidMidiDataException("Invalid variable length quantity");
+	}
+}
@@ -0,0 +1,98 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * An immutable snapshot of a loaded midi file and the settings of its tracks.
+ *
+ * Changing a setting creates a new snapshot with the next version number, leaving the old one as it
+ * was. Snapshots are published through an AtomicReference, so the playback and midi input threads can
+ * read a consistent set of settings without locking while the UI thread changes them.
+ */
+public final class Song {
+	private final MidiFile midiFile;
+	private final long version;
+
+	// Settings of each track, indexed by track number.
+	private final boolean[] active;
+	private final boolean[] autoplay;
+
+	/**
+	 * Creates the first snapshot of a midi file, with every track active and autoplayed.
+	 */
+	public Song(MidiFile midiFile) {
+		this.midiFile = midiFile;
+		this.version = 0;
+
+		int size = getMaxTrackNumber(midiFile) + 1;
+		this.active = new boolean[size];
+		this.autoplay = new boolean[size];
+		Arrays.fill(active, true);
+		Arrays.fill(autoplay, true);
+	}
+
+	private Song(MidiFile midiFile, long version, boolean[] active, boolean[] autoplay) {
+		this.midiFile = midiFile;
+		this.version = version;
+		this.active = active;
+		this.autoplay = autoplay;
+	}
+
+	public MidiFile getMidiFile() {
+		return midiFile;
+	}
+
+	/**
+	 * Returns the version of this snapshot, which increases with each change.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	public boolean isActive(MidiTrack track) {
+		return active[track.getNumber()];
+	}
+
+	public boolean isAutoplay(MidiTrack track) {
+		return autoplay[track.getNumber()];
+	}
+
+	/**
+	 * Returns a new snapshot with a track made active or inactive.
+	 */
+	public Song withActive(MidiTrack track, boolean value) {
+		boolean[] newActive = active.clone();
+		newActive[track.getNumber()] = value;
+		return new Song(midiFile, version + 1, newActive, autoplay);
+	}
+
+	/**
+	 * Returns a new snapshot with a track set to be autoplayed or not.
+	 */
+	public Song withAutoplay(MidiTrack track, boolean value) {
+		boolean[] newAutoplay = autoplay.clone();
+		newAutoplay[track.getNumber()] = value;
+		return new Song(midiFile, version + 1, active, newAutoplay);
+	}
+
+	/**
+	 * Returns a new snapshot of a more complete version of the same file, keeping the settings of tracks
+	 * with the same number. Other tracks are active and autoplayed.
+	 */
+	public Song withMidiFile(MidiFile newMidiFile) {
+		int size = Math.max(active.length, getMaxTrackNumber(newMidiFile) + 1);
+		boolean[] newActive = Arrays.copyOf(active, size);
+		boolean[] newAutoplay = Arrays.copyOf(autoplay, size);
+		Arrays.fill(newActive, active.length, size, true);
+		Arrays.fill(newAutoplay, autoplay.length, size, true);
+		return new Song(newMidiFile, version + 1, newActive, newAutoplay);
+	}
+
+	private static int getMaxTrackNumber(MidiFile midiFile) {
+		int max = 0;
+		for(MidiTrack track:midiFile.getTracks()) {
+			max = Math.max(max, track.getNumber());
+		}
+		return max;
+	}
+}
@@ -0,0 +1,205 @@
+package model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts between ticks and real time using the tempo changes in a midi file.
+ *
+ * The file is split into segments of constant tempo, each storing its start tick, its tempo and the
+ * time in microseconds from the beginning of the file to its start. Conversions find the segment with a
+ * binary search, but first check the segment used by the previous conversion and the one after it, so
+ * that the steadily increasing lookups made during playback take constant time.
+ */
+public class TempoMap {
+	// Tempo used before the first tempo change: 120 beats per minute.
+	private static final int DEFAULT_TEMPO = 500000;
+
+	private int resolution;
+	private int[] ticks;
+	private int[] tempos;
+	private long[] micros;
+
+	// Segment found by the last conversion. Reads and writes of an int are atomic, so this can be shared between threads.
+	private int cursor = 0;
+
+	/**
+	 * Creates a tempo map from tempo changes sorted by tick.
+	 * @param resolution Ticks per quarter note.
+	 * @param changeTicks The tick of each tempo change.
+	 * @param changeTempos The tempo of each change in microseconds per quarter note.
+	 */
+	TempoMap(int resolution, IntList changeTicks, IntList changeTempos) {
+		this.resolution = Math.max(1, resolution);
+
+		// Start with the default tempo, and keep only the last of several changes at the same tick.
+		IntList segmentTicks = new IntList();
+		IntList segmentTempos = new IntList();
+		segmentTicks.add(0);
+		segmentTempos.add(DEFAULT_TEMPO);
+
+		for(int i = 0; i < changeTicks.size(); i++) {
+			int tempo = changeTempos.get(i);
+			if(tempo <= 0) continue;
+
+			if(segmentTicks.get(segmentTicks.size() - 1) == changeTicks.get(i)) {
+				segmentTempos.set(segmentTempos.size() - 1, tempo);
+			} else {
+				segmentTicks.add(changeTicks.get(i));
+				segmentTempos.add(tempo);
+			}
+		}
+
+		int count = segmentTicks.size();
+		ticks = new int[count];
+		tempos = new int[count];
+		micros = new long[count];
+
+		for(int i = 0; i < count; i++) {
+			ticks[i] = segmentTicks.get(i);
+			tempos[i] = segmentTempos.get(i);
+			if(i > 0) {
+				micros[i] = micros[i - 1] + (long)(ticks[i] - ticks[i - 1]) * tempos[i - 1] / this.resolution;
+			}
+		}
+	}
+
+	/**
+	 * Creates a tempo map with a constant number of microseconds for each resolution ticks, for files with SMPTE timing.
+	 */
+	TempoMap(int resolution, int tempo) {
+		this.resolution = Math.max(1, resolution);
+		this.ticks = new int[] { 0 };
+		this.tempos = new int[] { tempo };
+		this.micros = new long[] { 0 };
+	}
+
+	/**
+	 * Returns the time in microseconds from the beginning of the file to a tick.
+	 */
+	public long getMicros(int tick) {
+		int segment = findSegment(tick);
+		return micros[segment] + (long)(tick - ticks[segment]) * tempos[segment] / resolution;
+	}
+
+	/**
+	 * Returns the tick at a time in microseconds from the beginning of the file: the last tick that
+	 * getMicros() places at or before the time, so that converting a tick to a time and back returns it.
+	 */
+	public int getTick(long time) {
+		int segment = findSegmentByTime(time);
+		return ticks[segment] + (int)(((time - micros[segment] + 1) * resolution - 1) / tempos[segment]);
+	}
+
+	/**
+	 * Returns the tempo at a tick in microseconds per quarter note.
+	 */
+	public int getTempo(int tick) {
+		return tempos[findSegment(tick)];
+	}
+
+	/**
+	 * Returns the number of segments of constant tempo.
+	 */
+	public int getSegmentCount() {
+		return ticks.length;
+	}
+
+	/**
+	 * Returns the index of the last segment starting at or before a tick.
+	 */
+	private int findSegment(int tick) {
+		int segment = cursor;
+		if(!segmentContainsTick(segment, tick)) {
+			if(segment + 1 < ticks.length && segmentContainsTick(segment + 1, tick)) {
+				segment++;
+			} else {
+				int low = 0;
+				int high = ticks.length - 1;
+				while(low < high) {
+					int middle = (low + high + 1) >>> 1;
+					if(ticks[middle] <= tick) {
+						low = middle;
+					} else {
+						high = middle - 1;
+					}
+				}
+				segment = low;
+			}
+			cursor = segment;
+		}
+		return segment;
+	}
+
+	/**
+	 * Returns the index of the last segment starting at or before a time in microseconds.
+	 */
+	private int findSegmentByTime(long time) {
+		int segment = cursor;
+		if(!segmentContainsTime(segment, time)) {
+			if(segment + 1 < micros.length && segmentContainsTime(segment + 1, time)) {
+				segment++;
+			} else {
+				int low = 0;
+				int high = micros.length - 1;
+				while(low < high) {
+					int middle = (low + high + 1) >>> 1;
+					if(micros[middle] <= time) {
+						low = middle;
+					} else {
+						high = middle - 1;
+					}
+				}
+				segment = low;
+			}
+			cursor = segment;
+		}
+		return segment;
+	}
+
+	private boolean segmentContainsTick(int segment, int tick) {
+		return (segment == 0 || ticks[segment] <= tick) && (segment + 1 == ticks.length || tick < ticks[segment + 1]);
+	}
+
+	private boolean segmentContainsTime(int segment, long time) {
+		return (segment == 0 || micros[segment] <= time) && (segment + 1 == micros.length || time < micros[segment + 1]);
+	}
+
+	/**
+	 * Returns the number of bytes needed to write this tempo map.
+	 */
+	int getWriteSize() {
+		return 8 + ticks.length * 8;
+	}
+
+	/**
+	 * Writes the tempo map to a buffer, to be read back with read().
+	 */
+	void write(ByteBuffer buffer) {
+		buffer.putInt(resolution);
+		buffer.putInt(ticks.length);
+		for(int i = 0; i < ticks.length; i++) {
+			buffer.putInt(ticks[i]);
+			buffer.putInt(tempos[i]);
+		}
+	}
+
+	/**
+	 * Reads a tempo map that was written with write().
+	 */
+	static TempoMap read(ByteBuffer buffer) {
+		int resolution = buffer.getInt();
+		int count = buffer.getInt();
+		if(count < 1 || count * 8L > buffer.remaining()) {
+			throw new IllegalArgumentException("Invalid tempo count: " + count);
+		}
+
+		IntList changeTicks = new IntList();
+		IntList changeTempos = new IntList();
+		for(int i = 0; i < count; i++) {
+			changeTicks.add(buffer.getInt());
+			changeTempos.add(buffer.getInt());
+		}
+
+		return new TempoMap(resolution, changeTicks, changeTempos);
+	}
+}
@@ -0,0 +1,21 @@
+package model;
+
+/**
+ * A class that can be notified of the events decoded from a midi track, in tick order.
+ */
+public interface TrackHandler extends ControllerHandler {
+	/**
+	 * Called for a note-on event with a non-zero velocity.
+	 */
+	void noteOn(int tick, int channel, int pitch, int velocity);
+
+	/**
+	 * Called for a note-off event, or a note-on event with zero velocity.
+	 */
+	void noteOff(int tick, int channel, int pitch);
+
+	/**
+	 * Called for each meta event other than end of track.
+	 */
+	void metaEvent(int tick, int type, byte[] data);
+}
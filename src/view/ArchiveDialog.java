@@ -0,0 +1,126 @@
+package view;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.ModifyEvent;
+import org.eclipse.swt.events.ModifyListener;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Text;
+
+/**
+ * A dialog to choose one of the files in an archive, with a filter to narrow down long lists.
+ */
+public class ArchiveDialog {
+	private Shell shell;
+	private Text filter;
+	private org.eclipse.swt.widgets.List list;
+
+	private List<String> entryNames;
+	private List<String> shownNames = new ArrayList<String>();
+	private String result = null;
+
+	public ArchiveDialog(Shell parent, String archiveName, List<String> entryNames) {
+		this.entryNames = entryNames;
+
+		this.shell = new Shell(parent, SWT.DIALOG_TRIM | SWT.RESIZE | SWT.APPLICATION_MODAL);
+		shell.setText("Open from " + archiveName);
+		shell.setLayout(new GridLayout(2, false));
+
+		this.filter = new Text(shell, SWT.BORDER | SWT.SEARCH);
+		filter.setMessage("Filter");
+		filter.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 2, 1));
+
+		this.list = new org.eclipse.swt.widgets.List(shell, SWT.BORDER | SWT.SINGLE | SWT.V_SCROLL | SWT.H_SCROLL);
+		GridData listGridData = new GridData(SWT.FILL, SWT.FILL, true, true, 2, 1);
+		listGridData.widthHint = 500;
+		listGridData.heightHint = 400;
+		list.setLayoutData(listGridData);
+
+		Button openButton = new Button(shell, SWT.PUSH);
+		openButton.setText("Open");
+		openButton.setLayoutData(new GridData(SWT.END, SWT.CENTER, true, false));
+
+		Button cancelButton = new Button(shell, SWT.PUSH);
+		cancelButton.setText("Cancel");
+
+		shell.setDefaultButton(openButton);
+
+		filter.addModifyListener(new ModifyListener() {
+			public void modifyText(ModifyEvent event) {
+				showEntries(filter.getText());
+			}
+		});
+
+		list.addSelectionListener(new SelectionAdapter() {
+			public void widgetDefaultSelected(SelectionEvent event) {
+				choose();
+			}
+		});
+
+		openButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent event) {
+				choose();
+			}
+		});
+
+		cancelButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent event) {
+				shell.close();
+			}
+		});
+
+		showEntries("");
+	}
+
+	/**
+	 * Shows the entries containing some text, ignoring case.
+	 */
+	private void showEntries(String text) {
+		String lowerText = text.toLowerCase();
+
+		shownNames.clear();
+		for(String name:entryNames) {
+			if(name.toLowerCase().contains(lowerText)) {
+				shownNames.add(name);
+			}
+		}
+
+		list.setItems(shownNames.toArray(new String[shownNames.size()]));
+		if(!shownNames.isEmpty()) {
+			list.select(0);
+		}
+	}
+
+	private void choose() {
+		int index = list.getSelectionIndex();
+		if(index != -1) {
+			result = shownNames.get(index);
+			shell.close();
+		}
+	}
+
+	/**
+	 * Shows the dialog and waits until it's closed, returning the chosen entry name or null if cancelled.
+	 */
+	public String open() {
+		shell.pack();
+		shell.open();
+
+		Display display = shell.getDisplay();
+		while(!shell.isDisposed()) {
+			if(!display.readAndDispatch()) {
+				display.sleep();
+			}
+		}
+
+		return result;
+	}
+}
@@ -2,126 +2,138 @@ package view;
 
 import model.MidiTrack;
 import model.Note;
+import model.NoteStore;
+import model.Pitch;
 
-import org.eclipse.swt.graphics.Color;
-import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.graphics.RGB;
 
+/**
+ * The colors that the views are drawn with. They're plain RGB values, so that the views can be drawn
+ * without a display.
+ */
 public class Colors {
-	private Color[][] trackColors = new Color[11][2];
-	private Display display = Display.getCurrent();
+	private RGB[][] trackColors = new RGB[11][2];
 	
-	private Color white = new Color(display, 255, 255, 255);
-	private Color black = new Color(display, 0, 0, 0);
-	private Color red = new Color(display, 255, 50, 50);
-	private Color grey30 = new Color(display, 30, 30, 30);
-	private Color grey50 = new Color(display, 50, 50, 50);
-	private Color grey80 = new Color(display, 80, 80, 80);
-	private Color grey120 = new Color(display, 120, 120, 120);
-	private Color grey220 = new Color(display, 220, 220, 220);
-	private Color grey240 = new Color(display, 240, 240, 240);
+	private RGB white = new RGB(255, 255, 255);
+	private RGB black = new RGB(0, 0, 0);
+	private RGB red = new RGB(255, 50, 50);
+	private RGB grey30 = new RGB(30, 30, 30);
+	private RGB grey50 = new RGB(50, 50, 50);
+	private RGB grey80 = new RGB(80, 80, 80);
+	private RGB grey120 = new RGB(120, 120, 120);
+	private RGB grey220 = new RGB(220, 220, 220);
+	private RGB grey240 = new RGB(240, 240, 240);
 	
-	public Color getWhite() {
+	public RGB getWhite() {
 		return white;
 	}
 
-	public Color getBlack() {
+	public RGB getBlack() {
 		return black;
 	}
 	
-	public Color getRed() {
+	public RGB getRed() {
 		return red;
 	}
 
-	public Color getGrey30() {
+	public RGB getGrey30() {
 		return grey30;
 	}
 
-	public Color getGrey50() {
+	public RGB getGrey50() {
 		return grey50;
 	}
 
-	public Color getGrey80() {
+	public RGB getGrey80() {
 		return grey80;
 	}
 
-	public Color getGrey120() {
+	public RGB getGrey120() {
 		return grey120;
 	}
 
-	public Color getGrey240() {
+	public RGB getGrey240() {
 		return grey240;
 	}
 
-	public Color getGrey220() {
+	public RGB getGrey220() {
 		return grey220;
 	}
 
 	public Colors() {
-		trackColors[0][0] = new Color(display, 220, 220, 80);
-		trackColors[1][0] = new Color(display, 80, 220, 220);
-		trackColors[2][0] = new Color(display, 220, 80, 220);
-		trackColors[3][0] = new Color(display, 220, 80, 80);
-		trackColors[4][0] = new Color(display, 80, 220, 80);
-		trackColors[5][0] = new Color(display, 80, 80, 220);
-		trackColors[6][0] = new Color(display, 250, 180, 0);
-		trackColors[7][0] = new Color(display, 170, 210, 200);
-		trackColors[8][0] = new Color(display, 230, 220, 120);
-		trackColors[9][0] = new Color(display, 255, 240, 80);
-		trackColors[10][0] = new Color(display, 220, 200, 230);
+		trackColors[0][0] = new RGB(220, 220, 80);
+		trackColors[1][0] = new RGB(80, 220, 220);
+		trackColors[2][0] = new RGB(220, 80, 220);
+		trackColors[3][0] = new RGB(220, 80, 80);
+		trackColors[4][0] = new RGB(80, 220, 80);
+		trackColors[5][0] = new RGB(80, 80, 220);
+		trackColors[6][0] = new RGB(250, 180, 0);
+		trackColors[7][0] = new RGB(170, 210, 200);
+		trackColors[8][0] = new RGB(230, 220, 120);
+		trackColors[9][0] = new RGB(255, 240, 80);
+		trackColors[10][0] = new RGB(220, 200, 230);
 		
 		for(int x = 0; x < 11; x++) { 
 			trackColors[x][1] = darken(trackColors[x][0]);
 		}
 	}
 
-	public Color getNoteColor(int x, int y) {
+	public RGB getNoteColor(int x, int y) {
 		return trackColors[x][y];
 	}
 	
 	/**
 	 * Returns the color that a note should be drawn with.
 	 */
-	public Color getNoteColor(Note note) {
+	public RGB getNoteColor(Note note) {
 		int track = note.getTrack().getNumber() % 11;
 		int shade = note.getPitch().isBlackKey() ? 1 : 0;
 		return trackColors[track][shade];
 	}
 	
-	public Color getTrackColor(MidiTrack midiTrack) {
-		int track = midiTrack.getNumber() % 11;
-		return trackColors[track][0];
+	/**
+	 * Returns the color that a note from a NoteStore should be drawn with.
+	 */
+	public RGB getNoteColor(NoteStore notes, int row) {
+		return getNoteColor(getNoteColorIndex(notes, row));
 	}
 	
 	/**
-	 * Returns a darker copy of the specified color.
+	 * Returns the number of colors that notes can be drawn with.
 	 */
-	private Color darken(Color color) {
-		int r = color.getRed();
-		int g = color.getGreen();
-		int b = color.getBlue();
-		
-		return new Color(display, (int)(r * 0.6), (int)(g * 0.6), (int)(b * 0.6));
+	public int getNoteColorCount() {
+		return trackColors.length * 2;
 	}
-
+	
 	/**
-	 * Disposes all created colors.
+	 * Returns the index of the color that a note from a NoteStore should be drawn with, from 0 to getNoteColorCount() - 1.
 	 */
-	public void dispose() {
-		for(int x = 0; x < trackColors.length; x++) {
-			for(int y = 0; y < trackColors[x].length; y++) {
-				if(trackColors[x][y] != null) {
-					trackColors[x][y].dispose();
-				}
-			}
-		}
+	public int getNoteColorIndex(NoteStore notes, int row) {
+		int track = notes.getTrack(row).getNumber() % trackColors.length;
+		int shade = Pitch.valueOf(notes.getMidiNumber(row)).isBlackKey() ? 1 : 0;
+		return track * 2 + shade;
+	}
+	
+	/**
+	 * Returns a note color from its index.
+	 */
+	public RGB getNoteColor(int index) {
+		return trackColors[index / 2][index % 2];
+	}
+	
+	public RGB getTrackColor(MidiTrack midiTrack) {
+		int track = midiTrack.getNumber() % 11;
+		return trackColors[track][0];
+	}
+	
+	/**
+	 * Returns a darker copy of the specified color.
+	 */
+	private RGB darken(RGB color) {
+		int r = color.red;
+		int g = color.green;
+		int b = color.blue;
 		
-		white.dispose();
-		black.dispose();
-		grey30.dispose();
-		grey50.dispose();
-		grey80.dispose();
-		grey120.dispose();
-		grey220.dispose();
-		grey240.dispose();
+		return new RGB((int)(r * 0.6), (int)(g * 0.6), (int)(b * 0.6));
 	}
 }
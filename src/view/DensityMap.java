@@ -0,0 +1,144 @@
+package view;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import model.NoteStore;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+
+/**
+ * The notes of a file at one scale reduced to the pixel rows they cover, for scales where most notes are
+ * shorter than a pixel. Instead of a rectangle for each note, each row of the piano-roll is drawn from the
+ * notes that cover it, with more notes on the same pitch in the same row drawn more strongly.
+ *
+ * The cells of every row are packed into a single array, with the track, color and midi number of the note
+ * in each cell. The cells of all tracks are kept, so that changing the active tracks doesn't rebuild the map.
+ */
+class DensityMap {
+	private static final PaletteData PALETTE = new PaletteData(0xff0000, 0xff00, 0xff);
+
+	// Index of the first cell of each row, with an extra entry for the end of the last row.
+	private int[] rowStarts;
+
+	// Track index, color index and midi number of the note in each cell.
+	private int[] cells;
+
+	public DensityMap(NoteStore notes, NoteLayout layout) {
+		int rows = layout.getHeight() + 1;
+
+		// Count the cells of each row. A note covers the rows from its start to its end, inclusive.
+		rowStarts = new int[rows + 1];
+		for(int row = 0; row < notes.size(); row++) {
+			int start = layout.getStart(row);
+			int end = start + layout.getLength(row);
+			for(int y = start; y <= end; y++) {
+				rowStarts[y + 1]++;
+			}
+		}
+		for(int y = 0; y < rows; y++) {
+			rowStarts[y + 1] += rowStarts[y];
+		}
+
+		// Fill in the cells of each row.
+		cells = new int[rowStarts[rows]];
+		int[] positions = new int[rows];
+		System.arraycopy(rowStarts, 0, positions, 0, rows);
+		for(int row = 0; row < notes.size(); row++) {
+			int cell = (notes.getTrackIndex(row) << 16) | (layout.getColorIndex(row) << 8) | notes.getMidiNumber(row);
+			int start = layout.getStart(row);
+			int end = start + layout.getLength(row);
+			for(int y = start; y <= end; y++) {
+				cells[positions[y]++] = cell;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of rows, from the beginning of the file to the end of the last note.
+	 */
+	public int getRows() {
+		return rowStarts.length - 1;
+	}
+
+	/**
+	 * Returns the number of cells in the rows from firstRow up to, but not including, lastRow, including the
+	 * notes of inactive tracks.
+	 */
+	public int getCellCount(int firstRow, int lastRow) {
+		int first = Math.max(0, Math.min(firstRow, getRows()));
+		int last = Math.max(first, Math.min(lastRow, getRows()));
+		return rowStarts[last] - rowStarts[first];
+	}
+	
+	/**
+	 * Creates image data that drawRows() can draw into, so that it can be reused for each paint.
+	 */
+	public static ImageData createImageData(int width, int height) {
+		ImageData imageData = new ImageData(width, height, 24, PALETTE);
+		imageData.alphaData = new byte[width * height];
+		return imageData;
+	}
+	
+	/**
+	 * Draws the notes of active tracks in the rows from firstRow up into image data created by createImageData(),
+	 * with firstRow at the bottom. Each note is as wide as its rectangle would be, starting at
+	 * leftMargin + pitchPositions[midiNumber] - 1. Pixels without a note are transparent.
+	 */
+	public void drawRows(ImageData imageData, int firstRow, BitSet activeTracks, int[] pitchPositions, int leftMargin, Colors colors) {
+		int width = imageData.width;
+		int height = imageData.height;
+		int lastRow = firstRow + height;
+		Arrays.fill(imageData.alphaData, (byte)0);
+
+		int[] pixels = new int[colors.getNoteColorCount()];
+		for(int color = 0; color < pixels.length; color++) {
+			RGB rgb = colors.getNoteColor(color);
+			pixels[color] = (rgb.red << 16) | (rgb.green << 8) | rgb.blue;
+		}
+
+		int[] counts = new int[128];
+		int[] cellColors = new int[128];
+		int[] linePixels = new int[width];
+		byte[] lineAlphas = new byte[width];
+
+		for(int row = Math.max(0, firstRow); row < Math.min(lastRow, getRows()); row++) {
+			if(rowStarts[row] == rowStarts[row + 1]) continue;
+
+			// Count the notes on each pitch, keeping the color of the last one as it would be drawn on top.
+			boolean visible = false;
+			for(int i = rowStarts[row]; i < rowStarts[row + 1]; i++) {
+				int cell = cells[i];
+				if(!activeTracks.get(cell >>> 16)) continue;
+
+				int midiNumber = cell & 0xff;
+				counts[midiNumber]++;
+				cellColors[midiNumber] = (cell >> 8) & 0xff;
+				visible = true;
+			}
+			if(!visible) continue;
+
+			Arrays.fill(lineAlphas, (byte)0);
+			for(int midiNumber = 0; midiNumber < counts.length; midiNumber++) {
+				if(counts[midiNumber] == 0) continue;
+
+				// A single note is drawn lighter than several notes in the same pixel.
+				byte alpha = (byte)((counts[midiNumber] == 1) ? 160 : 255);
+				int pixel = pixels[cellColors[midiNumber]];
+				int left = Math.max(0, leftMargin + pitchPositions[midiNumber] - 1);
+				int right = Math.min(width, leftMargin + pitchPositions[midiNumber] + 5);
+				for(int x = left; x < right; x++) {
+					linePixels[x] = pixel;
+					lineAlphas[x] = alpha;
+				}
+				counts[midiNumber] = 0;
+			}
+
+			int y = height - 1 - (row - firstRow);
+			imageData.setPixels(0, y, width, linePixels, 0);
+			imageData.setAlphas(0, y, width, lineAlphas, 0);
+		}
+	}
+}
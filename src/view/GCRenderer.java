@@ -0,0 +1,153 @@
+package view;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Device;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.RGB;
+
+/**
+ * Draws onto an SWT GC.
+ *
+ * A renderer is kept for as long as the widget it draws, and given the GC of each paint. The colors, fonts
+ * and images it creates are kept until it's disposed, so that painting doesn't create them each time. Only
+ * the most recently drawn images are kept, so images that are only drawn once don't build up.
+ */
+public class GCRenderer implements Renderer {
+	private static final int MAX_IMAGES = 8;
+	
+	private Device device;
+	private GC gc;
+	private Font defaultFont;
+	
+	private Map<RGB, Color> colors = new HashMap<RGB, Color>();
+	private Map<String, Font> fonts = new HashMap<String, Font>();
+	
+	private Map<ImageData, Image> images = new LinkedHashMap<ImageData, Image>(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<ImageData, Image> eldest) {
+			if(size() > MAX_IMAGES) {
+				eldest.getValue().dispose();
+				return true;
+			}
+			return false;
+		}
+	};
+	
+	public GCRenderer(Device device) {
+		this.device = device;
+	}
+	
+	/**
+	 * Sets the GC to draw onto, which is drawn with its current font by default.
+	 */
+	public void setGC(GC gc) {
+		this.gc = gc;
+		this.defaultFont = gc.getFont();
+	}
+	
+	private Color getColor(RGB rgb) {
+		Color color = colors.get(rgb);
+		if(color == null) {
+			color = new Color(device, rgb);
+			colors.put(rgb, color);
+		}
+		return color;
+	}
+	
+	public void setForeground(RGB color) {
+		gc.setForeground(getColor(color));
+	}
+	
+	public void setBackground(RGB color) {
+		gc.setBackground(getColor(color));
+	}
+	
+	public void drawLine(int x1, int y1, int x2, int y2) {
+		gc.drawLine(x1, y1, x2, y2);
+	}
+	
+	public void drawRectangle(int x, int y, int width, int height) {
+		gc.drawRectangle(x, y, width, height);
+	}
+	
+	public void fillRectangle(int x, int y, int width, int height) {
+		gc.fillRectangle(x, y, width, height);
+	}
+	
+	public void fillPolygon(int[] points) {
+		gc.fillPolygon(points);
+	}
+	
+	public void fillGradientRectangle(int x, int y, int width, int height, boolean vertical) {
+		gc.fillGradientRectangle(x, y, width, height, vertical);
+	}
+	
+	public void drawText(String text, int x, int y) {
+		gc.drawText(text, x, y, true);
+	}
+	
+	public int getTextHeight() {
+		return gc.getFontMetrics().getHeight();
+	}
+	
+	public void setFont(String name, int height, boolean bold) {
+		String key = name + "-" + height + "-" + bold;
+		Font font = fonts.get(key);
+		if(font == null) {
+			font = new Font(device, name, height, bold ? SWT.BOLD : SWT.NORMAL);
+			fonts.put(key, font);
+		}
+		gc.setFont(font);
+	}
+	
+	public void setDefaultFont() {
+		gc.setFont(defaultFont);
+	}
+	
+	public void setClipping(int x, int y, int width, int height) {
+		gc.setClipping(x, y, width, height);
+	}
+	
+	public void drawImage(ImageData imageData, int x, int y) {
+		Image image = images.get(imageData);
+		if(image == null) {
+			image = new Image(device, imageData);
+			images.put(imageData, image);
+		}
+		gc.drawImage(image, x, y);
+	}
+	
+	public void drawChangingImage(ImageData imageData, int x, int y) {
+		Image image = new Image(device, imageData);
+		try {
+			gc.drawImage(image, x, y);
+		} finally {
+			image.dispose();
+		}
+	}
+	
+	/**
+	 * Disposes the colors, fonts and images that have been created.
+	 */
+	public void dispose() {
+		for(Color color:colors.values()) {
+			color.dispose();
+		}
+		for(Font font:fonts.values()) {
+			font.dispose();
+		}
+		for(Image image:images.values()) {
+			image.dispose();
+		}
+		colors.clear();
+		fonts.clear();
+		images.clear();
+	}
+}
@@ -0,0 +1,148 @@
+package view;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.Polygon;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+
+/**
+ * Draws into a BufferedImage with Java2D, which doesn't need a display. This lets the views be painted
+ * without one, so that the time taken to paint them can be measured, and the pixels drawn compared.
+ */
+public class Java2DRenderer implements Renderer {
+	private static final int MAX_IMAGES = 8;
+	
+	private BufferedImage image;
+	private Graphics2D graphics;
+	private Font defaultFont;
+	
+	private Color foreground = Color.BLACK;
+	private Color background = Color.WHITE;
+	
+	private Map<ImageData, BufferedImage> images = new LinkedHashMap<ImageData, BufferedImage>(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<ImageData, BufferedImage> eldest) {
+			return size() > MAX_IMAGES;
+		}
+	};
+	
+	public Java2DRenderer(BufferedImage image) {
+		this.image = image;
+		this.graphics = image.createGraphics();
+		this.defaultFont = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+		
+		// Draw single pixel lines without antialiasing, as a GC does by default.
+		graphics.setStroke(new BasicStroke(1));
+		graphics.setFont(defaultFont);
+	}
+	
+	public BufferedImage getImage() {
+		return image;
+	}
+	
+	private static Color getColor(RGB rgb) {
+		return new Color(rgb.red, rgb.green, rgb.blue);
+	}
+	
+	public void setForeground(RGB color) {
+		foreground = getColor(color);
+	}
+	
+	public void setBackground(RGB color) {
+		background = getColor(color);
+	}
+	
+	public void drawLine(int x1, int y1, int x2, int y2) {
+		graphics.setColor(foreground);
+		graphics.drawLine(x1, y1, x2, y2);
+	}
+	
+	public void drawRectangle(int x, int y, int width, int height) {
+		graphics.setColor(foreground);
+		graphics.drawRect(x, y, width, height);
+	}
+	
+	public void fillRectangle(int x, int y, int width, int height) {
+		graphics.setColor(background);
+		graphics.fillRect(x, y, width, height);
+	}
+	
+	public void fillPolygon(int[] points) {
+		Polygon polygon = new Polygon();
+		for(int i = 0; i + 1 < points.length; i += 2) {
+			polygon.addPoint(points[i], points[i + 1]);
+		}
+		graphics.setColor(background);
+		graphics.fillPolygon(polygon);
+	}
+	
+	public void fillGradientRectangle(int x, int y, int width, int height, boolean vertical) {
+		int x2 = vertical ? x : x + width;
+		int y2 = vertical ? y + height : y;
+		graphics.setPaint(new GradientPaint(x, y, foreground, x2, y2, background));
+		graphics.fillRect(x, y, width, height);
+	}
+	
+	public void drawText(String text, int x, int y) {
+		graphics.setColor(foreground);
+		graphics.drawString(text, x, y + graphics.getFontMetrics().getAscent());
+	}
+	
+	public int getTextHeight() {
+		return graphics.getFontMetrics().getHeight();
+	}
+	
+	public void setFont(String name, int height, boolean bold) {
+		graphics.setFont(new Font(name, bold ? Font.BOLD : Font.PLAIN, height));
+	}
+	
+	public void setDefaultFont() {
+		graphics.setFont(defaultFont);
+	}
+	
+	public void setClipping(int x, int y, int width, int height) {
+		graphics.setClip(x, y, width, height);
+	}
+	
+	public void drawImage(ImageData imageData, int x, int y) {
+		BufferedImage bufferedImage = images.get(imageData);
+		if(bufferedImage == null) {
+			bufferedImage = toBufferedImage(imageData);
+			images.put(imageData, bufferedImage);
+		}
+		graphics.drawImage(bufferedImage, x, y, null);
+	}
+	
+	public void drawChangingImage(ImageData imageData, int x, int y) {
+		graphics.drawImage(toBufferedImage(imageData), x, y, null);
+	}
+	
+	/**
+	 * Converts SWT image data to an image with an alpha channel.
+	 */
+	private static BufferedImage toBufferedImage(ImageData imageData) {
+		BufferedImage bufferedImage = new BufferedImage(imageData.width, imageData.height, BufferedImage.TYPE_INT_ARGB);
+		PaletteData palette = imageData.palette;
+		for(int y = 0; y < imageData.height; y++) {
+			for(int x = 0; x < imageData.width; x++) {
+				int pixel = imageData.getPixel(x, y);
+				RGB rgb = palette.getRGB(pixel);
+				int alpha = (pixel == imageData.transparentPixel) ? 0 : imageData.getAlpha(x, y);
+				bufferedImage.setRGB(x, y, (alpha << 24) | (rgb.red << 16) | (rgb.green << 8) | rgb.blue);
+			}
+		}
+		return bufferedImage;
+	}
+	
+	public void dispose() {
+		graphics.dispose();
+	}
+}
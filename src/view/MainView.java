@@ -1,7 +1,12 @@
 package view;
 
+import java.util.List;
+
 import model.MidiTrack;
+import model.Song;
 
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.MessageBox;
 import org.eclipse.swt.widgets.Shell;
 
 import view.table.CustomTable;
@@ -16,17 +21,19 @@ public class MainView {
 	private ScoreCanvas scoreCanvas;
 	private CustomTable<MidiTrack> tracksTable;
 	private Colors colors;
+	private PaintStatsOverlay paintStatsOverlay;
 
 	private Tempo tempoScale;
 	private NoteScale noteScale;
 
-	public MainView(Shell shell, PianoCanvas pianoCanvas, ScrolledNotesCanvas scrolledNotesCanvas, ScoreCanvas scoreCanvas, CustomTable<MidiTrack> tracksTable, Tempo tempoScale, NoteScale noteScale, Colors colors) {
+	public MainView(Shell shell, PianoCanvas pianoCanvas, ScrolledNotesCanvas scrolledNotesCanvas, ScoreCanvas scoreCanvas, CustomTable<MidiTrack> tracksTable, Tempo tempoScale, NoteScale noteScale, Colors colors, PaintStatsOverlay paintStatsOverlay) {
 		this.shell = shell;
 		this.pianoCanvas = pianoCanvas;
 		this.scrolledNotesCanvas = scrolledNotesCanvas;
 		this.scoreCanvas = scoreCanvas;
 		this.tracksTable = tracksTable;
 		this.colors = colors;
+		this.paintStatsOverlay = paintStatsOverlay;
 
 		this.tempoScale = tempoScale;
 		this.noteScale = noteScale;
@@ -60,10 +67,31 @@ public class MainView {
 		return noteScale;
 	}
 
+	public PaintStatsOverlay getPaintStatsOverlay() {
+		return paintStatsOverlay;
+	}
+
 	public void setTitle(String title) {
 		shell.setText(title);
 	}
 
+	/**
+	 * Displays an error message to the user.
+	 */
+	public void displayErrorMessage(String message) {
+		MessageBox alert = new MessageBox(shell, SWT.ERROR);
+		alert.setText("Error");
+		alert.setMessage(message);
+		alert.open();
+	}
+
+	/**
+	 * Asks the user to choose one of the files in an archive, returning its entry name or null if cancelled.
+	 */
+	public String chooseArchiveEntry(String archiveName, List<String> entryNames) {
+		return new ArchiveDialog(shell, archiveName, entryNames).open();
+	}
+
 	public Colors getColors() {
 		return colors;
 	}
@@ -72,6 +100,15 @@ public class MainView {
 		this.colors = colors;
 	}
 
+	/**
+	 * Displays the tracks that are active in a song.
+	 */
+	public void setSong(Song song) {
+		scrolledNotesCanvas.setSong(song);
+		scoreCanvas.setSong(song);
+		pianoCanvas.setSong(song);
+	}
+
 	public void redraw() {
 		scrolledNotesCanvas.redraw();
 		scoreCanvas.redraw();
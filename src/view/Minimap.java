@@ -0,0 +1,236 @@
+package view;
+
+import java.util.Arrays;
+import java.util.List;
+
+import model.DensityHistogram;
+import model.MidiFile;
+import model.MidiTrack;
+import model.Song;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
+import org.eclipse.swt.events.PaintEvent;
+import org.eclipse.swt.events.PaintListener;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.widgets.*;
+
+/**
+ * A narrow strip showing the density of notes in each track over the whole file, with the beginning at the
+ * bottom, and a box around the part of the file that is currently visible.
+ *
+ * Each track has a column of the strip, and each row shows the notes starting in its range of ticks. The
+ * strip is drawn from the file's DensityHistogram, so its cost depends on its size and not on the number
+ * of notes. It's drawn into image data that is kept until the file, active tracks or size change, so that
+ * moving the box only copies the image.
+ */
+public class Minimap {
+	private static final PaletteData PALETTE = new PaletteData(0xff0000, 0xff00, 0xff);
+
+	private Canvas canvas;
+	private Colors colors;
+	private GCRenderer renderer;
+
+	private MidiFile midiFile;
+	private Song song;
+
+	// Ticks from the beginning at the bottom of the visible part of the file, and the number visible.
+	private int ticks = 0;
+	private int visibleTicks = 0;
+
+	private ImageData overview;
+
+	public Minimap(Composite parent, Colors colors) {
+		this.canvas = new Canvas(parent, SWT.DOUBLE_BUFFERED | SWT.NO_BACKGROUND);
+		this.colors = colors;
+		this.renderer = new GCRenderer(canvas.getDisplay());
+
+		canvas.addPaintListener(new PaintListener() {
+			public void paintControl(PaintEvent event) {
+				paint(event.gc);
+			}
+		});
+
+		canvas.addListener(SWT.Resize, new Listener() {
+			public void handleEvent(Event event) {
+				clearOverview();
+				canvas.redraw();
+			}
+		});
+
+		canvas.addDisposeListener(new DisposeListener() {
+			public void widgetDisposed(DisposeEvent event) {
+				renderer.dispose();
+			}
+		});
+	}
+
+	private void paint(GC gc) {
+		Rectangle clientArea = canvas.getClientArea();
+		if(clientArea.width == 0 || clientArea.height == 0) return;
+
+		renderer.setGC(gc);
+		if(overview == null) {
+			overview = createOverview(clientArea.width, clientArea.height);
+		}
+		renderer.drawImage(overview, 0, 0);
+
+		// Draw a box around the visible part of the file.
+		if(midiFile != null) {
+			int top = getPositionFromTicks(ticks + visibleTicks);
+			int bottom = getPositionFromTicks(ticks);
+			renderer.setForeground(colors.getBlack());
+			renderer.drawRectangle(0, top, clientArea.width - 1, Math.max(1, bottom - top - 1));
+		}
+	}
+
+	/**
+	 * Draws the density of each active track into image data. Each row adds the buckets of the histogram
+	 * that it covers, from the level with about as many buckets as there are rows.
+	 */
+	private ImageData createOverview(int width, int height) {
+		ImageData imageData = new ImageData(width, height, 24, PALETTE);
+
+		int[] linePixels = new int[width];
+		RGB white = colors.getWhite();
+		int whitePixel = (white.red << 16) | (white.green << 8) | white.blue;
+
+		if(midiFile == null || song == null || song.getMidiFile() != midiFile || midiFile.getTracks().isEmpty()) {
+			Arrays.fill(linePixels, whitePixel);
+			for(int y = 0; y < height; y++) {
+				imageData.setPixels(0, y, width, linePixels, 0);
+			}
+			return imageData;
+		}
+
+		DensityHistogram histogram = midiFile.getDensityHistogram();
+		List<MidiTrack> tracks = midiFile.getTracks();
+		int trackCount = tracks.size();
+
+		int level = histogram.getLevel(height);
+		int bucketTicks = histogram.getBucketTicks(level);
+		int bucketCount = histogram.getBucketCount(level);
+
+		// Add up the notes of each track in each row, finding the largest count to scale the colors by.
+		int[] rowCounts = new int[height * trackCount];
+		int maxCount = 1;
+		for(int y = 0; y < height; y++) {
+			int startTick = getTicksAt(y + 1, height);
+			int endTick = getTicksAt(y, height);
+			int firstBucket = Math.min(bucketCount - 1, startTick / bucketTicks);
+			int lastBucket = Math.min(bucketCount, Math.max(firstBucket + 1, (endTick + bucketTicks - 1) / bucketTicks));
+
+			for(int track = 0; track < trackCount; track++) {
+				if(!song.isActive(tracks.get(track))) continue;
+
+				int count = 0;
+				for(int bucket = firstBucket; bucket < lastBucket; bucket++) {
+					count += histogram.getCount(level, track, bucket);
+				}
+				rowCounts[y * trackCount + track] = count;
+				maxCount = Math.max(maxCount, count);
+			}
+		}
+
+		int[] trackColors = new int[trackCount];
+		for(int track = 0; track < trackCount; track++) {
+			RGB rgb = colors.getTrackColor(tracks.get(track));
+			trackColors[track] = (rgb.red << 16) | (rgb.green << 8) | rgb.blue;
+		}
+
+		// Blend from white to the color of each track, so that sparse parts of the file are still visible.
+		for(int y = 0; y < height; y++) {
+			for(int x = 0; x < width; x++) {
+				int track = x * trackCount / width;
+				int count = rowCounts[y * trackCount + track];
+				if(count == 0) {
+					linePixels[x] = whitePixel;
+				} else {
+					double amount = Math.sqrt((double)count / maxCount);
+					linePixels[x] = blend(whitePixel, trackColors[track], amount);
+				}
+			}
+			imageData.setPixels(0, y, width, linePixels, 0);
+		}
+
+		return imageData;
+	}
+
+	private static int blend(int from, int to, double amount) {
+		int pixel = 0;
+		for(int shift = 0; shift <= 16; shift += 8) {
+			int a = (from >> shift) & 0xff;
+			int b = (to >> shift) & 0xff;
+			pixel |= ((int)(a + (b - a) * amount) & 0xff) << shift;
+		}
+		return pixel;
+	}
+
+	private void clearOverview() {
+		overview = null;
+	}
+
+	/**
+	 * Returns the number of ticks from the beginning at a position on the strip.
+	 */
+	public int getTicksAt(int y) {
+		return getTicksAt(y, canvas.getClientArea().height);
+	}
+
+	private int getTicksAt(int y, int height) {
+		if(midiFile == null || height == 0) return 0;
+
+		int y2 = Math.max(0, Math.min(height, y));
+		return (int)((long)(height - y2) * midiFile.getTotalTime() / height);
+	}
+
+	/**
+	 * Returns the position on the strip that is a number of ticks from the beginning.
+	 */
+	private int getPositionFromTicks(int ticks) {
+		int height = canvas.getClientArea().height;
+		int totalTime = Math.max(1, midiFile.getTotalTime());
+		return height - (int)((long)Math.min(ticks, totalTime) * height / totalTime);
+	}
+
+	/**
+	 * Sets the file to display.
+	 */
+	public void setMidiFile(MidiFile midiFile) {
+		this.midiFile = midiFile;
+		clearOverview();
+		canvas.redraw();
+	}
+
+	/**
+	 * Sets the track settings used to choose which tracks are displayed.
+	 */
+	public void setSong(Song song) {
+		this.song = song;
+		clearOverview();
+		canvas.redraw();
+	}
+
+	/**
+	 * Sets the visible part of the file, as the ticks from the beginning at its bottom and its length in ticks.
+	 */
+	public void setPosition(int ticks, int visibleTicks) {
+		if(ticks == this.ticks && visibleTicks == this.visibleTicks) return;
+
+		this.ticks = ticks;
+		this.visibleTicks = visibleTicks;
+		canvas.redraw();
+	}
+
+	/**
+	 * Returns the main widget for this control.
+	 */
+	public Control getWidget() {
+		return canvas;
+	}
+}
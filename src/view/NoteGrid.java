@@ -0,0 +1,112 @@
+package view;
+
+import java.util.BitSet;
+
+import model.NoteStore;
+
+/**
+ * A spatial hash of the note rectangles of a file at one scale, used to find the note under the mouse.
+ *
+ * The piano-roll is divided into cells, one midi number wide and a number of pixels high, and each note is
+ * added to every cell its rectangle covers. Cells are hashed into a table about as large as the number of
+ * notes, with the rows of each slot packed into a single array. The cell height is at least the average
+ * length of a note, so that each note is in only a few cells, and finding a note only reads the few notes
+ * in one slot, however many notes the file has.
+ */
+class NoteGrid {
+	// Smallest height of a cell.
+	private static final int MIN_CELL_HEIGHT = 16;
+
+	private NoteStore notes;
+	private NoteLayout layout;
+	private int scale;
+	private int cellHeight;
+
+	// Mask for the slot of a cell, from a table size that is a power of two.
+	private int mask;
+
+	// Index of the first row of each slot, with an extra entry for the end of the last slot.
+	private int[] slotStarts;
+
+	// Rows of the notes in each slot, in the order they're stored.
+	private int[] rows;
+
+	public NoteGrid(NoteStore notes, NoteLayout layout) {
+		this.notes = notes;
+		this.layout = layout;
+		this.scale = layout.getScale();
+
+		long totalLength = 0;
+		for(int row = 0; row < notes.size(); row++) {
+			totalLength += layout.getLength(row) + 1;
+		}
+		cellHeight = (int)Math.max(MIN_CELL_HEIGHT, totalLength / Math.max(1, notes.size()));
+
+		int slots = Integer.highestOneBit(Math.max(1, notes.size()) * 2 - 1);
+		mask = slots - 1;
+
+		// Count the rows in each slot. A note covers the rows from its start to its end, inclusive.
+		slotStarts = new int[slots + 1];
+		for(int row = 0; row < notes.size(); row++) {
+			int midiNumber = notes.getMidiNumber(row);
+			int firstCell = layout.getStart(row) / cellHeight;
+			int lastCell = (layout.getStart(row) + layout.getLength(row)) / cellHeight;
+			for(int cell = firstCell; cell <= lastCell; cell++) {
+				slotStarts[getSlot(cell, midiNumber) + 1]++;
+			}
+		}
+		for(int slot = 0; slot < slots; slot++) {
+			slotStarts[slot + 1] += slotStarts[slot];
+		}
+
+		// Fill in the rows of each slot.
+		rows = new int[slotStarts[slots]];
+		int[] positions = new int[slots];
+		System.arraycopy(slotStarts, 0, positions, 0, slots);
+		for(int row = 0; row < notes.size(); row++) {
+			int midiNumber = notes.getMidiNumber(row);
+			int firstCell = layout.getStart(row) / cellHeight;
+			int lastCell = (layout.getStart(row) + layout.getLength(row)) / cellHeight;
+			for(int cell = firstCell; cell <= lastCell; cell++) {
+				rows[positions[getSlot(cell, midiNumber)]++] = row;
+			}
+		}
+	}
+
+	private int getSlot(int cell, int midiNumber) {
+		int hash = cell * 128 + midiNumber;
+		hash ^= (hash >>> 16);
+		hash *= 0x45d9f3b;
+		hash ^= (hash >>> 16);
+		return hash & mask;
+	}
+
+	/**
+	 * Returns the scale that the grid was built at.
+	 */
+	public int getScale() {
+		return scale;
+	}
+
+	/**
+	 * Returns the row of the note of an active track covering a position, or -1 if there isn't one. The
+	 * position is the distance up from the beginning of the file, within the rectangle drawn for notes of
+	 * a midi number. Where notes overlap, the one latest in the file is returned.
+	 */
+	public int getNoteAt(int midiNumber, int position, BitSet activeTracks) {
+		if(position < 0) return -1;
+
+		int slot = getSlot(position / cellHeight, midiNumber);
+		for(int i = slotStarts[slot + 1] - 1; i >= slotStarts[slot]; i--) {
+			int row = rows[i];
+			if(notes.getMidiNumber(row) != midiNumber || !activeTracks.get(notes.getTrackIndex(row))) continue;
+
+			int start = layout.getStart(row);
+			if(position >= start && position <= start + layout.getLength(row)) {
+				return row;
+			}
+		}
+
+		return -1;
+	}
+}
@@ -0,0 +1,167 @@
+package view;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import model.NoteStore;
+
+/**
+ * The rectangles and colors of the notes of a file, at a scale that can be changed without reading the notes again.
+ * Positions are measured up from the beginning of the file, so they don't change with the height of the
+ * canvas.
+ *
+ * The colors of notes stored on the heap, and the durations of all notes, are read once when the layout is
+ * created. Everything that depends on the scale is then worked out as it's read, so changing the scale
+ * takes constant time. The colors of notes stored outside the heap are worked out as they're read too, so
+ * that the layout doesn't bring them back onto the heap.
+ *
+ * When most notes are shorter than a pixel at the scale, the notes are drawn from a DensityMap instead,
+ * which is built the first time it's needed at each scale. The NoteGrid used to find the note at a position
+ * is built the first time it's needed too, but only kept for the latest scale, as it's only used while the
+ * mouse is over the notes.
+ */
+class NoteLayout {
+	// Durations shorter than this are counted individually.
+	private static final int MAX_COUNTED_DURATION = 1024;
+	
+	private NoteStore notes;
+	private int scale = 1;
+	private int[] pitchPositions;
+	private Colors colors;
+	
+	// The color index of each note, or null if they're worked out as they're read.
+	private byte[] colorIndexes;
+	
+	// Number of notes with a duration shorter than each number of ticks.
+	private int[] shorterCounts = new int[MAX_COUNTED_DURATION + 1];
+	
+	// Latest end time of any note.
+	private int maxEndTime = 0;
+	
+	private Map<Integer, DensityMap> densityMaps = new HashMap<Integer, DensityMap>();
+	private NoteGrid noteGrid;
+	
+	public NoteLayout(NoteStore notes, int[] pitchPositions, Colors colors) {
+		this.notes = notes;
+		this.pitchPositions = pitchPositions;
+		this.colors = colors;
+		
+		if(!notes.isMapped()) {
+			colorIndexes = new byte[notes.size()];
+			for(int row = 0; row < notes.size(); row++) {
+				colorIndexes[row] = (byte)colors.getNoteColorIndex(notes, row);
+			}
+		}
+		
+		for(int row = 0; row < notes.size(); row++) {
+			maxEndTime = Math.max(maxEndTime, notes.getEndTime(row));
+			
+			int duration = notes.getDuration(row);
+			if(duration < MAX_COUNTED_DURATION) {
+				shorterCounts[duration + 1]++;
+			}
+		}
+		for(int duration = 0; duration < MAX_COUNTED_DURATION; duration++) {
+			shorterCounts[duration + 1] += shorterCounts[duration];
+		}
+	}
+	
+	/**
+	 * Returns the horizontal position that a note of each midi number should be centered on, for keys of a width.
+	 */
+	public static int[] createPitchPositions(int keyWidth) {
+		int[] positions = new int[128];
+		
+		int position = 10;
+		for(int pitch = 0; pitch < positions.length; pitch++) {
+			// Add a key width for each note above A0, or 2 key widths around the black key gaps between B/C and E/F.
+			int x = pitch - 21;
+			if(x >= 0) {
+				if(x % 12 == 3 || x % 12 == 8) {
+					position += keyWidth;
+				}
+				position += keyWidth;
+			}
+			positions[pitch] = position;
+		}
+		
+		return positions;
+	}
+	
+	public int getScale() {
+		return scale;
+	}
+	
+	/**
+	 * Sets the number of ticks in each pixel.
+	 */
+	public void setScale(int scale) {
+		this.scale = scale;
+	}
+	
+	/**
+	 * Returns the horizontal position that a note is centered on.
+	 */
+	public int getX(int row) {
+		return pitchPositions[notes.getMidiNumber(row)];
+	}
+	
+	/**
+	 * Returns the distance from the beginning to the start of a note.
+	 */
+	public int getStart(int row) {
+		return notes.getStartTime(row) / scale;
+	}
+	
+	/**
+	 * Returns the length of a note.
+	 */
+	public int getLength(int row) {
+		return notes.getDuration(row) / scale;
+	}
+	
+	/**
+	 * Returns the index of the color of a note, as returned by Colors.getNoteColorIndex().
+	 */
+	public int getColorIndex(int row) {
+		return (colorIndexes != null) ? colorIndexes[row] : colors.getNoteColorIndex(notes, row);
+	}
+	
+	/**
+	 * Returns the distance from the beginning to the end of the last note.
+	 */
+	public int getHeight() {
+		return maxEndTime / scale;
+	}
+	
+	/**
+	 * Returns whether most notes are shorter than a pixel, so should be drawn from the density map.
+	 * Only durations shorter than MAX_COUNTED_DURATION are counted, which is enough for any scale up to that.
+	 */
+	public boolean isDense() {
+		int shortNotes = shorterCounts[Math.min(scale, MAX_COUNTED_DURATION)];
+		return shortNotes * 2 > notes.size();
+	}
+	
+	/**
+	 * Returns the density map of the notes at the current scale, building it if it hasn't been yet.
+	 */
+	public DensityMap getDensityMap() {
+		DensityMap densityMap = densityMaps.get(scale);
+		if(densityMap == null) {
+			densityMap = new DensityMap(notes, this);
+			densityMaps.put(scale, densityMap);
+		}
+		return densityMap;
+	}
+	
+	/**
+	 * Returns the grid of the notes at the current scale, building it if it hasn't been yet.
+	 */
+	public NoteGrid getNoteGrid() {
+		if(noteGrid == null || noteGrid.getScale() != scale) {
+			noteGrid = new NoteGrid(notes, this);
+		}
+		return noteGrid;
+	}
+}
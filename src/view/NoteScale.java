@@ -50,6 +50,10 @@ public class NoteScale {
 	public void setScale(int scale) {
 		this.scale.setSelection(scale);
 	}
+	
+	public int getScale() {
+		return scale.getSelection();
+	}
 
 	public Composite getWidget() {
 		return composite;
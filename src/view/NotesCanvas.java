@@ -8,18 +8,59 @@ import model.*;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.PaintEvent;
 import org.eclipse.swt.events.PaintListener;
-import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.widgets.*;
 
 /**
  * A canvas that displays notes in a piano-roll style.
+ *
+ * The canvas is only as large as the visible area. The position shown is kept as a number of ticks from
+ * the beginning at the bottom of the canvas, and the canvas's scroll bar is set to match, so songs of any
+ * length are drawn in the same way and at the same cost.
+ *
+ * The piano-roll is drawn into offscreen tiles of a fixed height, which are kept in a cache so that
+ * scrolling only copies them to the screen. Each tile is keyed by its position, the scale and the set
+ * of active tracks, so changing those draws new tiles, and changing them back reuses the old ones.
  */
 public class NotesCanvas {
-	private int keyWidth = 9;
+	// Height of each tile, and the most memory that cached tiles can use.
+	private static final int TILE_HEIGHT = 256;
+	private static final long TILE_CACHE_BYTES = 64L * 1024 * 1024;
+	
+	/**
+	 * Identifies the contents of a tile.
+	 */
+	private static class TileKey {
+		private int tile;
+		private int scale;
+		private BitSet activeTracks;
+		
+		public TileKey(int tile, int scale, BitSet activeTracks) {
+			this.tile = tile;
+			this.scale = scale;
+			this.activeTracks = activeTracks;
+		}
+		
+		@Override
+		public boolean equals(Object object) {
+			if(!(object instanceof TileKey)) return false;
+			TileKey other = (TileKey)object;
+			return tile == other.tile && scale == other.scale && activeTracks.equals(other.activeTracks);
+		}
+		
+		@Override
+		public int hashCode() {
+			return (tile * 31 + scale) * 31 + activeTracks.hashCode();
+		}
+	}
+	
 	private int scale = 1;
 	
-	private List<Note> notes = new ArrayList<Note>();
+	private NoteStore notes;
 	private MidiFile midiFile;
 	private Canvas canvas;
 	
@@ -27,248 +68,339 @@ public class NotesCanvas {
 	private int visibleHeight;
 	private int visibleWidth;
 	
+	// Position in ticks from the beginning at the bottom of the canvas, and the same distance in pixels.
+	private int ticks = 0;
+	private int offset = 0;
+	
 	private Colors colors;
 	
 	private List<Integer> repeats = new ArrayList<Integer>();
 	
+	private TileCache tileCache = new TileCache(TILE_CACHE_BYTES);
+	
+	// Paints the contents of the tiles, and the overlays drawn over them on the screen.
+	private NotesPainter painter;
+	private GCRenderer tileRenderer;
+	private GCRenderer renderer;
+	
+	private PaintStats paintStats = new PaintStats("Notes");
+	
+	// The note under the mouse, shown in the tool tip.
+	private Note hoverNote;
+	
 	public NotesCanvas(Composite parent, Colors colors) {
-		this.canvas = new Canvas(parent, SWT.DOUBLE_BUFFERED);
+		this.canvas = new Canvas(parent, SWT.DOUBLE_BUFFERED | SWT.NO_BACKGROUND | SWT.V_SCROLL);
 		this.colors = colors;
+		this.painter = new NotesPainter(colors);
+		this.tileRenderer = new GCRenderer(canvas.getDisplay());
+		this.renderer = new GCRenderer(canvas.getDisplay());
+		
+		canvas.getVerticalBar().setIncrement(5);
+		
+		canvas.addListener(SWT.Resize, new Listener() {
+			public void handleEvent(Event event) {
+				// The notes are centered on the parent, so that they line up with the keyboard below it.
+				Rectangle clientArea = canvas.getClientArea();
+				visibleWidth = canvas.getParent().getClientArea().width;
+				visibleHeight = clientArea.height;
+				updateTotalHeight();
+				canvas.redraw();
+			}
+		});
 		
 		canvas.addPaintListener(new PaintListener() {
 			public void paintControl(PaintEvent event) {
-				paint(event.display, event.gc);
+				paint(event.display, event.gc, event.y, event.y + event.height);
 			}
 		});
 		
-		canvas.pack();
+		// Show the note under the mouse in the tool tip, changing it only when the mouse moves to another note.
+		Listener hoverListener = new Listener() {
+			public void handleEvent(Event event) {
+				Note note = (event.type == SWT.MouseMove) ? getNoteAt(event.x, event.y) : null;
+				if(note == null ? hoverNote == null : note.equals(hoverNote)) return;
+				
+				hoverNote = note;
+				canvas.setToolTipText((note == null) ? null : note.getTrack().getName() + ": " + note.getPitch().getFullNoteName() + ", velocity " + note.getVelocity());
+			}
+		};
+		canvas.addListener(SWT.MouseMove, hoverListener);
+		canvas.addListener(SWT.MouseExit, hoverListener);
+		
+		canvas.addDisposeListener(new DisposeListener() {
+			public void widgetDisposed(DisposeEvent event) {
+				tileCache.clear();
+				tileRenderer.dispose();
+				renderer.dispose();
+			}
+		});
 	}
 	
 	/**
-	 * Paint the canvas with a piano-roll style display of notes.
+	 * Paint the canvas with a piano-roll style display of notes, between two positions that need repainting.
+	 *
+	 * When the canvas scrolls by less than its visible height, the part that was already on screen is
+	 * copied across by the window system, and only the newly exposed strip needs repainting. So only
+	 * the parts of the tiles and overlays within that strip are drawn.
 	 */
-	private void paint(Display display, GC gc) {
-		Color white = colors.getWhite();
-		Color black = colors.getBlack();
-		Color grey220 = colors.getGrey220();
-		Color grey240 = colors.getGrey240();
-
-		int clientWidth = keyWidth * 105 + 10;
-		int leftMargin = (visibleWidth - clientWidth - 20) / 2 + 1;
+	private void paint(Display display, GC gc, int dirtyTop, int dirtyBottom) {
+		int clientWidth = painter.getClientWidth();
+		int leftMargin = getLeftMargin();
 		
-		// Get total height needed to display every note.
-		totalHeight = 0;
-		for(Note note:notes) {
-			totalHeight = Math.max(totalHeight, note.getStartTime() / scale + note.getDuration() / scale);
-		}
-		// Add one extra screen height to allow scrolling the last note to the bottom of the window.
-		totalHeight += visibleHeight;
+		// Find top and bottom of the canvas that needs repainting.
+		int top = Math.max(0, dirtyTop);
+		int bottom = Math.min(visibleHeight, dirtyBottom);
+		if(top >= bottom) return;
+		
+		paintStats.startPaint();
 		
-		// Set total canvas size.
-		canvas.setSize(2000, (int)totalHeight);
+		// Clear the margins either side of the tiles.
+		gc.setBackground(canvas.getBackground());
+		gc.fillRectangle(0, top, leftMargin, bottom - top);
+		gc.fillRectangle(leftMargin + clientWidth, top, Math.max(0, visibleWidth - leftMargin - clientWidth), bottom - top);
 		
-		// Find top and bottom of canvas currently visible.
-		int canvasTop = -canvas.getBounds().y;
-		int canvasBottom = canvasTop + visibleHeight;
+		// Copy the part of each tile within the strip. Tiles are numbered up from the beginning of the
+		// file, so they stay valid when the canvas scrolls or changes height.
+		int origin = getOrigin();
+		int firstTile = Math.max(0, (origin - bottom) / TILE_HEIGHT);
+		int lastTile = (origin - top - 1) / TILE_HEIGHT;
+		for(int tile = firstTile; tile <= lastTile; tile++) {
+			int tileTop = getTileTop(tile);
+			int stripTop = Math.max(top, tileTop);
+			int stripBottom = Math.min(bottom, tileTop + TILE_HEIGHT);
+			if(stripTop >= stripBottom) continue;
+			
+			int height = stripBottom - stripTop;
+			gc.drawImage(getTile(display, tile, clientWidth), 0, stripTop - tileTop, clientWidth, height, leftMargin, stripTop, clientWidth, height);
+		}
 		
-		// Draw white background.
-		gc.setBackground(white);
-		gc.fillRectangle(leftMargin, canvasTop, clientWidth, visibleHeight);
+		renderer.setGC(gc);
 		
-		// Draw grey guide lines showing the position of the black notes.
-		for(int x = 0; x < 105; x++) {
-			gc.setForeground(grey220);
-			// Check whether this is a black note.
-			if(x % 14 == 1 || x % 14 == 3 || x % 14 == 13 || x % 14 == 7 || x % 14 == 9) {
-				// Use a lighter color for the group of 2 black notes.
-				if(x % 14 == 7 || x % 14 == 9) {
-					gc.setBackground(grey240);
-				} else {
-					gc.setBackground(grey220);
-				}
-				// Draw the rectangle.
-				gc.fillRectangle(leftMargin + x * keyWidth - 2, canvasTop, keyWidth, visibleHeight);
+		// Draw repeat lines over the tiles, so that changing them doesn't invalidate any tiles.
+		renderer.setForeground(colors.getRed());
+		for(int repeat:repeats) {
+			int y = getPositionFromTicks(repeat);
+			if(y >= top && y < bottom) {
+				renderer.drawLine(leftMargin, y, leftMargin + clientWidth - 2, y);
 			}
 		}
 		
-		// Draw repeat lines.
-		for(Integer repeat:repeats) {
-			gc.setForeground(colors.getRed());
-			gc.drawLine(leftMargin, repeat, leftMargin + clientWidth - 2, repeat);
+		// Draw a border around the whole piano-roll, with the top line above the end of the last note.
+		renderer.setForeground(colors.getBlack());
+		renderer.drawLine(leftMargin, top, leftMargin, bottom);
+		int end = origin - totalHeight;
+		if(end >= top && end < bottom) {
+			renderer.drawLine(leftMargin, end, leftMargin + clientWidth - 2, end);
 		}
+		renderer.drawLine(leftMargin + clientWidth - 2, top, leftMargin + clientWidth - 2, bottom);
+		renderer.drawLine(leftMargin + clientWidth - 1, top, leftMargin + clientWidth - 1, bottom);
 		
-		if(midiFile != null) {
-			// Draw horizontal bar lines.
-			TimeSignature timeSignature = midiFile.getTimeSignature();
-			int wholeNotesInBar = midiFile.getResolution() * timeSignature.getNumerator() * 4;
-			double beatLength = wholeNotesInBar / timeSignature.getDenominator() / timeSignature.getNumerator();
-			int beat = -1;
-			for(int y = 0; y < totalHeight * scale; y += beatLength) {
-				beat = (beat + 1) % timeSignature.getNumerator();
-				
-				int y2 = totalHeight - (y / scale);
-				if(y2 < canvasTop || y2 > canvasBottom) continue;
-				
-				gc.setForeground(black);
-				
-				if(beat == 0) {
-					gc.setForeground(colors.getBlack());
-				} else {
-					gc.setForeground(colors.getGrey220());
-				}
+		paintStats.endPaint();
+	}
+	
+	/**
+	 * Returns the position on the canvas of the left edge of the piano-roll, which is centered on the parent.
+	 */
+	private int getLeftMargin() {
+		return (visibleWidth - painter.getClientWidth() - 20) / 2 + 1;
+	}
+	
+	/**
+	 * Returns the position on the canvas of the beginning of the file, which can be far below the canvas.
+	 */
+	private int getOrigin() {
+		return visibleHeight + offset;
+	}
+	
+	/**
+	 * Returns the position of the top of a tile.
+	 */
+	private int getTileTop(int tile) {
+		return getOrigin() - (tile + 1) * TILE_HEIGHT;
+	}
+	
+	/**
+	 * Returns the image of a tile, drawing it if it isn't cached.
+	 */
+	private Image getTile(Display display, int tile, int width) {
+		TileKey key = new TileKey(tile, scale, painter.getActiveTracks());
+		Image image = tileCache.get(key);
+		
+		if(image == null) {
+			image = new Image(display, width, TILE_HEIGHT);
+			GC gc = new GC(image);
+			try {
+				gc.setFont(canvas.getFont());
+				tileRenderer.setGC(gc);
 				
-				gc.drawLine(leftMargin, y2, leftMargin + clientWidth - 2, y2);
+				// Paint with the top of the tile at the top of the image, so the beginning of the file is below it.
+				painter.paint(tileRenderer, (tile + 1) * TILE_HEIGHT, 0, TILE_HEIGHT);
+				paintStats.addNotes(painter.getNotesDrawn());
+			} finally {
+				gc.dispose();
 			}
 			
-			// Draw the note markers.
-			for(Note note:notes) {
-				// Skip invisible tracks.
-				if(!note.getTrack().isActive()) continue;
-				
-				int pitch = note.getPitch().getMidiNumber();
-				int duration = note.getDuration() / scale;
-				
-				int y = getNoteTop(note);
-			
-				// Skip notes that aren't currently visible (off the top of bottom of the screen).
-				if(y + duration < canvasTop || y > canvasBottom) continue;
-				
-				// Set the main note color.
-				gc.setBackground(colors.getNoteColor(note));
-				
-				// Draw a filled rectangle for the note, with a black outline.
-				gc.setForeground(black);
-				gc.fillRectangle(leftMargin + getPosition(pitch) - 1, y, 5, duration);
-				gc.drawRectangle(leftMargin + getPosition(pitch) - 1, y, 5, duration);
-			}
+			tileCache.put(key, image);
 		}
 		
-		// Draw a border around the whole canvas.
-		gc.setForeground(black);
-		gc.drawLine(leftMargin, canvasTop, leftMargin, canvasBottom);
-		gc.drawLine(leftMargin, 0, leftMargin + clientWidth - 2, 0);
-		gc.drawLine(leftMargin + clientWidth - 2, canvasTop, leftMargin + clientWidth - 2, canvasBottom);
-		gc.drawLine(leftMargin + clientWidth - 1, canvasTop, leftMargin + clientWidth - 1, canvasBottom);
+		return image;
 	}
 	
 	/**
-	 * Returns all the notes down at a position, adjusting for scaling.
+	 * Returns the note of an active track drawn at a position on the canvas, or null if there isn't one.
+	 */
+	public Note getNoteAt(int x, int y) {
+		if(midiFile == null) return null;
+		
+		int row = painter.getNoteAt(x - getLeftMargin(), y, getOrigin());
+		return (row == -1) ? null : notes.getNote(row);
+	}
+	
+	/**
+	 * Returns all the notes down at a position in ticks.
 	 */
 	public Set<Note> getNotesAtPosition(int position) {
 		HashSet<Note> currentNotes = new HashSet<Note>();
+		if(midiFile == null) return currentNotes;
 		
-		for(Note note:notes) {
-			int duration = note.getDuration() / scale;
-			
-			int y = getNoteTop(note);
-			
-			if(position >= y && position < y + duration) {
-				currentNotes.add(note);
-			}
+		IntList rows = midiFile.getNoteIndex().getNotesAt(position);
+		for(int i = 0; i < rows.size(); i++) {
+			currentNotes.add(notes.getNote(rows.get(i)));
 		}
 		
 		return currentNotes;
 	}
 	
 	/**
-	 * Returns all the notes that are directly after a position.
+	 * Returns all the notes that are directly after a position in ticks.
 	 */
 	public Set<Note> getNotesAfterPosition(int position) {
 		HashSet<Note> nextNotes = new HashSet<Note>();
+		if(midiFile == null) return nextNotes;
 		
-		int nextPosition = Integer.MIN_VALUE;
-		
-		for(Note note:notes) {
-			int duration = note.getDuration() / scale;
-			
-			int y = getNoteTop(note);
-
-			if(y < position) {
-				if(y + duration > nextPosition) {
-					nextPosition = y + duration;
-					nextNotes.clear();
-				}
-			}
-			
-			if(y + duration == nextPosition) {
-				nextNotes.add(note);
-			}
+		// Notes that start within the same pixel are treated as starting together.
+		IntList rows = midiFile.getNoteIndex().getNotesAfter(position, scale);
+		for(int i = 0; i < rows.size(); i++) {
+			nextNotes.add(notes.getNote(rows.get(i)));
 		}
 
 		return nextNotes;
 	}
 	
 	/**
-	 * Returns the number of ticks a position is from the beginning.
+	 * Returns the position on the canvas that is a number of ticks from the beginning.
 	 */
-	public int getTicksFromBeginning(int position) {
-		return (totalHeight - position) * scale;
+	private int getPositionFromTicks(int ticks) {
+		return getOrigin() - ticks / scale;
 	}
 	
 	/**
-	 * Returns the position of the top of a note, adjusting for scaling.
+	 * Updates the total height needed to display every note, and the scroll bar to match.
 	 */
-	private int getNoteTop(Note note) {
-		int startTime = note.getStartTime() / scale;
-		int duration = note.getDuration() / scale;
+	private void updateTotalHeight() {
+		totalHeight = painter.getHeight();
+		
+		// Add one extra screen height to allow scrolling the last note to the bottom of the window.
+		totalHeight += visibleHeight;
 		
-		return totalHeight - startTime - duration;
+		updateScrollBar();
 	}
 	
 	/**
-	 * Returns the horizontal position that a note of some pitch should be centered on.
+	 * Sets the scroll bar to the current position. The top of the scroll bar is the end of the file.
 	 */
-	private int getPosition(int pitch) {
-		int position = 10;
-		
-		// Add a key width for each note above A0, or 2 key widths around the black key gaps between B/C and E/F.
-		for(int x = 0; x <= pitch - 21; x++) {
-			if(x % 12 == 3 || x % 12 == 8) {
-				position += keyWidth;
-			}
-			position += keyWidth;
-		}
-		
-		return position;
+	private void updateScrollBar() {
+		int maxOffset = totalHeight - visibleHeight;
+		canvas.getVerticalBar().setValues(maxOffset - offset, 0, totalHeight, Math.max(1, visibleHeight), 5, Math.max(1, visibleHeight));
 	}
-
+	
 	/**
-	 * Sets the file to display on this canvas.
+	 * Returns the position in ticks that the scroll bar has been moved to.
 	 */
-	public void setMidiFile(MidiFile file) {
-		this.midiFile = file;
-		
-		this.notes = new ArrayList<Note>();
-		for(MidiTrack track:file.getTracks()) {
-			notes.addAll(track.getNotes());
-		}
-		
-		canvas.redraw();
+	public int getScrollBarTicks() {
+		int maxOffset = totalHeight - visibleHeight;
+		return (maxOffset - canvas.getVerticalBar().getSelection()) * scale;
 	}
 	
 	/**
-	 * Sets the height of the currently visible portion of the canvas.
+	 * Returns the furthest position in ticks that can be scrolled to, with the end of the last note at the bottom.
 	 */
-	public void setVisibleHeight(int height) {
-		this.visibleHeight = height;
-		getWidget().redraw();
+	public int getMaxTicks() {
+		return (totalHeight - visibleHeight) * scale;
 	}
 	
 	/**
-	 * Sets the width of the currently visible portion of the canvas.
+	 * Returns the number of ticks from the beginning at a position on the canvas.
 	 */
-	public void setVisibleWidth(int width) {
-		this.visibleWidth = width;
-		getWidget().redraw();
+	public int getTicksAt(int y) {
+		return ticks + (visibleHeight - y) * scale;
 	}
-
+	
 	/**
-	 * Returns the total height of the canvas.
+	 * Returns the number of ticks from the bottom to the top of the canvas.
 	 */
-	public int getTotalHeight() {
-		return totalHeight;
+	public int getVisibleTicks() {
+		return visibleHeight * scale;
+	}
+	
+	/**
+	 * Returns the position in ticks from the beginning at the bottom of the canvas.
+	 */
+	public int getTicks() {
+		return ticks;
+	}
+	
+	/**
+	 * Scrolls so that the bottom of the canvas is a number of ticks from the beginning. When this moves
+	 * the notes by less than the height of the canvas, the notes already drawn are copied across, and
+	 * only the newly exposed strip is repainted.
+	 */
+	public void setTicks(int newTicks) {
+		int newOffset = newTicks / scale;
+		int dy = newOffset - offset;
+		
+		this.ticks = newTicks;
+		this.offset = newOffset;
+		
+		if(dy != 0) {
+			Rectangle clientArea = canvas.getClientArea();
+			if(Math.abs(dy) < clientArea.height) {
+				canvas.scroll(0, dy, 0, 0, clientArea.width, clientArea.height, false);
+			} else {
+				canvas.redraw();
+			}
+			
+			updateScrollBar();
+		}
 	}
 
+	/**
+	 * Sets the track settings used to choose which notes are displayed.
+	 */
+	public void setSong(Song song) {
+		if(painter.setSong(song)) {
+			canvas.redraw();
+		}
+	}
+	
+	/**
+	 * Sets the file to display on this canvas.
+	 */
+	public void setMidiFile(MidiFile file) {
+		this.midiFile = file;
+		this.notes = file.getNotes();
+		
+		// The notes are laid out once for each file, and only rescaled after that.
+		painter.setMidiFile(file);
+		updateTotalHeight();
+		updatePosition();
+		
+		// Tiles of the previous file are no longer needed.
+		tileCache.clear();
+		
+		canvas.redraw();
+	}
+	
 	/**
 	 * Gets the vertical scaling used on the notes.
 	 */
@@ -281,6 +413,26 @@ public class NotesCanvas {
 	 */
 	public void setScale(int scale) {
 		this.scale = scale;
+		painter.setScale(scale);
+		updateTotalHeight();
+		updatePosition();
+		canvas.redraw();
+	}
+	
+	/**
+	 * Keeps the position in ticks within the file after its height has changed, and moves the notes to it.
+	 */
+	private void updatePosition() {
+		this.ticks = Math.min(ticks, getMaxTicks());
+		this.offset = ticks / scale;
+		updateScrollBar();
+	}
+	
+	/**
+	 * Returns the statistics of the paints of this canvas.
+	 */
+	public PaintStats getPaintStats() {
+		return paintStats;
 	}
 	
 	/**
@@ -290,12 +442,23 @@ public class NotesCanvas {
 		return canvas;
 	}
 
+	/**
+	 * Sets the positions in ticks to draw repeat lines at.
+	 */
 	public void setRepeats(List<Integer> repeats) {
-		this.repeats = repeats;
+		// Repaint only around the old and new repeat lines. The list is copied, as the caller changes it.
+		final List<Integer> changedLines = new ArrayList<Integer>(this.repeats);
+		changedLines.addAll(repeats);
+		
+		this.repeats = new ArrayList<Integer>(repeats);
 		
 		Display.getCurrent().asyncExec(new Runnable() {
 			public void run() {
-				canvas.redraw();
+				if(canvas.isDisposed()) return;
+				
+				for(int repeat:changedLines) {
+					canvas.redraw(0, getPositionFromTicks(repeat) - 1, visibleWidth, 3, false);
+				}
 			}
 		});
 	}
@@ -0,0 +1,435 @@
+package view;
+
+import java.util.*;
+import java.util.List;
+
+import model.*;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.RGB;
+
+/**
+ * Paints notes in a piano-roll style, with the keyboard starting at the left edge.
+ *
+ * Positions are measured down from the top of whatever is being painted, with the beginning of the file at
+ * an origin passed to each paint, and the end of the file above it. So the same painter draws the tiles of
+ * the NotesCanvas, or any part of the file into an image.
+ */
+public class NotesPainter {
+	// Number of sizes of image data kept for drawing the density map.
+	private static final int MAX_DENSITY_IMAGES = 4;
+
+	// Fewest pixels between beat lines, or between the bar lines that are drawn when zoomed out.
+	private static final int MIN_LINE_SPACING = 4;
+
+	private int keyWidth = 9;
+	private int scale = 1;
+
+	private NoteStore notes;
+	private MidiFile midiFile;
+	private Song song;
+
+	private Colors colors;
+
+	// Cursors through the controller events of each track, used to find the sustain pedal marks.
+	private List<ControllerCursor> controllerCursors = new ArrayList<ControllerCursor>();
+
+	// Horizontal position of each midi number, and the positions and colors of the notes of the file.
+	private int[] pitchPositions = NoteLayout.createPitchPositions(keyWidth);
+	private NoteLayout layout;
+
+	// Indexes of the active tracks within the file. A new set is created for each change, as it's part of the tile keys.
+	private BitSet activeTracks = new BitSet();
+
+	// Position of the beginning of the file while painting, and the number of notes drawn by the last paint.
+	private int origin;
+	private int notesDrawn;
+
+	// Image data that the density map is drawn into, for the most recently painted sizes.
+	private Map<Point, ImageData> densityImages = new LinkedHashMap<Point, ImageData>(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<Point, ImageData> eldest) {
+			return size() > MAX_DENSITY_IMAGES;
+		}
+	};
+
+	// Whether the notes are drawn in batches of the same color. This is only turned off to measure the difference.
+	private boolean batchColors = true;
+
+	public NotesPainter(Colors colors) {
+		this.colors = colors;
+	}
+
+	/**
+	 * Returns the width of the piano-roll.
+	 */
+	public int getClientWidth() {
+		return keyWidth * 105 + 10;
+	}
+
+	/**
+	 * Returns the height needed to display every note at the current scale.
+	 */
+	public int getHeight() {
+		return (layout == null) ? 0 : layout.getHeight();
+	}
+
+	/**
+	 * Paints the part of the piano-roll between two positions, where the beginning of the file is at origin.
+	 */
+	public void paint(Renderer renderer, int origin, int top, int bottom) {
+		this.origin = origin;
+		this.notesDrawn = 0;
+
+		int clientWidth = getClientWidth();
+		int leftMargin = 0;
+		int height = bottom - top;
+
+		// Draw white background.
+		renderer.setBackground(colors.getWhite());
+		renderer.fillRectangle(leftMargin, top, clientWidth, height);
+
+		// Draw grey guide lines showing the position of the black notes.
+		for(int x = 0; x < 105; x++) {
+			renderer.setForeground(colors.getGrey220());
+			// Check whether this is a black note.
+			if(x % 14 == 1 || x % 14 == 3 || x % 14 == 13 || x % 14 == 7 || x % 14 == 9) {
+				// Use a lighter color for the group of 2 black notes.
+				if(x % 14 == 7 || x % 14 == 9) {
+					renderer.setBackground(colors.getGrey240());
+				} else {
+					renderer.setBackground(colors.getGrey220());
+				}
+				// Draw the rectangle.
+				renderer.fillRectangle(leftMargin + x * keyWidth - 2, top, keyWidth, height);
+			}
+		}
+
+		if(midiFile != null) {
+			// Draw horizontal beat and bar lines within the ticks being painted.
+			MeterMap meterMap = midiFile.getMeterMap();
+			int startTick = getTicksFromBeginning(bottom);
+			int endTick = getTicksFromBeginning(top);
+
+			// When zoomed out far enough for the lines to run together, the beat lines are left out, and only
+			// every second, fourth, eighth... bar line is drawn, counting from the first bar.
+			int resolution = Math.max(1, midiFile.getResolution());
+			if(resolution >= MIN_LINE_SPACING * scale) {
+				renderer.setForeground(colors.getGrey220());
+				IntList beats = meterMap.getBeats(startTick, endTick);
+				for(int i = 0; i < beats.size(); i++) {
+					int y = getPositionFromTicks(beats.get(i));
+					renderer.drawLine(leftMargin, y, leftMargin + clientWidth - 2, y);
+				}
+			}
+
+			int barStep = 1;
+			while((long)barStep * resolution * 4 < MIN_LINE_SPACING * scale) {
+				barStep *= 2;
+			}
+
+			renderer.setForeground(colors.getBlack());
+			IntList barLines = meterMap.getBarLines(startTick, endTick);
+			for(int i = 0; i < barLines.size(); i++) {
+				if(barStep > 1 && meterMap.getBarNumber(barLines.get(i)) % barStep != 0) continue;
+
+				int y = getPositionFromTicks(barLines.get(i));
+				renderer.drawLine(leftMargin, y, leftMargin + clientWidth - 2, y);
+			}
+
+			// Draw section markers, with their text above the line.
+			MetaTimeline metaEvents = midiFile.getMetaEvents();
+			int textHeight = renderer.getTextHeight();
+			IntList markers = metaEvents.getEvents(startTick - textHeight * scale, endTick, MetaTimeline.MARKER);
+			renderer.setForeground(colors.getGrey120());
+			for(int i = 0; i < markers.size(); i++) {
+				int marker = markers.get(i);
+				int y = getPositionFromTicks(metaEvents.getTick(marker));
+				renderer.drawLine(leftMargin, y, leftMargin + clientWidth - 2, y);
+				renderer.drawText(metaEvents.getText(marker), leftMargin + 3, y - textHeight);
+			}
+
+			drawPedalMarks(renderer, leftMargin + 2, startTick, endTick);
+
+			if(layout.isDense()) {
+				drawDensity(renderer, clientWidth, leftMargin, top, bottom);
+			} else {
+				drawNotes(renderer, leftMargin, top, bottom);
+			}
+		}
+	}
+
+	/**
+	 * Draws the notes of active tracks between two positions. The notes are sorted by color, so that the
+	 * background color only changes once for each color, then all the outlines are drawn in black.
+	 */
+	private void drawNotes(Renderer renderer, int leftMargin, int top, int bottom) {
+		// Find the notes between the positions, allowing an extra pixel either side for rounding.
+		NoteIndex noteIndex = midiFile.getNoteIndex();
+		int startTick = getTicksFromBeginning(bottom) - scale;
+		int endTick = getTicksFromBeginning(top) + scale;
+		IntList rows = noteIndex.getNotesAt(startTick);
+		int end = noteIndex.upperBound(endTick);
+		for(int row = noteIndex.upperBound(startTick); row < end; row++) {
+			rows.add(row);
+		}
+
+		// Count the visible notes of each color.
+		IntList visibleRows = new IntList();
+		int[] colorStarts = new int[colors.getNoteColorCount() + 1];
+		for(int i = 0; i < rows.size(); i++) {
+			int row = rows.get(i);
+
+			// Skip invisible tracks, and notes that aren't between the positions.
+			if(!activeTracks.get(notes.getTrackIndex(row))) continue;
+			int y = getNoteTop(row);
+			if(y + layout.getLength(row) < top || y > bottom) continue;
+
+			visibleRows.add(row);
+			colorStarts[layout.getColorIndex(row) + 1]++;
+		}
+
+		if(!batchColors) {
+			drawNotesUnbatched(renderer, leftMargin, visibleRows);
+			return;
+		}
+
+		// Sort the notes by color.
+		for(int color = 0; color < colorStarts.length - 1; color++) {
+			colorStarts[color + 1] += colorStarts[color];
+		}
+		int[] sortedRows = new int[visibleRows.size()];
+		int[] positions = Arrays.copyOf(colorStarts, colorStarts.length);
+		for(int i = 0; i < visibleRows.size(); i++) {
+			int row = visibleRows.get(i);
+			sortedRows[positions[layout.getColorIndex(row)]++] = row;
+		}
+
+		// Fill a rectangle for each note in its color.
+		for(int color = 0; color < colorStarts.length - 1; color++) {
+			if(colorStarts[color] == colorStarts[color + 1]) continue;
+
+			renderer.setBackground(colors.getNoteColor(color));
+			for(int i = colorStarts[color]; i < colorStarts[color + 1]; i++) {
+				int row = sortedRows[i];
+				renderer.fillRectangle(leftMargin + layout.getX(row) - 1, getNoteTop(row), 5, layout.getLength(row));
+			}
+		}
+
+		notesDrawn = sortedRows.length;
+		
+		// Draw the black outlines.
+		renderer.setForeground(colors.getBlack());
+		for(int row:sortedRows) {
+			renderer.drawRectangle(leftMargin + layout.getX(row) - 1, getNoteTop(row), 5, layout.getLength(row));
+		}
+	}
+
+	/**
+	 * Draws notes in the order they're stored, setting the colors for each one.
+	 */
+	private void drawNotesUnbatched(Renderer renderer, int leftMargin, IntList rows) {
+		for(int i = 0; i < rows.size(); i++) {
+			int row = rows.get(i);
+			int x = leftMargin + layout.getX(row) - 1;
+			int y = getNoteTop(row);
+
+			renderer.setBackground(colors.getNoteColor(notes, row));
+			renderer.setForeground(colors.getBlack());
+			renderer.fillRectangle(x, y, 5, layout.getLength(row));
+			renderer.drawRectangle(x, y, 5, layout.getLength(row));
+		}
+
+		notesDrawn = rows.size();
+	}
+
+	/**
+	 * Draws the notes of active tracks between two positions from the density map, as a single image.
+	 * This is used when most notes are shorter than a pixel, where drawing each one would mostly draw
+	 * over the same pixels.
+	 */
+	private void drawDensity(Renderer renderer, int clientWidth, int leftMargin, int top, int bottom) {
+		// The row at a position is its distance up from the beginning.
+		int firstRow = origin - bottom + 1;
+		int lastRow = origin - top + 1;
+
+		// Reuse the image data of the last paint of the same size, as the tiles are all the same size.
+		Point size = new Point(clientWidth, lastRow - firstRow);
+		ImageData imageData = densityImages.get(size);
+		if(imageData == null) {
+			imageData = DensityMap.createImageData(size.x, size.y);
+			densityImages.put(size, imageData);
+		}
+
+		DensityMap densityMap = layout.getDensityMap();
+		densityMap.drawRows(imageData, firstRow, activeTracks, pitchPositions, leftMargin, colors);
+		renderer.drawChangingImage(imageData, 0, top);
+		
+		notesDrawn = densityMap.getCellCount(firstRow, lastRow);
+	}
+
+	/**
+	 * Draws a bar in the color of each active track where its sustain pedal is down, within the visible ticks.
+	 */
+	private void drawPedalMarks(Renderer renderer, int x, int startTick, int endTick) {
+		List<MidiTrack> tracks = midiFile.getTracks();
+		for(int i = 0; i < tracks.size(); i++) {
+			if(!activeTracks.get(i)) continue;
+
+			ControllerCursor cursor = controllerCursors.get(i);
+			cursor.seek(startTick);
+
+			RGB trackColor = colors.getTrackColor(tracks.get(i));
+			renderer.setBackground(trackColor);
+
+			int pedalStart = cursor.getState().isSustained() ? startTick : -1;
+			while(cursor.getNextTick() <= endTick) {
+				int tick = cursor.getNextTick();
+				cursor.advance(tick, null);
+
+				boolean sustained = cursor.getState().isSustained();
+				if(sustained && pedalStart == -1) {
+					pedalStart = tick;
+				} else if(!sustained && pedalStart != -1) {
+					fillTicks(renderer, x, pedalStart, tick);
+					pedalStart = -1;
+				}
+			}
+			if(pedalStart != -1) {
+				fillTicks(renderer, x, pedalStart, endTick);
+			}
+		}
+	}
+
+	/**
+	 * Fills a narrow bar between two ticks.
+	 */
+	private void fillTicks(Renderer renderer, int x, int startTick, int endTick) {
+		int top = getPositionFromTicks(endTick);
+		renderer.fillRectangle(x, top, 3, getPositionFromTicks(startTick) - top);
+	}
+
+	/**
+	 * Sets whether the notes are drawn in batches of the same color, or one at a time setting the colors for each.
+	 */
+	void setBatchColors(boolean batchColors) {
+		this.batchColors = batchColors;
+	}
+
+	/**
+	 * Returns the number of notes drawn by the last paint. When the notes are drawn from the density map, this
+	 * is the number of its cells that were drawn.
+	 */
+	public int getNotesDrawn() {
+		return notesDrawn;
+	}
+	
+	/**
+	 * Returns the row of the note of an active track drawn at a position, or -1 if there isn't one, where
+	 * the beginning of the file is at origin and the keyboard starts at the left edge.
+	 */
+	public int getNoteAt(int x, int y, int origin) {
+		if(layout == null) return -1;
+		
+		NoteGrid noteGrid = layout.getNoteGrid();
+		
+		// Notes are drawn from one pixel left of their position to 4 pixels right of it. Only notes below A0
+		// share a position, so there's usually one midi number to look up.
+		for(int midiNumber = pitchPositions.length - 1; midiNumber >= 0; midiNumber--) {
+			int position = pitchPositions[midiNumber];
+			if(x >= position - 1 && x <= position + 4) {
+				int row = noteGrid.getNoteAt(midiNumber, origin - y, activeTracks);
+				if(row != -1) {
+					return row;
+				}
+			}
+		}
+		
+		return -1;
+	}
+
+	/**
+	 * Returns the number of ticks from the beginning at a position.
+	 */
+	private int getTicksFromBeginning(int y) {
+		return (origin - y) * scale;
+	}
+
+	/**
+	 * Returns the position that is a number of ticks from the beginning.
+	 */
+	private int getPositionFromTicks(int ticks) {
+		return origin - ticks / scale;
+	}
+
+	/**
+	 * Returns the position of the top of a note, adjusting for scaling.
+	 */
+	private int getNoteTop(int row) {
+		return origin - layout.getStart(row) - layout.getLength(row);
+	}
+
+	/**
+	 * Sets the file to paint, laying out its notes at the current scale.
+	 */
+	public void setMidiFile(MidiFile file) {
+		this.midiFile = file;
+		this.notes = file.getNotes();
+
+		controllerCursors.clear();
+		for(int i = 0; i < file.getTracks().size(); i++) {
+			controllerCursors.add(file.getControllers(i).getCursor());
+		}
+
+		layout = new NoteLayout(notes, pitchPositions, colors);
+		layout.setScale(scale);
+
+		updateActiveTracks();
+	}
+
+	/**
+	 * Sets the track settings used to choose which notes are painted, returning whether the active tracks changed.
+	 */
+	public boolean setSong(Song song) {
+		this.song = song;
+		return updateActiveTracks();
+	}
+
+	/**
+	 * Updates the set of active tracks, returning whether it has changed. The song and file can differ while
+	 * a new file is being set, in which case this waits until both have been set.
+	 */
+	private boolean updateActiveTracks() {
+		if(midiFile == null || song == null || song.getMidiFile() != midiFile) return false;
+
+		BitSet newActiveTracks = new BitSet();
+		List<MidiTrack> tracks = midiFile.getTracks();
+		for(int i = 0; i < tracks.size(); i++) {
+			if(song.isActive(tracks.get(i))) {
+				newActiveTracks.set(i);
+			}
+		}
+
+		if(newActiveTracks.equals(activeTracks)) return false;
+
+		activeTracks = newActiveTracks;
+		return true;
+	}
+
+	/**
+	 * Returns the indexes of the active tracks within the file. The set isn't changed once returned.
+	 */
+	public BitSet getActiveTracks() {
+		return activeTracks;
+	}
+
+	/**
+	 * Sets the vertical scaling to use on the notes.
+	 */
+	public void setScale(int scale) {
+		this.scale = scale;
+		if(layout != null) {
+			layout.setScale(scale);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package view;
+
+import java.util.Arrays;
+
+/**
+ * Records how long the recent paints of a canvas took, how often they ran, and how many notes they drew.
+ *
+ * The last FRAMES paints are kept in ring buffers that are overwritten as new paints are recorded, so
+ * recording never allocates. Nothing is recorded while the statistics are disabled, when starting and
+ * ending a paint only check a flag.
+ */
+public class PaintStats {
+	private static final int FRAMES = 256;
+
+	private String name;
+	private boolean enabled = false;
+
+	// Time each paint ended, how long it took in microseconds, and the notes it drew.
+	private long[] endTimes = new long[FRAMES];
+	private int[] paintMicros = new int[FRAMES];
+	private int[] notesDrawn = new int[FRAMES];
+
+	// Index to record the next paint at, and the number of paints kept, up to FRAMES.
+	private int next = 0;
+	private int frames = 0;
+
+	// Start time and notes drawn of the paint in progress.
+	private long startTime;
+	private int notes;
+
+	public PaintStats(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts or stops recording, clearing any paints recorded before.
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		this.next = 0;
+		this.frames = 0;
+	}
+
+	/**
+	 * Called at the start of a paint.
+	 */
+	public void startPaint() {
+		if(!enabled) return;
+
+		startTime = System.nanoTime();
+		notes = 0;
+	}
+
+	/**
+	 * Adds to the number of notes drawn by the paint in progress.
+	 */
+	public void addNotes(int count) {
+		notes += count;
+	}
+
+	/**
+	 * Called at the end of a paint, recording how long it took.
+	 */
+	public void endPaint() {
+		if(!enabled) return;
+
+		long endTime = System.nanoTime();
+		endTimes[next] = endTime;
+		paintMicros[next] = (int)Math.min(Integer.MAX_VALUE, (endTime - startTime) / 1000);
+		notesDrawn[next] = notes;
+
+		next = (next + 1) % FRAMES;
+		frames = Math.min(frames + 1, FRAMES);
+	}
+
+	/**
+	 * Returns the time in microseconds that a percentage of the recent paints took no longer than, or 0 if
+	 * there haven't been any.
+	 */
+	public int getPaintMicros(int percent) {
+		if(frames == 0) return 0;
+
+		int[] sorted = Arrays.copyOf(paintMicros, frames);
+		Arrays.sort(sorted);
+		return sorted[Math.min(frames - 1, frames * percent / 100)];
+	}
+
+	/**
+	 * Returns the number of paints that ended within the last second, counting at most the last FRAMES paints.
+	 */
+	public int getPaintsPerSecond() {
+		long since = System.nanoTime() - 1000000000L;
+
+		int paints = 0;
+		for(int i = 0; i < frames; i++) {
+			if(endTimes[i] > since) {
+				paints++;
+			}
+		}
+		return paints;
+	}
+
+	/**
+	 * Returns the average number of notes drawn by the recent paints.
+	 */
+	public int getAverageNotes() {
+		if(frames == 0) return 0;
+
+		long total = 0;
+		for(int i = 0; i < frames; i++) {
+			total += notesDrawn[i];
+		}
+		return (int)(total / frames);
+	}
+}
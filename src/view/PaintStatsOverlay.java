@@ -0,0 +1,103 @@
+package view;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Shell;
+
+/**
+ * A small window kept over the top left corner of a control, showing the paint statistics of each canvas
+ * and the number of scroll timer ticks that ran late. The statistics are only recorded while it's shown,
+ * and it's updated a few times a second rather than on every paint.
+ */
+public class PaintStatsOverlay {
+	// Milliseconds between each update of the statistics.
+	private static final int UPDATE_INTERVAL = 500;
+
+	private Shell parent;
+	private Control anchor;
+	private PaintStats[] paintStats;
+
+	private Shell shell;
+	private Label label;
+
+	// Timer ticks missed since the overlay was shown.
+	private int droppedTicks = 0;
+
+	public PaintStatsOverlay(Shell parent, Control anchor, PaintStats... paintStats) {
+		this.parent = parent;
+		this.anchor = anchor;
+		this.paintStats = paintStats;
+	}
+
+	public boolean isVisible() {
+		return shell != null;
+	}
+
+	/**
+	 * Shows or hides the overlay, starting or stopping the recording of the statistics.
+	 */
+	public void setVisible(boolean visible) {
+		if(visible == isVisible()) return;
+
+		for(PaintStats stats:paintStats) {
+			stats.setEnabled(visible);
+		}
+		droppedTicks = 0;
+
+		if(visible) {
+			shell = new Shell(parent, SWT.ON_TOP | SWT.TOOL | SWT.NO_TRIM | SWT.NO_FOCUS);
+			shell.setLayout(new FillLayout());
+			label = new Label(shell, SWT.NONE);
+
+			update();
+			shell.setVisible(true);
+
+			parent.getDisplay().timerExec(UPDATE_INTERVAL, new Runnable() {
+				public void run() {
+					if(shell == null || shell.isDisposed()) return;
+
+					update();
+					parent.getDisplay().timerExec(UPDATE_INTERVAL, this);
+				}
+			});
+		} else {
+			if(!shell.isDisposed()) {
+				shell.dispose();
+			}
+			shell = null;
+			label = null;
+		}
+	}
+
+	/**
+	 * Adds to the number of timer ticks that were missed, if the overlay is shown.
+	 */
+	public void addDroppedTicks(int count) {
+		if(shell != null) {
+			droppedTicks += count;
+		}
+	}
+
+	/**
+	 * Shows the latest statistics, and moves the overlay back over the anchor.
+	 */
+	private void update() {
+		StringBuilder text = new StringBuilder();
+		for(PaintStats stats:paintStats) {
+			text.append(String.format("%s: p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, %d paints/s, %d notes/paint\n",
+				stats.getName(),
+				stats.getPaintMicros(50) / 1000.0,
+				stats.getPaintMicros(90) / 1000.0,
+				stats.getPaintMicros(99) / 1000.0,
+				stats.getPaintsPerSecond(),
+				stats.getAverageNotes()));
+		}
+		text.append("Dropped timer ticks: " + droppedTicks);
+
+		label.setText(text.toString());
+		shell.pack();
+		shell.setLocation(anchor.toDisplay(10, 10));
+	}
+}
@@ -0,0 +1,157 @@
+package view;
+
+import java.util.*;
+import java.util.List;
+
+import model.Note;
+import model.Pitch;
+import model.Song;
+
+import org.eclipse.swt.graphics.RGB;
+
+/**
+ * Paints the keyboard of a piano which can highlight notes in different colors.
+ */
+public class PianoPainter {
+	// Properties to adjust the proportions of the keyboard.
+	private final int topMargin = 10;
+	private final int keyWidth = 18;
+	private final int keyHeight = 90;
+	private final int blackKeyHeight = 50;
+	private final int blackMargin = 5;
+	private final int borderWidth = 9;
+	private final int nWhiteKeys = 52;
+	
+	private List<Note> selectedNotes = new ArrayList<Note>();
+	private Set<Pitch> playerPitches = new HashSet<Pitch>();
+	private Song song;
+	
+	private Colors colors;
+	
+	public PianoPainter(Colors colors) {
+		this.colors = colors;
+	}
+	
+	/**
+	 * Draw the keyboard, centered within a width.
+	 */
+	public void paint(Renderer renderer, int totalWidth) {
+		RGB white = colors.getWhite();
+		RGB black = colors.getBlack();
+		RGB grey30 = colors.getGrey30();
+		RGB grey50 = colors.getGrey50();
+		RGB grey80 = colors.getGrey80();
+		RGB grey120 = colors.getGrey120();
+
+		// Calculate left margin to center the keyboard.
+		int clientWidth = nWhiteKeys * keyWidth + 10;
+		int leftMargin = (totalWidth - clientWidth - 20) / 2 + 5;
+		
+		Pitch pitch;
+		
+		pitch = Pitch.valueOf("a0");
+
+		// Draw the border of the keyboard.
+		renderer.setBackground(grey30);
+		renderer.fillRectangle(leftMargin - borderWidth, topMargin - borderWidth - 1, nWhiteKeys * keyWidth + borderWidth * 2 + 1, keyHeight + borderWidth + 2);
+		
+		// Draw a gradient above the keyboard.
+		renderer.setBackground(grey30);
+		renderer.setForeground(grey120);
+		renderer.fillGradientRectangle(leftMargin - borderWidth + 1, topMargin - borderWidth, nWhiteKeys * keyWidth + borderWidth * 2 - 1, topMargin, true);
+		
+		// Draw every white key.
+		for(int x = 0; x < nWhiteKeys; x++) {
+			RGB selected = getSelectedColor(pitch);
+
+			// Draw rectangle for the key.
+			renderer.setForeground(black);
+			renderer.setBackground((selected != null) ? selected : white);
+			renderer.fillRectangle(leftMargin + keyWidth * x, topMargin, keyWidth, keyHeight);
+			renderer.drawRectangle(leftMargin + keyWidth * x, topMargin, keyWidth, keyHeight);
+			
+			// Get the pitch of the next white key.
+			pitch = pitch.nextSemitone();
+			// Add an extra semitone except between B/C and E/F.
+			if(x % 7 != 1 && x % 7 != 4) {
+				pitch = pitch.nextSemitone();
+			}
+		}
+		
+		pitch = Pitch.valueOf("a#0");
+		
+		// Draw every black key.
+		for(int x = 0; x < nWhiteKeys - 1; x++) {
+			// Skip a black key between B/C and E/F.
+			if(x % 7 == 1 || x % 7 == 4) {
+				pitch = pitch.nextSemitone();
+				continue;
+			}
+			
+			RGB selected = getSelectedColor(pitch);
+			
+			int left = leftMargin + keyWidth * x + keyWidth / 2 + blackMargin;
+			int width = keyWidth - blackMargin * 2 + 1;
+			
+			// Draw rectangle for this key.
+			renderer.setForeground(black);
+			renderer.setBackground((selected != null) ? selected : black);
+			renderer.fillRectangle(left, topMargin, width, blackKeyHeight);
+			renderer.drawRectangle(left, topMargin, width, blackKeyHeight);
+			
+			if(selected == null) {
+				// Add a lower highlight to the key.
+				renderer.setBackground(grey50);
+				renderer.fillRectangle(left + 1, topMargin + blackKeyHeight - 5, width - 1, 5);
+				renderer.setForeground(grey80);
+				renderer.drawLine(left + 1, topMargin + blackKeyHeight - 5, left + width - 1, topMargin + blackKeyHeight - 5);
+			}
+			
+			// Get the pitch of the next black key.
+			pitch = pitch.nextSemitone();
+			pitch = pitch.nextSemitone();
+		}
+	}
+	
+	/**
+	 * Returns the color to display a pitch if it is currently selected, or null if it isn't.
+	 */
+	private RGB getSelectedColor(Pitch pitch) {
+		for(Pitch playerPitch:playerPitches) {
+			if(playerPitch.equals(pitch)) {
+				return colors.getRed();
+			}
+		}
+		for(Note note:selectedNotes) {
+			if(song.isActive(note.getTrack()) && note.getPitch().equals(pitch)) {
+				return colors.getNoteColor(note);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the total height needed to display the keyboard.
+	 */
+	public int getTotalHeight() {
+		return topMargin + keyHeight;
+	}
+
+	/**
+	 * Sets the selected notes.
+	 */
+	public void setSelectedNotes(Set<Note> notes) {
+		selectedNotes = new ArrayList<Note>();
+		for(Note note:notes) {
+			selectedNotes.add(new Note(note));
+		}
+	}
+
+	public void setSong(Song song) {
+		this.song = song;
+	}
+
+	public void setPlayerPitches(Set<Pitch> playerPitches) {
+		this.playerPitches = new HashSet<Pitch>(playerPitches);
+	}
+}
@@ -0,0 +1,70 @@
+package view;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.RGB;
+
+/**
+ * The drawing operations used to paint the views, so that they can be drawn on screen with an SWT GC, or
+ * into an image with Java2D where there is no display, such as for benchmarks and pixel snapshots.
+ *
+ * The operations work as they do on an SWT GC. Rectangles are drawn with their outline one pixel larger
+ * than they're filled, lines include both end points, and text is drawn below its position with a
+ * transparent background.
+ */
+public interface Renderer {
+	void setForeground(RGB color);
+	
+	void setBackground(RGB color);
+	
+	void drawLine(int x1, int y1, int x2, int y2);
+	
+	void drawRectangle(int x, int y, int width, int height);
+	
+	void fillRectangle(int x, int y, int width, int height);
+	
+	/**
+	 * Fills a polygon in the background color, with the points as x and y pairs.
+	 */
+	void fillPolygon(int[] points);
+	
+	/**
+	 * Fills a rectangle with a gradient from the foreground color to the background color.
+	 */
+	void fillGradientRectangle(int x, int y, int width, int height, boolean vertical);
+	
+	/**
+	 * Draws text in the foreground color, with its top left corner at a position.
+	 */
+	void drawText(String text, int x, int y);
+	
+	/**
+	 * Returns the height of a line of text in the current font.
+	 */
+	int getTextHeight();
+	
+	/**
+	 * Sets the font to draw text with, from its name and height in points.
+	 */
+	void setFont(String name, int height, boolean bold);
+	
+	/**
+	 * Sets the font back to the one text is drawn with by default.
+	 */
+	void setDefaultFont();
+	
+	/**
+	 * Limits drawing to a rectangle.
+	 */
+	void setClipping(int x, int y, int width, int height);
+	
+	/**
+	 * Draws an image with its top left corner at a position, blending it using its alpha data if it has any.
+	 * The image may be kept to be drawn again, so its data mustn't change afterwards.
+	 */
+	void drawImage(ImageData image, int x, int y);
+	
+	/**
+	 * Draws an image like drawImage(), without keeping it, for image data that is reused for each paint.
+	 */
+	void drawChangingImage(ImageData image, int x, int y);
+}
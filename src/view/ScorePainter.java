@@ -0,0 +1,301 @@
+package view;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+import org.apache.batik.transcoder.image.PNGTranscoder;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.ImageLoader;
+
+import model.IntList;
+import model.KeySignature;
+import model.MetaTimeline;
+import model.MidiFile;
+import model.NoteStore;
+import model.Pitch;
+import model.Song;
+import model.TimeSignature;
+
+/**
+ * Paints a grand staff with the notes after the current position.
+ */
+public class ScorePainter {
+	// Number of points around the outline of a note head.
+	private static final int NOTE_HEAD_POINTS = 16;
+	
+	private Colors colors;
+	
+	private int scale;
+	
+	private int staffMargin = 15;
+	private int lineSpacing = 7;
+	private int staffStart = 30;
+	private int staffSpacing = 20;
+	
+	private Pitch middleC = Pitch.valueOf("C4");
+	
+	private MidiFile midiFile;
+	private Song song;
+	private int position;
+	
+	// Number of notes drawn by the last paint.
+	private int notesDrawn;
+	
+	private ImageData trebleClefImage;
+	private ImageData bassClefImage;
+	
+	// Outline of a note head relative to its center, as x and y pairs, and the outline of the note being drawn.
+	private int[] noteHeadPoints;
+	private int[] notePoints;
+
+	public ScorePainter(Colors colors) {
+		this.colors = colors;
+		this.noteHeadPoints = createNoteHeadPoints();
+		this.notePoints = new int[noteHeadPoints.length];
+		
+		trebleClefImage = loadSvg("/score/treble.svg", 50);
+		bassClefImage = loadSvg("/score/bass.svg", 30);
+	}
+	
+	/**
+	 * Draws the staff and the notes after the current position, across a width.
+	 */
+	public void paint(Renderer renderer, int totalWidth) {
+		notesDrawn = 0;
+		
+		renderer.setBackground(colors.getWhite());
+		renderer.setForeground(colors.getBlack());
+		renderer.fillRectangle(0, 0, totalWidth, getTotalHeight() - 5);
+		renderer.drawRectangle(0, 0, totalWidth - 1, getTotalHeight() - 5);
+		renderer.setClipping(0, 0, totalWidth, getTotalHeight() - 5);
+		
+		renderer.setForeground(colors.getBlack());
+		
+		int y = staffStart;
+		
+		for(int i = 0; i < 5; i++) {
+			renderer.drawLine(staffMargin, y, totalWidth - staffMargin, y);
+			y += lineSpacing;
+		}
+		
+		y += staffSpacing;
+		
+		for(int i = 0; i < 5; i++) {
+			renderer.drawLine(staffMargin, y, totalWidth - staffMargin, y);
+			y += lineSpacing;
+		}
+		
+		renderer.drawLine(staffMargin, staffStart, staffMargin, y - lineSpacing);
+		renderer.drawLine(totalWidth - staffMargin, staffStart, totalWidth - staffMargin, y - lineSpacing);
+		
+		if(midiFile != null) {
+			// Draw time signatures.
+			drawTimeSignature(renderer, staffMargin + 55, staffStart);
+			drawTimeSignature(renderer, staffMargin + 55, staffStart + lineSpacing * 5 + staffSpacing);
+
+			// Draw bar lines within the visible ticks.
+			int startTick = position + staffMargin * scale / 2;
+			int endTick = Math.min(position + (totalWidth - staffMargin * 2 - 85) * scale / 2, midiFile.getTotalTime() - 1);
+			IntList barLines = midiFile.getMeterMap().getBarLines(Math.max(1, startTick), endTick);
+			for(int i = 0; i < barLines.size(); i++) {
+				int x2 = (barLines.get(i) - position) * 2 / scale;
+				
+				x2 += 80;
+				if(x2 < staffMargin + 80) continue;
+				if(x2 > totalWidth - staffMargin * 2 - 5) continue;
+				
+				renderer.drawLine(x2, staffStart, x2, staffStart + 9 * lineSpacing + staffSpacing);
+			}
+			
+			// Draw markers above the staff, and lyrics below it.
+			drawMetaText(renderer, MetaTimeline.MARKER, position, endTick, 5);
+			drawMetaText(renderer, MetaTimeline.LYRIC, position, endTick, staffStart + 9 * lineSpacing + staffSpacing + 4);
+			
+			// Draw the name of the key at the current position.
+			KeySignature keySignature = midiFile.getMetaEvents().getKeySignature(position);
+			if(keySignature != null) {
+				renderer.drawText(keySignature.getName(), staffMargin, 5);
+			}
+		
+			NoteStore notes = midiFile.getNotes();
+			
+			// Draw note heads.
+			for(int i = 0; i < notes.size(); i++) {
+				if(!song.isActive(notes.getTrack(i))) continue;
+				
+				int x = notes.getStartTime(i) - position;
+				
+				x *= 2;
+				x /= scale;
+				
+				x += 80;
+				if(x < 80) continue;
+				// Notes are sorted by start time, so the rest are off the right of the staff too.
+				if(x > totalWidth - staffMargin * 2 - 5) break;
+				
+				drawNote(renderer, staffMargin + x, Pitch.valueOf(notes.getMidiNumber(i)));
+				notesDrawn++;
+			}
+		}
+		
+		// Draw clefs.
+		renderer.drawImage(trebleClefImage, staffMargin + 10, staffStart - 10);
+		renderer.drawImage(bassClefImage, staffMargin + 9, staffStart + lineSpacing * 5 + staffSpacing - 2);
+	}
+	
+	/**
+	 * Draws the text of the meta events of a type that are within the visible ticks.
+	 */
+	private void drawMetaText(Renderer renderer, int type, int startTick, int endTick, int y) {
+		MetaTimeline metaEvents = midiFile.getMetaEvents();
+		IntList events = metaEvents.getEvents(startTick, endTick, type);
+		for(int i = 0; i < events.size(); i++) {
+			int event = events.get(i);
+			int x = (metaEvents.getTick(event) - position) * 2 / scale + 80;
+			
+			renderer.drawText(metaEvents.getText(event), staffMargin + x, y);
+		}
+	}
+	
+	/**
+	 * Draws the time signature at the current position.
+	 */
+	private void drawTimeSignature(Renderer renderer, int x, int y) {
+		TimeSignature timeSignature = midiFile.getMeterMap().getTimeSignature(position);
+		
+		String numerator = String.valueOf(timeSignature.getNumerator());
+		String denominator = String.valueOf(timeSignature.getDenominator());
+		
+		renderer.setFont("Times", 16, true);
+		renderer.drawText(numerator, x, y);
+		renderer.drawText(denominator, x, y + 13);
+		
+		renderer.setDefaultFont();
+	}
+
+	/**
+	 * Draw a note with a head, accidentals, and ledger lines.
+	 */
+	private void drawNote(Renderer renderer, int x, Pitch pitch) {
+		// Set initial position to middle C.
+		int noteHeadY = staffStart + lineSpacing * 5;
+		
+		if(pitch.isAbove(middleC.nextSemitone())) {
+			int steps = pitch.getStaffPosition();
+			
+			// Adjust note position.
+			noteHeadY -= (lineSpacing * steps) / 2;
+			
+			// Add ledger lines above treble staff.
+			for(int y = staffStart; y >= noteHeadY; y -= lineSpacing) {
+				renderer.drawLine(x - 6, y, x + 6, y);
+			}
+		} else if(pitch.equals(middleC) || pitch.equals(middleC.nextSemitone())) {
+			// Add ledger line for middle C / C#.
+			renderer.drawLine(x - 6, noteHeadY, x + 6, noteHeadY);
+		} else {
+			int steps = pitch.getStaffPosition();
+			
+			// Adjust for gap between staffs.
+			noteHeadY += staffSpacing - lineSpacing;
+			
+			// Adjust note position.
+			noteHeadY -= (lineSpacing * steps) / 2;
+			
+			// Add ledger lines below bass staff.
+			for(int y = staffStart + lineSpacing * 10 + staffSpacing; y <= noteHeadY; y += lineSpacing) {
+				renderer.drawLine(x - 6, y, x + 6, y);
+			}
+		}
+		
+		// Draw note head.
+		for(int i = 0; i < notePoints.length; i += 2) {
+			notePoints[i] = x + noteHeadPoints[i];
+			notePoints[i + 1] = noteHeadY + noteHeadPoints[i + 1];
+		}
+		renderer.setBackground(colors.getBlack());
+		renderer.fillPolygon(notePoints);
+		
+		// Draw sharp if necessary.
+		if(pitch.isBlackKey()) {
+			renderer.drawText("\u266f", x - 15, noteHeadY - 5);
+		}
+	}
+	
+	/**
+	 * Returns the outline of a note head, as an ellipse tilted up to the right.
+	 */
+	private int[] createNoteHeadPoints() {
+		double r = lineSpacing - 3;
+		double angle = Math.toRadians(35);
+		
+		int[] points = new int[NOTE_HEAD_POINTS * 2];
+		for(int i = 0; i < NOTE_HEAD_POINTS; i++) {
+			double theta = 2 * Math.PI * i / NOTE_HEAD_POINTS;
+			
+			// Stretch the ellipse vertically, then rotate it.
+			double x = r * Math.cos(theta);
+			double y = 1.2 * (r - 1.5) * Math.sin(theta);
+			
+			points[i * 2] = (int)Math.round(x * Math.cos(angle) + y * Math.sin(angle));
+			points[i * 2 + 1] = (int)Math.round(-x * Math.sin(angle) + y * Math.cos(angle));
+		}
+		return points;
+	}
+	
+	private ImageData loadSvg(String name, int height) {
+		PNGTranscoder transcoder = new PNGTranscoder();
+		transcoder.addTranscodingHint(PNGTranscoder.KEY_HEIGHT, new Float(height));
+		
+		TranscoderInput input = new TranscoderInput(getResource(name));
+		
+		try {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			
+			TranscoderOutput output = new TranscoderOutput(outputStream);
+			
+			transcoder.transcode(input, output);
+			
+			InputStream inputStream = new ByteArrayInputStream(outputStream.toByteArray());
+			
+			return new ImageLoader().load(inputStream)[0];
+		} catch (TranscoderException e) {
+			throw new RuntimeException("Error loading SVG file: " + name, e);
+		}
+	}
+	
+	private InputStream getResource(String name) {
+		return getClass().getResourceAsStream(name);
+	}
+
+	/**
+	 * Returns the number of notes drawn by the last paint.
+	 */
+	public int getNotesDrawn() {
+		return notesDrawn;
+	}
+
+	public int getTotalHeight() {
+		return staffStart + lineSpacing * 9 + staffSpacing + staffStart;
+	}
+
+	public void setMidiFile(MidiFile midiFile) {
+		this.midiFile = midiFile;
+	}
+	
+	public void setSong(Song song) {
+		this.song = song;
+	}
+
+	public void setPosition(int position) {
+		this.position = position;
+	}
+
+	public void setScale(int scale) {
+		this.scale = scale;
+	}
+}
@@ -4,55 +4,94 @@ import java.util.*;
 
 import model.MidiFile;
 import model.Note;
+import model.Song;
 
 import org.eclipse.swt.SWT;
-import org.eclipse.swt.custom.ScrolledComposite;
-import org.eclipse.swt.events.ControlEvent;
-import org.eclipse.swt.events.ControlListener;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Listener;
 
+import controller.NoteClickedHandler;
 import controller.PositionChangedHandler;
 
 /**
- * A canvas that display a NotesCanvas inside a scrollable control.
- * Updates the NotesCanvas when the window is resized. Calls a callback when the canvas is scrolled.
+ * A canvas that display a NotesCanvas with a scroll bar, and a Minimap of the whole file beside it that can
+ * be clicked to move there. Calls a callback when the canvas is scrolled, and when a note is clicked.
+ *
+ * The position is the number of ticks from the beginning at the bottom of the canvas. The NotesCanvas is
+ * only as large as the visible area and draws whichever part of the file is at the position, so scrolling
+ * doesn't depend on the length of the file.
  */
 public class ScrolledNotesCanvas {
-	private ScrolledComposite scrolledComposite;
+	private static final int MINIMAP_WIDTH = 40;
+	
+	// Pixels of the previous page that are still shown after paging forward or back.
+	private static final int PAGE_OVERLAP = 40;
+	
+	private Composite composite;
 	private NotesCanvas notesCanvas;
+	private Minimap minimap;
 	
 	private List<PositionChangedHandler> positionChangeHandlers = new ArrayList<PositionChangedHandler>();
+	private List<NoteClickedHandler> noteClickedHandlers = new ArrayList<NoteClickedHandler>();
 	
 	public ScrolledNotesCanvas(Composite parent, Colors colors) {
-		scrolledComposite = new ScrolledComposite(parent, SWT.V_SCROLL);
-		this.notesCanvas = new NotesCanvas(scrolledComposite, colors);
-		scrolledComposite.setContent(notesCanvas.getWidget());
+		this.composite = new Composite(parent, SWT.NONE);
+		GridLayout gridLayout = new GridLayout(2, false);
+		gridLayout.marginWidth = 0;
+		gridLayout.marginHeight = 0;
+		gridLayout.horizontalSpacing = 0;
+		composite.setLayout(gridLayout);
 		
-		// Increase speed that the scroll arrow scrolls.
-		scrolledComposite.getVerticalBar().setIncrement(5);
+		this.notesCanvas = new NotesCanvas(composite, colors);
+		notesCanvas.getWidget().setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
 		
-		// Call the positionChangedHandlers with the new position when the canvas is scrolled.
-		notesCanvas.getWidget().addControlListener(new ControlListener() {
-			public void controlResized(ControlEvent event) {
+		this.minimap = new Minimap(composite, colors);
+		GridData minimapGridData = new GridData(SWT.FILL, SWT.FILL, false, true);
+		minimapGridData.widthHint = MINIMAP_WIDTH;
+		minimap.getWidget().setLayoutData(minimapGridData);
+		
+		// Keep the box on the minimap around the visible notes when the canvas is resized.
+		notesCanvas.getWidget().addListener(SWT.Resize, new Listener() {
+			public void handleEvent(Event event) {
+				updateMinimap();
 			}
-			
-			public void controlMoved(ControlEvent event) {
-				int newPosition = getPosition();
-				for(PositionChangedHandler positionChangedHandler:positionChangeHandlers) {
-					positionChangedHandler.positionChanged(newPosition);
+		});
+		
+		// Move to the position clicked or dragged to on the minimap, centering it in the canvas.
+		Listener seekListener = new Listener() {
+			public void handleEvent(Event event) {
+				if(event.type == SWT.MouseDown && event.button != 1) return;
+				if(event.type == SWT.MouseMove && (event.stateMask & SWT.BUTTON1) == 0) return;
+				
+				scrollToTicks(minimap.getTicksAt(event.y) - notesCanvas.getVisibleTicks() / 2);
+			}
+		};
+		minimap.getWidget().addListener(SWT.MouseDown, seekListener);
+		minimap.getWidget().addListener(SWT.MouseMove, seekListener);
+		
+		// Pass on clicks on a note, or move the position clicked to the bottom of the canvas.
+		notesCanvas.getWidget().addListener(SWT.MouseDown, new Listener() {
+			public void handleEvent(Event event) {
+				if(event.button != 1) return;
+				
+				Note note = notesCanvas.getNoteAt(event.x, event.y);
+				if(note != null) {
+					for(NoteClickedHandler noteClickedHandler:noteClickedHandlers) {
+						noteClickedHandler.noteClicked(note);
+					}
+				} else {
+					scrollToTicks(notesCanvas.getTicksAt(event.y));
 				}
 			}
 		});
 		
-		// Update the notesCanvas's width and height when the scrolledComposite is resized.
-		scrolledComposite.addControlListener(new ControlListener() {
-			public void controlResized(ControlEvent event) {
-				notesCanvas.setVisibleWidth(getWidget().getBounds().width);
-				notesCanvas.setVisibleHeight(getWidget().getBounds().height);
-			}
-			
-			public void controlMoved(ControlEvent event) {
+		// Scroll to the position of the scroll bar when it's moved.
+		notesCanvas.getWidget().getVerticalBar().addListener(SWT.Selection, new Listener() {
+			public void handleEvent(Event event) {
+				scrollToTicks(notesCanvas.getScrollBarTicks());
 			}
 		});
 	}
@@ -64,11 +103,25 @@ public class ScrolledNotesCanvas {
 		positionChangeHandlers.add(positionChangedHandler);
 	}
 	
+	/**
+	 * Adds a noteClickedHandler. This will be notified with the note when a note is clicked.
+	 */
+	public void addNoteClickedHandler(NoteClickedHandler noteClickedHandler) {
+		noteClickedHandlers.add(noteClickedHandler);
+	}
+	
+	/**
+	 * Returns the statistics of the paints of the notes canvas.
+	 */
+	public PaintStats getPaintStats() {
+		return notesCanvas.getPaintStats();
+	}
+	
 	/**
 	 * Returns the main widget for this control.
 	 */
 	public Composite getWidget() {
-		return scrolledComposite;
+		return composite;
 	}
 
 	/**
@@ -76,7 +129,23 @@ public class ScrolledNotesCanvas {
 	 */
 	public void setMidiFile(MidiFile file) {
 		notesCanvas.setMidiFile(file);
-		scrollToBeginning();
+		notesCanvas.setTicks(0);
+		minimap.setMidiFile(file);
+		firePositionChanged();
+	}
+	
+	public void setSong(Song song) {
+		notesCanvas.setSong(song);
+		minimap.setSong(song);
+	}
+	
+	/**
+	 * Replaces the displayed file with a more complete version of it, keeping the current position.
+	 */
+	public void replaceMidiFile(MidiFile file) {
+		notesCanvas.setMidiFile(file);
+		minimap.setMidiFile(file);
+		firePositionChanged();
 	}
 	
 	/**
@@ -94,84 +163,107 @@ public class ScrolledNotesCanvas {
 	}
 	
 	/**
-	 * Returns the currently display position of the note canvas.
+	 * Returns the currently displayed position of the note canvas, in ticks from the beginning.
 	 */
 	public int getPosition() {
-		return -notesCanvas.getWidget().getBounds().y + scrolledComposite.getBounds().height;
+		return notesCanvas.getTicks();
 	}
 	
 	/**
-	 * Scrolls to the bottom of the canvas.
+	 * Scrolls to the beginning of the file.
 	 */
 	public void scrollToBeginning() {
-		scrolledComposite.getDisplay().asyncExec(new Runnable() {
-			public void run() {
-				scrolledComposite.setOrigin(0, notesCanvas.getTotalHeight() - scrolledComposite.getBounds().height);
-			}
-		});
+		scrollToTicks(0);
 	}
 	
 	/**
-	 * Sets the vertical scaling to be used on the notes.
+	 * Sets the vertical scaling to be used on the notes, keeping the notes at the bottom of the canvas in place.
 	 */
-	public void setScale(final int scale) {
-		/*
-		Composite w = notesCanvas.getWidget();
-		final double y = ((double)w.getBounds().y) * (double)notesCanvas.getScale();
-		*/
-		
+	public void setScale(int scale) {
+		int oldPosition = getPosition();
+		notesCanvas.setScale(scale);
+		scaleChanged(oldPosition);
+	}
+	
+	/**
+	 * Sets the vertical scaling to be used on the notes, keeping the notes at a position on the canvas in place,
+	 * such as the position of the mouse.
+	 */
+	public void setScale(int scale, int y) {
+		int oldPosition = getPosition();
+		int anchorTicks = notesCanvas.getTicksAt(y);
 		notesCanvas.setScale(scale);
-		scrollToBeginning();
 		
-		/*
-		Display.getCurrent().asyncExec(new Runnable() {
-			public void run() {
-				double newy = -((y / notesCanvas.getScale()));
-				System.out.println(newy);
-				scrolledComposite.setOrigin(0, (int)(newy));
-			}
-		});
-		*/
+		// Move so that the anchor is at the same position, now that each pixel has a different number of ticks.
+		int ticksBelowAnchor = notesCanvas.getTicksAt(y) - notesCanvas.getTicks();
+		notesCanvas.setTicks(clampTicks(anchorTicks - ticksBelowAnchor));
+		scaleChanged(oldPosition);
+	}
+	
+	/**
+	 * Notifies the handlers if the position was moved by changing the scale.
+	 */
+	private void scaleChanged(int oldPosition) {
+		if(getPosition() != oldPosition) {
+			firePositionChanged();
+		} else {
+			updateMinimap();
+		}
 	}
 	
 	/**
-	 * Scrolls a small step forward through the notes display.
+	 * Scrolls so that the current position is a number of ticks from the beginning.
 	 */
-	public void scrollForward() {
-		scroll(-12);
+	public void scrollToTicks(int ticks) {
+		if(notesCanvas.getWidget().isDisposed()) return;
+		
+		int newTicks = clampTicks(ticks);
+		if(newTicks == notesCanvas.getTicks()) return;
+		
+		notesCanvas.setTicks(newTicks);
+		firePositionChanged();
+	}
+	
+	/**
+	 * Returns the nearest number of ticks that can be scrolled to.
+	 */
+	private int clampTicks(int ticks) {
+		return Math.max(0, Math.min(ticks, notesCanvas.getMaxTicks()));
 	}
 	
 	public void pageForward() {
-		scroll(-2000);
+		scrollToTicks(getPosition() + getPageTicks());
 	}
 	
 	public void pageBackward() {
-		scroll(2000);
+		scrollToTicks(getPosition() - getPageTicks());
 	}
 	
-	private void scroll(int dy) {
-		if(scrolledComposite.isDisposed()) return;
-		
-		int y = -notesCanvas.getWidget().getBounds().y;
+	/**
+	 * Returns the number of ticks in a page: the height of the canvas less PAGE_OVERLAP, so that a page
+	 * is the same number of pixels at any scale.
+	 */
+	private int getPageTicks() {
+		int scale = notesCanvas.getScale();
+		return Math.max(scale, notesCanvas.getVisibleTicks() - PAGE_OVERLAP * scale);
+	}
+	
+	private void firePositionChanged() {
+		updateMinimap();
 		
-		scrolledComposite.setOrigin(0, y + dy / notesCanvas.getScale());
+		int newPosition = getPosition();
+		for(PositionChangedHandler positionChangedHandler:positionChangeHandlers) {
+			positionChangedHandler.positionChanged(newPosition);
+		}
 	}
-
-	public void scrollToPosition(final int position) {
-		scrolledComposite.getDisplay().asyncExec(new Runnable() {
-			public void run() {
-				scrolledComposite.setOrigin(0, position - scrolledComposite.getBounds().height);
-			}
-		});
+	
+	private void updateMinimap() {
+		minimap.setPosition(notesCanvas.getTicks(), notesCanvas.getVisibleTicks());
 	}
 	
 	public void redraw() {
 		notesCanvas.getWidget().redraw();
 	}
-
-	public int getTicksFromBeginning(int position) {
-		return notesCanvas.getTicksFromBeginning(position);
-	}
 	
 	public void addListener(int eventType, Listener listener) {
 		notesCanvas.getWidget().addListener(eventType, listener);
@@ -180,4 +272,4 @@ public class ScrolledNotesCanvas {
 	public void setRepeats(List<Integer> repeats) {
 		notesCanvas.setRepeats(repeats);
 	}
-}
\ No newline at end of file
+}
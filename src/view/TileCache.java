@@ -0,0 +1,66 @@
+package view;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.Rectangle;
+
+/**
+ * A cache of offscreen images, limited to a number of bytes. When the limit is reached, the least
+ * recently used images are disposed.
+ */
+class TileCache {
+	private long maxBytes;
+	private long bytes = 0;
+	private LinkedHashMap<Object, Image> images = new LinkedHashMap<Object, Image>(16, 0.75f, true);
+
+	public TileCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the image for a key, or null if it isn't cached.
+	 */
+	public Image get(Object key) {
+		return images.get(key);
+	}
+
+	/**
+	 * Adds an image, which is disposed by the cache once it's removed.
+	 */
+	public void put(Object key, Image image) {
+		Image old = images.put(key, image);
+		if(old != null) {
+			bytes -= getBytes(old);
+			old.dispose();
+		}
+		bytes += getBytes(image);
+
+		// Remove the least recently used images, but always keep the newest.
+		Iterator<Map.Entry<Object, Image>> iterator = images.entrySet().iterator();
+		while(bytes > maxBytes && images.size() > 1) {
+			Image eldest = iterator.next().getValue();
+			iterator.remove();
+			bytes -= getBytes(eldest);
+			eldest.dispose();
+		}
+	}
+
+	/**
+	 * Removes and disposes every image.
+	 */
+	public void clear() {
+		for(Image image:images.values()) {
+			image.dispose();
+		}
+		images.clear();
+		bytes = 0;
+	}
+
+	private static long getBytes(Image image) {
+		Rectangle bounds = image.getBounds();
+		return (long)bounds.width * bounds.height * 4;
+	}
+}
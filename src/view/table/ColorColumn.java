@@ -2,6 +2,7 @@ package view.table;
 
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.RGB;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
 
@@ -28,7 +29,7 @@ public abstract class ColorColumn<T> extends Column<T> {
 		Display display = event.display;
 
 		Color grey = new Color(display, 170, 170, 170);
-		Color color = getColor(row);
+		Color color = new Color(display, getColor(row));
 		
 		// Draw checkbox square.
 		gc.setBackground(color);
@@ -37,7 +38,8 @@ public abstract class ColorColumn<T> extends Column<T> {
 		gc.drawRectangle(x + 4, y + 4, 12, 12);
 
 		grey.dispose();
+		color.dispose();
 	}
 
-	public abstract Color getColor(T row);
+	public abstract RGB getColor(T row);
 }
\ No newline at end of file
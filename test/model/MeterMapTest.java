@@ -0,0 +1,139 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MeterMapTest {
+	private static IntList intList(int... values) {
+		IntList list = new IntList();
+		for(int value:values) {
+			list.add(value);
+		}
+		return list;
+	}
+
+	private static List<Integer> toList(IntList values) {
+		List<Integer> list = new ArrayList<Integer>();
+		for(int i = 0; i < values.size(); i++) {
+			list.add(values.get(i));
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the bar lines from startTick to endTick by stepping bar by bar from the beginning, starting a
+	 * new bar at each change.
+	 */
+	private static List<Integer> stepBarLines(int resolution, int[] changeTicks, int[] numerators, int[] denominators, int startTick, int endTick) {
+		List<Integer> lines = new ArrayList<Integer>();
+		int tick = 0;
+		int change = 0;
+		int barLength = resolution * 4;
+		while(tick <= endTick) {
+			if(change < changeTicks.length && changeTicks[change] <= tick) {
+				tick = changeTicks[change];
+				barLength = resolution * 4 / denominators[change] * numerators[change];
+				change++;
+			}
+			if(tick >= startTick && tick <= endTick) {
+				lines.add(tick);
+			}
+			tick += barLength;
+			if(change < changeTicks.length && changeTicks[change] < tick) {
+				tick = changeTicks[change];
+			}
+		}
+		return lines;
+	}
+
+	@Test
+	public void defaultMeter() {
+		MeterMap meterMap = new MeterMap(480, new IntList(), new IntList(), new IntList());
+
+		assertEquals(1, meterMap.getSegmentCount());
+		assertEquals(4, meterMap.getTimeSignature(0).getNumerator());
+		assertEquals(4, meterMap.getTimeSignature(0).getDenominator());
+		assertEquals(Arrays.asList(0, 1920, 3840), toList(meterMap.getBarLines(0, 3840)));
+		assertEquals(Arrays.asList(0, 480, 960, 1440, 1920), toList(meterMap.getBeats(0, 1920)));
+	}
+
+	@Test
+	public void barLinesAcrossChanges() {
+		// 4/4 for two bars, 3/4 for two bars, 6/8 for two bars, then 5/4.
+		MeterMap meterMap = new MeterMap(480, intList(3840, 6720, 9600), intList(3, 6, 5), intList(4, 8, 4));
+
+		assertEquals(Arrays.asList(0, 1920, 3840, 5280, 6720, 8160, 9600, 12000),
+			toList(meterMap.getBarLines(0, 12000)));
+		assertEquals(Arrays.asList(5280, 6720, 8160), toList(meterMap.getBarLines(4000, 9000)));
+		assertEquals(Arrays.asList(6720), toList(meterMap.getBarLines(6720, 6720)));
+		assertEquals(0, meterMap.getBarLines(6721, 8159).size());
+
+		assertEquals(3, meterMap.getTimeSignature(6719).getNumerator());
+		assertEquals(6, meterMap.getTimeSignature(6720).getNumerator());
+		assertEquals(8, meterMap.getTimeSignature(6720).getDenominator());
+
+		assertEquals(0, meterMap.getBarNumber(1919));
+		assertEquals(2, meterMap.getBarNumber(3840));
+		assertEquals(3, meterMap.getBarNumber(6719));
+		assertEquals(6, meterMap.getBarNumber(9600));
+		assertEquals(7, meterMap.getBarNumber(12000));
+	}
+
+	@Test
+	public void changePartWayThroughBar() {
+		// A change to 3/4 a beat into the second bar cuts that bar short, and starts a new bar.
+		MeterMap meterMap = new MeterMap(480, intList(2400), intList(3), intList(4));
+
+		assertEquals(Arrays.asList(0, 1920, 2400, 3840, 5280), toList(meterMap.getBarLines(0, 5280)));
+		assertEquals(1, meterMap.getBarNumber(2399));
+		assertEquals(2, meterMap.getBarNumber(2400));
+		assertEquals(Arrays.asList(1920, 2400, 2880), toList(meterMap.getBeats(1900, 2900)));
+	}
+
+	@Test
+	public void lastChangeAtSameTickIsKept() {
+		MeterMap meterMap = new MeterMap(480, intList(0, 0, 1920, 1920), intList(2, 3, 0, 7), intList(4, 4, 4, 8));
+
+		assertEquals(2, meterMap.getSegmentCount());
+		assertEquals(3, meterMap.getTimeSignature(0).getNumerator());
+		assertEquals(7, meterMap.getTimeSignature(1920).getNumerator());
+		assertEquals(Arrays.asList(0, 1440, 1920, 3600), toList(meterMap.getBarLines(0, 3600)));
+	}
+
+	@Test
+	public void barLinesMatchSteppingThroughBars() {
+		int[] changeTicks = { 960, 2500, 2600, 7777, 12000, 12001, 20000 };
+		int[] numerators = { 3, 5, 2, 7, 4, 1, 12 };
+		int[] denominators = { 4, 8, 2, 16, 4, 4, 8 };
+		MeterMap meterMap = new MeterMap(96, intList(changeTicks), intList(numerators), intList(denominators));
+
+		for(int startTick = 0; startTick < 25000; startTick += 311) {
+			for(int length:new int[] { 0, 50, 1000, 9000 }) {
+				assertEquals("bar lines from " + startTick,
+					stepBarLines(96, changeTicks, numerators, denominators, startTick, startTick + length),
+					toList(meterMap.getBarLines(startTick, startTick + length)));
+			}
+		}
+	}
+
+	@Test
+	public void writeAndRead() {
+		MeterMap meterMap = new MeterMap(480, intList(3840, 6720), intList(3, 6), intList(4, 8));
+
+		ByteBuffer buffer = ByteBuffer.allocate(meterMap.getWriteSize());
+		meterMap.write(buffer);
+		assertEquals(0, buffer.remaining());
+		buffer.flip();
+		MeterMap read = MeterMap.read(buffer, 480);
+
+		assertEquals(meterMap.getSegmentCount(), read.getSegmentCount());
+		assertEquals(toList(meterMap.getBarLines(0, 20000)), toList(read.getBarLines(0, 20000)));
+		assertEquals(toList(meterMap.getBeats(0, 20000)), toList(read.getBeats(0, 20000)));
+	}
+}
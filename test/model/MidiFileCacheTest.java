@@ -0,0 +1,239 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MidiFileCacheTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File directory;
+	private File file;
+	private MidiSource source;
+	private MidiFileCache cache;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = folder.newFolder("cache");
+		file = folder.newFile("song.mid");
+		writeSong(file, 100);
+		source = new MidiSource(file);
+		cache = new MidiFileCache(directory, 1024 * 1024);
+	}
+
+	/**
+	 * Writes a file with two tracks of notes, all with the same velocity.
+	 */
+	private static void writeSong(File file, int velocity) throws Exception {
+		Sequence sequence = new Sequence(Sequence.PPQ, 480);
+		for(int trackNo = 0; trackNo < 2; trackNo++) {
+			Track track = sequence.createTrack();
+			byte[] name = ("Track " + trackNo).getBytes("ascii");
+			track.add(new MidiEvent(new MetaMessage(3, name, name.length), 0));
+			for(int i = 0; i < 50; i++) {
+				track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, trackNo, 48 + i % 24, velocity), i * 240));
+				track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, trackNo, 48 + i % 24, 0), i * 240 + 200));
+			}
+		}
+		MidiSystem.write(sequence, 1, file);
+	}
+
+	/**
+	 * Caches the source file, returning the entry written for it.
+	 */
+	private File putEntry() throws Exception {
+		cache.put(source, new MidiFile(file));
+
+		File[] entries = directory.listFiles();
+		assertEquals(1, entries.length);
+		return entries[0];
+	}
+
+	/**
+	 * Recalculates the checksum at the end of an entry after its contents have been changed.
+	 */
+	private static void updateChecksum(File entry) throws Exception {
+		byte[] bytes = Files.readAllBytes(entry.toPath());
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length - 8);
+		ByteBuffer.wrap(bytes).putLong(bytes.length - 8, crc.getValue());
+		Files.write(entry.toPath(), bytes);
+	}
+
+	private static void assertSameNotes(MidiFile expected, MidiFile actual) {
+		assertEquals(expected.getResolution(), actual.getResolution());
+		assertEquals(expected.getTotalTime(), actual.getTotalTime());
+		assertEquals(expected.getTracks().size(), actual.getTracks().size());
+		for(int i = 0; i < expected.getTracks().size(); i++) {
+			assertEquals(expected.getTracks().get(i).getName(), actual.getTracks().get(i).getName());
+		}
+
+		NoteStore expectedNotes = expected.getNotes();
+		NoteStore actualNotes = actual.getNotes();
+		assertEquals(expectedNotes.size(), actualNotes.size());
+		for(int row = 0; row < expectedNotes.size(); row++) {
+			assertEquals(expectedNotes.getStartTime(row), actualNotes.getStartTime(row));
+			assertEquals(expectedNotes.getEndTime(row), actualNotes.getEndTime(row));
+			assertEquals(expectedNotes.getMidiNumber(row), actualNotes.getMidiNumber(row));
+			assertEquals(expectedNotes.getVelocity(row), actualNotes.getVelocity(row));
+			assertEquals(expectedNotes.getTrackIndex(row), actualNotes.getTrackIndex(row));
+		}
+	}
+
+	@Test
+	public void readsEntry() throws Exception {
+		putEntry();
+
+		MidiFile cached = cache.get(source);
+		assertNotNull(cached);
+		assertSameNotes(new MidiFile(file), cached);
+	}
+
+	@Test
+	public void missingEntry() throws Exception {
+		assertNull(cache.get(source));
+	}
+
+	@Test
+	public void corruptedEntry() throws Exception {
+		File entry = putEntry();
+
+		RandomAccessFile randomAccessFile = new RandomAccessFile(entry, "rw");
+		try {
+			randomAccessFile.seek(entry.length() / 2);
+			int b = randomAccessFile.read();
+			randomAccessFile.seek(entry.length() / 2);
+			randomAccessFile.write(b ^ 0xff);
+		} finally {
+			randomAccessFile.close();
+		}
+
+		assertNull(cache.get(source));
+		assertFalse(entry.exists());
+	}
+
+	@Test
+	public void damagedEntryWithValidChecksum() throws Exception {
+		File entry = putEntry();
+
+		// Give the path stored after the magic number and version an impossible length.
+		RandomAccessFile randomAccessFile = new RandomAccessFile(entry, "rw");
+		try {
+			randomAccessFile.seek(8);
+			randomAccessFile.writeInt(Integer.MAX_VALUE);
+		} finally {
+			randomAccessFile.close();
+		}
+		updateChecksum(entry);
+
+		assertNull(cache.get(source));
+		assertFalse(entry.exists());
+	}
+
+	@Test
+	public void truncatedEntry() throws Exception {
+		File entry = putEntry();
+
+		RandomAccessFile randomAccessFile = new RandomAccessFile(entry, "rw");
+		try {
+			randomAccessFile.setLength(entry.length() / 2);
+		} finally {
+			randomAccessFile.close();
+		}
+
+		assertNull(cache.get(source));
+		assertFalse(entry.exists());
+	}
+
+	@Test
+	public void entryShorterThanHeader() throws Exception {
+		File entry = putEntry();
+
+		RandomAccessFile randomAccessFile = new RandomAccessFile(entry, "rw");
+		try {
+			randomAccessFile.setLength(10);
+		} finally {
+			randomAccessFile.close();
+		}
+
+		assertNull(cache.get(source));
+		assertFalse(entry.exists());
+	}
+
+	@Test
+	public void differentVersion() throws Exception {
+		File entry = putEntry();
+
+		RandomAccessFile randomAccessFile = new RandomAccessFile(entry, "rw");
+		try {
+			randomAccessFile.seek(4);
+			int version = randomAccessFile.readInt();
+			randomAccessFile.seek(4);
+			randomAccessFile.writeInt(version + 1);
+		} finally {
+			randomAccessFile.close();
+		}
+		updateChecksum(entry);
+
+		assertNull(cache.get(source));
+		assertFalse(entry.exists());
+	}
+
+	@Test
+	public void differentChecksum() throws Exception {
+		File entry = putEntry();
+
+		// Change the notes without changing the length or modification time of the file.
+		long lastModified = file.lastModified();
+		long length = file.length();
+		writeSong(file, 90);
+		file.setLastModified(lastModified);
+		assertEquals(length, file.length());
+
+		assertNull(cache.get(source));
+		assertFalse(entry.exists());
+
+		// The changed file is cached again.
+		putEntry();
+		assertSameNotes(new MidiFile(file), cache.get(source));
+	}
+
+	@Test
+	public void differentModificationTime() throws Exception {
+		File entry = putEntry();
+
+		file.setLastModified(file.lastModified() - 60000);
+
+		assertNull(cache.get(source));
+		assertFalse(entry.exists());
+	}
+
+	@Test
+	public void entryLargerThanCache() throws Exception {
+		cache = new MidiFileCache(directory, 100);
+		cache.put(source, new MidiFile(file));
+
+		assertEquals(0, directory.listFiles().length);
+		assertNull(cache.get(source));
+	}
+}
@@ -0,0 +1,115 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class NoteIndexTest {
+	/**
+	 * Returns a store of random notes sorted by start time, with some notes much longer than the rest
+	 * and some starting together.
+	 */
+	private static NoteStore createNotes(int count, boolean mapped, long seed) {
+		Random random = new Random(seed);
+		NoteStore notes = NoteStore.create(count, mapped);
+
+		int start = 0;
+		for(int i = 0; i < count; i++) {
+			if(random.nextInt(3) > 0) {
+				start += random.nextInt(100);
+			}
+			int length = (random.nextInt(20) == 0) ? random.nextInt(20000) : random.nextInt(400);
+
+			int row = notes.add(start, 21 + random.nextInt(88), 1 + random.nextInt(127));
+			notes.setEndTime(row, start + length);
+		}
+		return notes;
+	}
+
+	private static List<Integer> toList(IntList rows) {
+		List<Integer> list = new ArrayList<Integer>();
+		for(int i = 0; i < rows.size(); i++) {
+			list.add(rows.get(i));
+		}
+		return list;
+	}
+
+	private static List<Integer> scanNotesAt(NoteStore notes, int tick) {
+		List<Integer> rows = new ArrayList<Integer>();
+		for(int row = 0; row < notes.size(); row++) {
+			if(notes.getStartTime(row) <= tick && tick < notes.getEndTime(row)) {
+				rows.add(row);
+			}
+		}
+		return rows;
+	}
+
+	private static List<Integer> scanNotesAfter(NoteStore notes, int tick, int granularity) {
+		List<Integer> rows = new ArrayList<Integer>();
+		int start = -1;
+		for(int row = 0; row < notes.size(); row++) {
+			if(notes.getEndTime(row) <= tick) continue;
+
+			if(start == -1) {
+				start = notes.getStartTime(row) / granularity;
+			}
+			if(notes.getStartTime(row) / granularity != start) {
+				break;
+			}
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	private static void checkAgainstScan(NoteStore notes) {
+		NoteIndex index = new NoteIndex(notes);
+		int lastTick = notes.getStartTime(notes.size() - 1) + 25000;
+
+		for(int tick = -10; tick < lastTick; tick += 37) {
+			assertEquals("notes at " + tick, scanNotesAt(notes, tick), toList(index.getNotesAt(tick)));
+			assertEquals("notes after " + tick, scanNotesAfter(notes, tick, 1), toList(index.getNotesAfter(tick, 1)));
+			assertEquals("notes after " + tick, scanNotesAfter(notes, tick, 120), toList(index.getNotesAfter(tick, 120)));
+		}
+	}
+
+	@Test
+	public void matchesScan() {
+		checkAgainstScan(createNotes(5000, false, 1));
+	}
+
+	@Test
+	public void matchesScanForMappedNotes() {
+		NoteStore notes = createNotes(5000, true, 2);
+		try {
+			checkAgainstScan(notes);
+		} finally {
+			notes.release();
+		}
+	}
+
+	@Test
+	public void matchesScanForSizesAroundPowersOfTwo() {
+		for(int count:new int[] { 1, 2, 3, 63, 64, 65, 127, 128, 129 }) {
+			checkAgainstScan(createNotes(count, false, count));
+
+			NoteStore notes = createNotes(count, true, count);
+			try {
+				checkAgainstScan(notes);
+			} finally {
+				notes.release();
+			}
+		}
+	}
+
+	@Test
+	public void emptyStore() {
+		NoteIndex index = new NoteIndex(NoteStore.create(0, false));
+
+		assertEquals(0, index.getNotesAt(0).size());
+		assertEquals(0, index.getNotesAfter(0, 1).size());
+	}
+}
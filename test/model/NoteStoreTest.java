@@ -0,0 +1,54 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class NoteStoreTest {
+	// A track index that doesn't fit in a signed short.
+	private static final int TRACK = 40000;
+
+	private static NoteStore createNote(boolean mapped) {
+		NoteStore notes = NoteStore.create(1, mapped);
+		notes.setSize(1);
+		notes.setRow(0, 10, 20, 60, 100, TRACK);
+		return notes;
+	}
+
+	private static List<MidiTrack> createTracks(int count) {
+		List<MidiTrack> tracks = new ArrayList<MidiTrack>();
+		for(int i = 0; i < count; i++) {
+			tracks.add(new MidiTrack(i));
+		}
+		return tracks;
+	}
+
+	@Test
+	public void largeTrackIndex() {
+		NoteStore arrayNotes = createNote(false);
+		assertEquals(TRACK, arrayNotes.getTrackIndex(0));
+
+		NoteStore mappedNotes = createNote(true);
+		assertEquals(TRACK, mappedNotes.getTrackIndex(0));
+		mappedNotes.release();
+	}
+
+	@Test
+	public void largeTrackIndexReadBack() {
+		NoteStore notes = createNote(false);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(notes.getWriteSize());
+		notes.write(buffer);
+		buffer.flip();
+
+		NoteStore readNotes = NoteStore.read(buffer.duplicate(), createTracks(TRACK + 1));
+		assertEquals(TRACK, readNotes.getTrackIndex(0));
+
+		buffer.getInt();
+		NoteStore mappedNotes = new MappedNoteStore(buffer.slice(), 1);
+		assertEquals(TRACK, mappedNotes.getTrackIndex(0));
+	}
+}
@@ -0,0 +1,241 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import org.junit.Test;
+
+public class SmfReaderTest {
+	/**
+	 * Records the events of a track as strings, in the order they're decoded.
+	 */
+	private static class EventRecorder implements TrackHandler {
+		private List<String> events = new ArrayList<String>();
+
+		public void noteOn(int tick, int channel, int pitch, int velocity) {
+			events.add(tick + " on " + channel + " " + pitch + " " + velocity);
+		}
+
+		public void noteOff(int tick, int channel, int pitch) {
+			events.add(tick + " off " + channel + " " + pitch);
+		}
+
+		public void controlEvent(int tick, int channel, int command, int data1, int data2) {
+			events.add(tick + " control " + channel + " " + Integer.toHexString(command) + " " + data1 + " " + data2);
+		}
+
+		public void metaEvent(int tick, int type, byte[] data) {
+			events.add(tick + " meta " + Integer.toHexString(type) + " " + Arrays.toString(data));
+		}
+	}
+
+	/**
+	 * Returns a format 1 midi file with a resolution of 480 and a track chunk for each track's events.
+	 */
+	private static byte[] createFile(int[]... tracks) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeBytes(out, 'M', 'T', 'h', 'd', 0, 0, 0, 6, 0, 1, 0, tracks.length, 480 >> 8, 480 & 0xff);
+		for(int[] track:tracks) {
+			writeBytes(out, 'M', 'T', 'r', 'k', track.length >> 24, track.length >> 16, track.length >> 8, track.length);
+			writeBytes(out, track);
+		}
+		return out.toByteArray();
+	}
+
+	private static void writeBytes(ByteArrayOutputStream out, int... bytes) {
+		for(int b:bytes) {
+			out.write(b);
+		}
+	}
+
+	private static List<String> readEvents(int... track) throws Exception {
+		SmfReader reader = new SmfReader(ByteBuffer.wrap(createFile(track)));
+		EventRecorder recorder = new EventRecorder();
+		reader.readTrack(0, recorder);
+		return recorder.events;
+	}
+
+	@Test
+	public void runningStatus() throws Exception {
+		List<String> events = readEvents(
+			0x00, 0x90, 60, 100,
+			0x10, 64, 90,
+			0x10, 60, 0,
+			0x81, 0x00, 64, 0,
+			0x00, 0xff, 0x2f, 0x00
+		);
+
+		assertEquals(Arrays.asList(
+			"0 on 0 60 100",
+			"16 on 0 64 90",
+			"32 off 0 60",
+			"160 off 0 64"
+		), events);
+	}
+
+	@Test
+	public void runningStatusWithSingleDataByte() throws Exception {
+		List<String> events = readEvents(
+			0x00, 0xc3, 5,
+			0x10, 7,
+			0x00, 0xb3, 7, 100,
+			0x10, 10, 64,
+			0x00, 0xff, 0x2f, 0x00
+		);
+
+		assertEquals(Arrays.asList(
+			"0 control 3 c0 5 0",
+			"16 control 3 c0 7 0",
+			"16 control 3 b0 7 100",
+			"32 control 3 b0 10 64"
+		), events);
+	}
+
+	@Test(expected = InvalidMidiDataException.class)
+	public void metaEventCancelsRunningStatus() throws Exception {
+		readEvents(
+			0x00, 0x91, 60, 100,
+			0x00, 0xff, 0x01, 0x02, 'h', 'i',
+			0x10, 60, 0,
+			0x00, 0xff, 0x2f, 0x00
+		);
+	}
+
+	@Test
+	public void sysexIsSkipped() throws Exception {
+		List<String> events = readEvents(
+			0x00, 0xf0, 0x05, 0x7e, 0x7f, 0x09, 0x01, 0xf7,
+			0x10, 0x90, 60, 100,
+			0x10, 0xf7, 0x02, 0x01, 0x02,
+			0x10, 0x80, 60, 0,
+			0x00, 0xff, 0x2f, 0x00
+		);
+
+		assertEquals(Arrays.asList(
+			"16 on 0 60 100",
+			"48 off 0 60"
+		), events);
+	}
+
+	@Test(expected = InvalidMidiDataException.class)
+	public void sysexCancelsRunningStatus() throws Exception {
+		readEvents(
+			0x00, 0x90, 60, 100,
+			0x00, 0xf0, 0x01, 0xf7,
+			0x10, 60, 0,
+			0x00, 0xff, 0x2f, 0x00
+		);
+	}
+
+	@Test(expected = InvalidMidiDataException.class)
+	public void dataByteWithoutStatus() throws Exception {
+		readEvents(
+			0x00, 60, 100,
+			0x00, 0xff, 0x2f, 0x00
+		);
+	}
+
+	@Test
+	public void metaEvents() throws Exception {
+		List<String> events = readEvents(
+			0x00, 0xff, 0x03, 0x04, 'P', 'i', 'a', 'n',
+			0x00, 0xff, 0x51, 0x03, 0x07, 0xa1, 0x20,
+			0x60, 0xff, 0x58, 0x04, 0x03, 0x02, 0x18, 0x08,
+			0x00, 0xff, 0x06, 0x00,
+			0x00, 0xff, 0x2f, 0x00
+		);
+
+		assertEquals(Arrays.asList(
+			"0 meta 3 [80, 105, 97, 110]",
+			"0 meta 51 [7, -95, 32]",
+			"96 meta 58 [3, 2, 24, 8]",
+			"96 meta 6 []"
+		), events);
+	}
+
+	@Test
+	public void endOfTrackStopsDecoding() throws Exception {
+		List<String> events = readEvents(
+			0x00, 0x90, 60, 100,
+			0x00, 0xff, 0x2f, 0x00,
+			0x10, 0x80, 60, 0
+		);
+
+		assertEquals(Arrays.asList("0 on 0 60 100"), events);
+	}
+
+	@Test
+	public void truncatedMetaEventKeepsEarlierEvents() throws Exception {
+		List<String> events = readEvents(
+			0x00, 0x90, 60, 100,
+			0x10, 0xff, 0x01, 0x10, 'a', 'b'
+		);
+
+		assertEquals(Arrays.asList("0 on 0 60 100"), events);
+	}
+
+	@Test
+	public void truncatedMessageKeepsEarlierEvents() throws Exception {
+		List<String> events = readEvents(
+			0x00, 0x90, 60, 100,
+			0x10, 0x80, 60
+		);
+
+		assertEquals(Arrays.asList("0 on 0 60 100"), events);
+	}
+
+	@Test
+	public void endTickStopsDecoding() throws Exception {
+		SmfReader reader = new SmfReader(ByteBuffer.wrap(createFile(new int[] {
+			0x00, 0x90, 60, 100,
+			0x10, 0x80, 60, 0,
+			0x10, 0x90, 62, 100,
+			0x00, 0xff, 0x2f, 0x00
+		})));
+		EventRecorder recorder = new EventRecorder();
+		reader.readTrack(0, 32, recorder, null);
+
+		assertEquals(Arrays.asList("0 on 0 60 100", "16 off 0 60"), recorder.events);
+	}
+
+	@Test
+	public void streamMatchesBuffer() throws Exception {
+		int[] first = {
+			0x00, 0xff, 0x03, 0x01, 'A',
+			0x00, 0x90, 60, 100,
+			0x10, 60, 0,
+			0x00, 0xff, 0x2f, 0x00
+		};
+		int[] second = {
+			0x00, 0xf0, 0x01, 0xf7,
+			0x08, 0x95, 72, 80,
+			0x08, 0xe5, 0x00, 0x40,
+			0x08, 0x85, 72, 0,
+			0x00, 0xff, 0x2f, 0x00
+		};
+		byte[] file = createFile(first, second);
+
+		SmfReader bufferReader = new SmfReader(ByteBuffer.wrap(file));
+		SmfReader streamReader = new SmfReader(new ByteArrayInputStream(file));
+		assertEquals(480, streamReader.getResolution());
+
+		for(int index = 0; index < 2; index++) {
+			EventRecorder fromBuffer = new EventRecorder();
+			bufferReader.readTrack(index, fromBuffer);
+
+			streamReader.readNextTrack();
+			EventRecorder fromStream = new EventRecorder();
+			streamReader.readTrack(index, fromStream);
+
+			assertEquals(fromBuffer.events, fromStream.events);
+		}
+	}
+}
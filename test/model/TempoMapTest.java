@@ -0,0 +1,166 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TempoMapTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static IntList intList(int... values) {
+		IntList list = new IntList();
+		for(int value:values) {
+			list.add(value);
+		}
+		return list;
+	}
+
+	/**
+	 * Checks that every tick converts to a time and back to the same tick, and that every time converts
+	 * to the last tick at or before it.
+	 */
+	private static void checkRoundTrips(TempoMap tempoMap, int lastTick) {
+		for(int tick = 0; tick <= lastTick; tick++) {
+			assertEquals("tick " + tick, tick, tempoMap.getTick(tempoMap.getMicros(tick)));
+		}
+
+		long lastTime = tempoMap.getMicros(lastTick);
+		for(long time = 0; time <= lastTime; time += 97) {
+			int tick = tempoMap.getTick(time);
+			assertTrue("time " + time, tempoMap.getMicros(tick) <= time && time < tempoMap.getMicros(tick + 1));
+		}
+	}
+
+	@Test
+	public void defaultTempo() {
+		TempoMap tempoMap = new TempoMap(480, new IntList(), new IntList());
+
+		assertEquals(1, tempoMap.getSegmentCount());
+		assertEquals(500000, tempoMap.getTempo(0));
+		assertEquals(500000, tempoMap.getMicros(480));
+		assertEquals(960, tempoMap.getTick(1000000));
+	}
+
+	@Test
+	public void tempoChanges() {
+		TempoMap tempoMap = new TempoMap(480, intList(960, 1920), intList(250000, 1000000));
+
+		assertEquals(3, tempoMap.getSegmentCount());
+		assertEquals(500000, tempoMap.getTempo(959));
+		assertEquals(250000, tempoMap.getTempo(960));
+		assertEquals(1000000, tempoMap.getTempo(1920));
+
+		assertEquals(1000000, tempoMap.getMicros(960));
+		assertEquals(1250000, tempoMap.getMicros(1440));
+		assertEquals(1500000, tempoMap.getMicros(1920));
+		assertEquals(2500000, tempoMap.getMicros(2400));
+
+		assertEquals(960, tempoMap.getTick(1000000));
+		assertEquals(1440, tempoMap.getTick(1250000));
+		assertEquals(2400, tempoMap.getTick(2500000));
+	}
+
+	@Test
+	public void lastChangeAtSameTickIsKept() {
+		TempoMap tempoMap = new TempoMap(480, intList(0, 0, 480, 480), intList(600000, 400000, 0, 300000));
+
+		assertEquals(2, tempoMap.getSegmentCount());
+		assertEquals(400000, tempoMap.getTempo(0));
+		assertEquals(300000, tempoMap.getTempo(480));
+	}
+
+	@Test
+	public void roundTrips() {
+		for(int resolution:new int[] { 1, 24, 96, 480, 960 }) {
+			TempoMap tempoMap = new TempoMap(resolution,
+				intList(resolution, resolution * 5 + 1, resolution * 9),
+				intList(333333, 1234567, 60000));
+			checkRoundTrips(tempoMap, resolution * 12);
+		}
+	}
+
+	@Test
+	public void lookupsInAnyOrder() {
+		TempoMap tempoMap = new TempoMap(96, intList(100, 300, 700, 1500), intList(400000, 600000, 250000, 800000));
+
+		// Convert in order, as during playback.
+		long[] micros = new long[3000];
+		for(int tick = 0; tick < micros.length; tick++) {
+			micros[tick] = tempoMap.getMicros(tick);
+		}
+
+		// Lookups that jump around don't depend on the segment used by the previous lookup.
+		Random random = new Random(1);
+		for(int i = 0; i < 10000; i++) {
+			int tick = random.nextInt(micros.length);
+			assertEquals(micros[tick], tempoMap.getMicros(tick));
+			assertEquals(tick, tempoMap.getTick(micros[tick]));
+		}
+	}
+
+	@Test
+	public void writeAndRead() {
+		TempoMap tempoMap = new TempoMap(480, intList(960, 1920), intList(250000, 1000000));
+
+		ByteBuffer buffer = ByteBuffer.allocate(tempoMap.getWriteSize());
+		tempoMap.write(buffer);
+		assertEquals(0, buffer.remaining());
+		buffer.flip();
+		TempoMap read = TempoMap.read(buffer);
+
+		assertEquals(tempoMap.getSegmentCount(), read.getSegmentCount());
+		for(int tick = 0; tick < 3000; tick += 7) {
+			assertEquals(tempoMap.getMicros(tick), read.getMicros(tick));
+		}
+	}
+
+	@Test
+	public void smpteRoundTrips() {
+		for(int framesPerSecond:new int[] { 24, 25, 29, 30 }) {
+			TempoMap tempoMap = new TempoMap(80, (int)(1000000 / (framesPerSecond == 29 ? 29.97 : framesPerSecond)));
+
+			assertEquals(1, tempoMap.getSegmentCount());
+			checkRoundTrips(tempoMap, 80 * framesPerSecond * 3);
+		}
+	}
+
+	/**
+	 * Reads a file with SMPTE timing of 25 frames per second and 40 ticks per frame, so 1000 ticks a
+	 * second. Its tempo change is ignored, as the timing doesn't depend on the tempo.
+	 */
+	@Test
+	public void smpteFile() throws Exception {
+		int[] track = {
+			0x00, 0xff, 0x51, 0x03, 0x07, 0xa1, 0x20,
+			0x00, 0x90, 60, 100,
+			0x87, 0x68, 0x80, 60, 0,
+			0x00, 0xff, 0x2f, 0x00
+		};
+		byte[] bytes = new byte[22 + track.length];
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		buffer.putInt(0x4d546864).putInt(6).putShort((short)0).putShort((short)1).put((byte)-25).put((byte)40);
+		buffer.putInt(0x4d54726b).putInt(track.length);
+		for(int b:track) {
+			buffer.put((byte)b);
+		}
+
+		File file = folder.newFile("smpte.mid");
+		Files.write(file.toPath(), bytes);
+		TempoMap tempoMap = new MidiFile(file).getTempoMap();
+
+		assertEquals(1000000, tempoMap.getMicros(1000));
+		assertEquals(2500000, tempoMap.getMicros(2500));
+		assertEquals(1000, tempoMap.getTick(1000000));
+		assertEquals(1, new MidiFile(file).getNotes().size());
+		checkRoundTrips(tempoMap, 5000);
+	}
+}
@@ -0,0 +1,147 @@
+package view;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import model.MidiFile;
+import model.Song;
+
+/**
+ * Measures how long the piano-roll takes to paint with the notes drawn in batches by color, and with the
+ * colors set for each note, on a generated file with 16 dense tracks. Frames are painted into an image
+ * with a Java2DRenderer, so no display is needed, at positions spread through the file.
+ *
+ * Run with: ant benchmark, or java view.NotesPainterBenchmark [notes per track] [scale]
+ */
+public class NotesPainterBenchmark {
+	private static final int TRACKS = 16;
+	private static final int FRAME_HEIGHT = 768;
+
+	// Number of frames painted, spread evenly through the file, and the fewest pixels scrolled between them.
+	private static final int MAX_FRAMES = 1500;
+	private static final int MIN_SCROLL_STEP = 40;
+
+	// Number of times every frame is painted with each setting, after painting them once to warm up.
+	private static final int ROUNDS = 3;
+
+	public static void main(String[] args) throws Exception {
+		int notesPerTrack = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+		int scale = (args.length > 1) ? Integer.parseInt(args[1]) : 2;
+
+		File file = File.createTempFile("benchmark", ".mid");
+		file.deleteOnExit();
+		writeFile(file, notesPerTrack);
+
+		MidiFile midiFile = new MidiFile(file);
+		Song song = new Song(midiFile);
+		Colors colors = new Colors();
+
+		NotesPainter painter = new NotesPainter(colors);
+		painter.setMidiFile(midiFile);
+		painter.setSong(song);
+		painter.setScale(scale);
+
+		BufferedImage image = new BufferedImage(painter.getClientWidth(), FRAME_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		Java2DRenderer renderer = new Java2DRenderer(image);
+
+		int scrollStep = Math.max(MIN_SCROLL_STEP, (painter.getHeight() - FRAME_HEIGHT) / MAX_FRAMES);
+		int frames = Math.max(1, (painter.getHeight() - FRAME_HEIGHT) / scrollStep);
+		System.out.println(String.format("%d tracks, %d notes, scale %d, %d frames of %d pixels",
+			TRACKS, midiFile.getNotes().size(), scale, frames, FRAME_HEIGHT));
+
+		long[] unbatched = new long[frames * ROUNDS];
+		long[] batched = new long[frames * ROUNDS];
+		long unbatchedNotes = 0;
+		long batchedNotes = 0;
+
+		for(int round = -1; round < ROUNDS; round++) {
+			painter.setBatchColors(false);
+			unbatchedNotes = paintFrames(painter, renderer, frames, scrollStep, unbatched, round);
+
+			painter.setBatchColors(true);
+			batchedNotes = paintFrames(painter, renderer, frames, scrollStep, batched, round);
+		}
+
+		renderer.dispose();
+
+		report("unbatched", unbatched, unbatchedNotes / frames);
+		report("batched", batched, batchedNotes / frames);
+	}
+
+	/**
+	 * Paints each frame, storing the time each took for a round, or only warming up if the round is -1.
+	 * Returns the total number of notes drawn.
+	 */
+	private static long paintFrames(NotesPainter painter, Renderer renderer, int frames, int scrollStep, long[] times, int round) {
+		long notes = 0;
+		for(int frame = 0; frame < frames; frame++) {
+			// Scroll up from the beginning of the file, which starts at the bottom of the first frame.
+			int origin = FRAME_HEIGHT + frame * scrollStep;
+
+			long start = System.nanoTime();
+			painter.paint(renderer, origin, 0, FRAME_HEIGHT);
+			long time = System.nanoTime() - start;
+
+			if(round >= 0) {
+				times[round * frames + frame] = time;
+			}
+			notes += painter.getNotesDrawn();
+		}
+		return notes;
+	}
+
+	private static void report(String name, long[] times, long notesPerFrame) {
+		long[] sorted = Arrays.copyOf(times, times.length);
+		Arrays.sort(sorted);
+
+		long total = 0;
+		for(long time:times) {
+			total += time;
+		}
+
+		System.out.println(String.format("%-10s mean %.3f ms, p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, %d notes/frame",
+			name + ":",
+			total / 1e6 / times.length,
+			sorted[sorted.length * 50 / 100] / 1e6,
+			sorted[sorted.length * 90 / 100] / 1e6,
+			sorted[sorted.length * 99 / 100] / 1e6,
+			notesPerFrame));
+	}
+
+	/**
+	 * Writes a file with a tempo track and 16 tracks of random overlapping notes, each on its own channel.
+	 */
+	private static void writeFile(File file, int notesPerTrack) throws Exception {
+		Random random = new Random(1);
+		Sequence sequence = new Sequence(Sequence.PPQ, 480);
+
+		Track tempoTrack = sequence.createTrack();
+		tempoTrack.add(new MidiEvent(new MetaMessage(0x51, new byte[] { 0x07, (byte)0xa1, 0x20 }, 3), 0));
+
+		for(int trackNo = 0; trackNo < TRACKS; trackNo++) {
+			Track track = sequence.createTrack();
+			byte[] name = ("Part " + trackNo).getBytes("ascii");
+			track.add(new MidiEvent(new MetaMessage(3, name, name.length), 0));
+
+			long tick = 0;
+			for(int i = 0; i < notesPerTrack; i++) {
+				tick += random.nextInt(120);
+				int pitch = 40 + random.nextInt(40);
+				int duration = 1 + random.nextInt(500);
+				track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, trackNo, pitch, 1 + random.nextInt(126)), tick));
+				track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, trackNo, pitch, 0), tick + duration));
+			}
+		}
+
+		MidiSystem.write(sequence, 1, file);
+	}
+}
@@ -0,0 +1,206 @@
+package view;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Collections;
+
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import model.MidiFile;
+import model.Note;
+import model.Pitch;
+import model.Song;
+
+import org.eclipse.swt.graphics.RGB;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Paints each view into an image with a Java2DRenderer, without a display, and checks the colors of
+ * pixels at known positions.
+ */
+public class PainterSnapshotTest {
+	// Height of the piano-roll images. The beginning of the file is painted at the bottom unless it's moved up.
+	private static final int ORIGIN = 1000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Colors colors = new Colors();
+	private MidiFile midiFile;
+	private Song song;
+
+	/**
+	 * Reads a file with one track at 480 ticks per quarter note, holding middle C for the first beat and
+	 * E above it for the second.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		Sequence sequence = new Sequence(Sequence.PPQ, 480);
+		Track track = sequence.createTrack();
+		addNote(track, 60, 0, 480);
+		addNote(track, 64, 480, 960);
+
+		File file = folder.newFile("song.mid");
+		MidiSystem.write(sequence, 1, file);
+		midiFile = new MidiFile(file);
+		song = new Song(midiFile);
+	}
+
+	private static void addNote(Track track, int pitch, int startTick, int endTick) throws Exception {
+		track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, pitch, 100), startTick));
+		track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, pitch, 0), endTick));
+	}
+
+	private static void assertPixel(String message, RGB expected, BufferedImage image, int x, int y) {
+		int pixel = image.getRGB(x, y);
+		assertEquals(message + " at " + x + ", " + y, expected, new RGB((pixel >> 16) & 0xff, (pixel >> 8) & 0xff, pixel & 0xff));
+	}
+
+	/**
+	 * Returns the number of pixels in a rectangle that aren't white.
+	 */
+	private static int countInk(BufferedImage image, int left, int top, int width, int height) {
+		int count = 0;
+		for(int y = top; y < top + height; y++) {
+			for(int x = left; x < left + width; x++) {
+				if((image.getRGB(x, y) & 0xffffff) != 0xffffff) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Paints the piano-roll with the beginning of the file at a position.
+	 */
+	private BufferedImage paintNotes(NotesPainter painter, int scale, int origin) {
+		painter.setMidiFile(midiFile);
+		painter.setSong(song);
+		painter.setScale(scale);
+
+		BufferedImage image = new BufferedImage(painter.getClientWidth(), ORIGIN, BufferedImage.TYPE_INT_RGB);
+		Java2DRenderer renderer = new Java2DRenderer(image);
+		painter.paint(renderer, origin, 0, ORIGIN);
+		renderer.dispose();
+
+		return image;
+	}
+
+	@Test
+	public void notes() {
+		NotesPainter painter = new NotesPainter(colors);
+		BufferedImage image = paintNotes(painter, 1, ORIGIN);
+		assertEquals(2, painter.getNotesDrawn());
+
+		int[] pitchPositions = NoteLayout.createPitchPositions(9);
+		RGB noteColor = colors.getNoteColor(midiFile.getNotes(), 0);
+
+		// Each note is filled from a pixel left of its position, and outlined in black. Middle C covers the
+		// first 480 pixels up from the bottom, and E the 480 above that.
+		int middleC = pitchPositions[60];
+		assertPixel("middle C", noteColor, image, middleC + 2, ORIGIN - 240);
+		assertPixel("middle C outline", colors.getBlack(), image, middleC - 1, ORIGIN - 240);
+		assertPixel("middle C outline", colors.getBlack(), image, middleC + 4, ORIGIN - 240);
+		assertPixel("above middle C", colors.getWhite(), image, middleC + 2, ORIGIN - 700);
+
+		int e = pitchPositions[64];
+		assertPixel("E", noteColor, image, e + 2, ORIGIN - 700);
+		assertPixel("below E", colors.getWhite(), image, e + 2, ORIGIN - 240);
+
+		// The second beat line crosses the piano-roll in grey, between the guide columns of the black keys.
+		assertPixel("beat line", colors.getGrey220(), image, pitchPositions[62] + 2, ORIGIN - 960);
+	}
+
+	@Test
+	public void denseNotes() {
+		// At 512 ticks a pixel, the most zoomed out scale, every note is shorter than a pixel, so the notes are
+		// drawn from the density map. Both notes are in the first row of the file, which is painted 10 pixels
+		// up from the bottom.
+		NotesPainter painter = new NotesPainter(colors);
+		BufferedImage image = paintNotes(painter, 512, ORIGIN - 10);
+		assertEquals(2, painter.getNotesDrawn());
+
+		int[] pitchPositions = NoteLayout.createPitchPositions(9);
+		int y = ORIGIN - 10;
+		int middleC = image.getRGB(pitchPositions[60] + 2, y) & 0xffffff;
+		assertTrue(middleC != 0xffffff && middleC != 0);
+		assertEquals(middleC, image.getRGB(pitchPositions[64] + 2, y) & 0xffffff);
+		assertPixel("bar line between the notes", colors.getBlack(), image, pitchPositions[62] + 2, y);
+		assertPixel("before the beginning", colors.getWhite(), image, pitchPositions[60] + 2, y + 2);
+
+		// Bar lines closer than 4 pixels are thinned to every second bar, and beat lines are left out.
+		assertPixel("second bar line", colors.getWhite(), image, pitchPositions[62] + 2, y - 3);
+		assertPixel("third bar line", colors.getBlack(), image, pitchPositions[62] + 2, y - 7);
+		assertPixel("beat line", colors.getWhite(), image, pitchPositions[62] + 2, y - 1);
+
+		// Painting the same size again reuses the image data, without leaving the notes of the last paint in it.
+		image = paintNotes(painter, 512, ORIGIN + 10);
+		assertEquals(0, painter.getNotesDrawn());
+		assertPixel("after the notes", colors.getWhite(), image, pitchPositions[60] + 2, y);
+	}
+
+	@Test
+	public void piano() {
+		PianoPainter painter = new PianoPainter(colors);
+		painter.setSong(song);
+		painter.setPlayerPitches(Collections.singleton(Pitch.valueOf("a0")));
+		painter.setSelectedNotes(Collections.singleton(midiFile.getNotes().getNote(0)));
+
+		// The keyboard is 52 keys of 18 pixels, plus a margin. At this width its left edge is at 5.
+		int width = 52 * 18 + 10 + 20;
+		BufferedImage image = new BufferedImage(width, painter.getTotalHeight(), BufferedImage.TYPE_INT_RGB);
+		Java2DRenderer renderer = new Java2DRenderer(image);
+		painter.paint(renderer, width);
+		renderer.dispose();
+
+		Note middleC = midiFile.getNotes().getNote(0);
+		assertPixel("A0 played", colors.getRed(), image, 5 + 9, 80);
+		assertPixel("B0", colors.getWhite(), image, 5 + 18 + 9, 80);
+		assertPixel("A#0", colors.getBlack(), image, 5 + 9 + 5 + 4, 30);
+		assertPixel("middle C selected", colors.getNoteColor(middleC), image, 5 + 18 * 23 + 9, 80);
+		assertPixel("key outline", colors.getBlack(), image, 5 + 18 * 23, 80);
+		assertPixel("border", colors.getGrey30(), image, 5 - 4, 80);
+	}
+
+	@Test
+	public void score() {
+		ScorePainter painter = new ScorePainter(colors);
+		painter.setMidiFile(midiFile);
+		painter.setSong(song);
+		painter.setScale(8);
+		painter.setPosition(0);
+
+		int width = 600;
+		BufferedImage image = new BufferedImage(width, painter.getTotalHeight(), BufferedImage.TYPE_INT_RGB);
+		Java2DRenderer renderer = new Java2DRenderer(image);
+		painter.paint(renderer, width);
+		renderer.dispose();
+
+		assertEquals(2, painter.getNotesDrawn());
+
+		// The staff lines are 7 pixels apart from 30 down, with 20 more pixels between the staves.
+		assertPixel("top staff line", colors.getBlack(), image, 500, 30);
+		assertPixel("between staff lines", colors.getWhite(), image, 500, 33);
+		assertPixel("bottom staff line", colors.getBlack(), image, 500, 30 + 7 * 9 + 20);
+
+		// Middle C is at the start of the staff, with a ledger line between the staves. E is 120 pixels after it.
+		assertPixel("middle C", colors.getBlack(), image, 95, 65);
+		assertPixel("ledger line", colors.getBlack(), image, 95 - 6, 65);
+		assertPixel("E", colors.getBlack(), image, 95 + 120, 65 - 7);
+		assertPixel("after E", colors.getWhite(), image, 95 + 160, 65);
+
+		// The clefs are drawn from their SVG images.
+		assertTrue(countInk(image, 25, 20, 30, 50) > 100);
+	}
+}